@@ -0,0 +1,84 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.cantina.biometric.support.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@code identify} over a request-shaped candidate list. Defaults measure the baseline path:
+ * sequential matching and no template cache, so every template is decoded on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentifyBenchmark {
+
+    @Param({"10", "100", "1000", "2000"})
+    private int candidates;
+
+    @Param({"1", "5", "10"})
+    private int templatesPerCandidate;
+
+    @Param({"false"})
+    private boolean templateCache;
+
+    @Param({"1"})
+    private int parallelism;
+
+    private BiometricMatchingService service;
+    private ForkJoinPool matchingPool;
+    private String scanTemplateBase64;
+    private List<CandidateRequest> candidateRequests;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = SyntheticCorpus.load();
+        BiometricProperties properties = new BiometricProperties();
+        properties.setTemplateCacheEnabled(templateCache);
+        properties.setParallelMinCandidates(parallelism > 1 ? 64 : Integer.MAX_VALUE);
+        matchingPool = new ForkJoinPool(parallelism);
+        service = ServiceFixtures.matchingService(properties, ServiceFixtures.templateDecoder(properties), matchingPool);
+
+        scanTemplateBase64 = corpus.scan(0);
+        candidateRequests = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            List<String> templates = new ArrayList<>(templatesPerCandidate);
+            for (int t = 0; t < templatesPerCandidate; t++) {
+                templates.add(corpus.template(i * templatesPerCandidate + t + 1));
+            }
+            candidateRequests.add(new CandidateRequest("candidate-" + i, templates));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        matchingPool.shutdown();
+    }
+
+    @Benchmark
+    public BiometricMatchingService.IdentifyResult identify() {
+        return service.identify(scanTemplateBase64, candidateRequests);
+    }
+}
@@ -0,0 +1,294 @@
+package com.cantina.biometric.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator for {@code /identify} and {@code /verify} of a running instance, to
+ * reproduce meal-time load offline and compare builds.
+ *
+ * <p>Requests are sent at their scheduled arrival times whether or not earlier ones have answered,
+ * each on its own virtual thread over its own pooled connection, so a slow server faces a growing
+ * backlog as it would in the cantina instead of the generator slowing down with it. Latency is taken
+ * from the scheduled arrival, not from the actual send, which keeps coordinated omission out of the
+ * percentiles; the service time from the actual send is reported alongside. Every completion is
+ * recorded, errors included and timeouts when they fire, so a server that sheds load or stops
+ * answering shows up in the percentiles instead of dropping out of them; failed requests are also
+ * broken out on their own.
+ *
+ * <p>The schedule is either synthetic (Poisson or evenly spaced arrivals at {@code rate} per second,
+ * shapes drawn from the configured distributions) or replayed from a {@link LoadTrace}, optionally one
+ * extracted from a service log. Options are {@code key=value} arguments:
+ * <ul>
+ *   <li>{@code url} (http://localhost:8080), {@code timeout} seconds per request (30)</li>
+ *   <li>{@code rate} requests per second (10), {@code duration} seconds (60), {@code warmup} seconds
+ *       left out of the results (10), {@code arrivals} {@code poisson} or {@code uniform}</li>
+ *   <li>{@code verifyShare} (0.3), {@code matchShare} (0.9), {@code candidates} (100-400),
+ *       {@code templates} per candidate (1-3), {@code verifyTemplates} (1-3); ranges are {@code min-max}
+ *       or a single value, drawn uniformly</li>
+ *   <li>{@code trace} trace file or {@code log} service log to replay, {@code speed} replay speed-up (1.0)</li>
+ *   <li>{@code corpus} synthetic fingers (4096), {@code seed} (42), {@code writeTrace} file to save the
+ *       schedule to, {@code hgrm} path prefix for HdrHistogram percentile files</li>
+ * </ul>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbenchmark.main=com.cantina.biometric.benchmark.LoadGenerator -Djmh.args="rate=20 duration=120"}.
+ */
+public final class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, String> options;
+    private final HttpClient client;
+    private final URI baseUri;
+    private final Duration timeout;
+    private final Map<LoadTrace.Endpoint, Histogram> latency = new EnumMap<>(LoadTrace.Endpoint.class);
+    private final Map<LoadTrace.Endpoint, Histogram> serviceTime = new EnumMap<>(LoadTrace.Endpoint.class);
+    private final Map<LoadTrace.Endpoint, Histogram> failedLatency = new EnumMap<>(LoadTrace.Endpoint.class);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        String url = option("url", "http://localhost:8080");
+        this.baseUri = URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        this.timeout = Duration.ofSeconds(Long.parseLong(option("timeout", "30")));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        for (LoadTrace.Endpoint endpoint : LoadTrace.Endpoint.values()) {
+            latency.put(endpoint, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            serviceTime.put(endpoint, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            failedLatency.put(endpoint, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        SplittableRandom random = new SplittableRandom(Long.parseLong(option("seed", "42")));
+        List<LoadTrace.Request> schedule = schedule(random);
+        if (options.containsKey("writeTrace")) {
+            LoadTrace.write(Path.of(options.get("writeTrace")), schedule);
+        }
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+        LoadPayloads payloads = new LoadPayloads(Integer.parseInt(option("corpus", "4096")));
+
+        System.out.printf(Locale.ROOT, "target=%s requests=%d spanSeconds=%.1f warmupSeconds=%d%n", baseUri, schedule.size(),
+                schedule.isEmpty() ? 0d : schedule.get(schedule.size() - 1).offsetNanos() / 1e9, TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+
+        CountDownLatch done = new CountDownLatch(schedule.size());
+        long maxLagNanos = 0;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (LoadTrace.Request request : schedule) {
+            long intended = start + request.offsetNanos();
+            waitUntil(intended);
+            maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - intended);
+            boolean measured = request.offsetNanos() >= warmupNanos;
+            // Each request gets its own generator so bodies do not depend on completion order.
+            SplittableRandom requestRandom = random.split();
+            Thread.startVirtualThread(() -> {
+                try {
+                    send(request, payloads.body(request, requestRandom), intended, measured);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long sendingEnd = System.nanoTime();
+        if (!done.await(timeout.toSeconds() + 5, TimeUnit.SECONDS)) {
+            System.out.println("warning: requests still in flight after the timeout: " + done.getCount());
+        }
+
+        report(Math.max(1L, sendingEnd - start - warmupNanos), maxLagNanos);
+    }
+
+    private void send(LoadTrace.Request request, byte[] body, long intended, boolean measured) {
+        int current = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(current, Math::max);
+        HttpRequest httpRequest = HttpRequest.newBuilder(baseUri.resolve(request.endpoint().path()))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        long sent = System.nanoTime();
+        String outcome;
+        boolean succeeded = false;
+        try {
+            HttpResponse<Void> response = client.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+            outcome = String.valueOf(response.statusCode());
+            succeeded = response.statusCode() == 200;
+        } catch (HttpTimeoutException ex) {
+            outcome = "timeout";
+        } catch (IOException ex) {
+            outcome = "io-error";
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            outcome = "interrupted";
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        long end = System.nanoTime();
+        if (measured && !outcome.equals("interrupted")) {
+            latency.get(request.endpoint()).recordValue(micros(end - intended));
+            serviceTime.get(request.endpoint()).recordValue(micros(end - sent));
+            if (!succeeded) {
+                failedLatency.get(request.endpoint()).recordValue(micros(end - intended));
+            }
+        }
+        if (measured) {
+            outcomes.computeIfAbsent(request.endpoint().label() + " " + outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    private List<LoadTrace.Request> schedule(SplittableRandom random) throws IOException {
+        double speed = Double.parseDouble(option("speed", "1.0"));
+        List<LoadTrace.Request> replayed = null;
+        if (options.containsKey("trace")) {
+            replayed = LoadTrace.read(Path.of(options.get("trace")));
+        } else if (options.containsKey("log")) {
+            replayed = LoadTrace.fromServiceLog(Path.of(options.get("log")));
+        }
+        if (replayed != null) {
+            List<LoadTrace.Request> scaled = new ArrayList<>(replayed.size());
+            for (LoadTrace.Request request : replayed) {
+                scaled.add(new LoadTrace.Request((long) (request.offsetNanos() / speed), request.endpoint(),
+                        request.candidates(), request.templates(), request.matched()));
+            }
+            return scaled;
+        }
+
+        double rate = Double.parseDouble(option("rate", "10"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "60")));
+        boolean poisson = option("arrivals", "poisson").equals("poisson");
+        double verifyShare = Double.parseDouble(option("verifyShare", "0.3"));
+        double matchShare = Double.parseDouble(option("matchShare", "0.9"));
+        int[] candidates = range(option("candidates", "100-400"));
+        int[] templates = range(option("templates", "1-3"));
+        int[] verifyTemplates = range(option("verifyTemplates", "1-3"));
+
+        List<LoadTrace.Request> schedule = new ArrayList<>();
+        double meanGapNanos = 1e9 / rate;
+        double offset = 0;
+        while (offset < durationNanos) {
+            boolean verify = random.nextDouble() < verifyShare;
+            schedule.add(new LoadTrace.Request((long) offset,
+                    verify ? LoadTrace.Endpoint.VERIFY : LoadTrace.Endpoint.IDENTIFY,
+                    verify ? 1 : draw(candidates, random),
+                    draw(verify ? verifyTemplates : templates, random),
+                    random.nextDouble() < matchShare));
+            offset += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+        }
+        return schedule;
+    }
+
+    private void report(long measuredNanos, long maxLagNanos) throws IOException {
+        PrintStream out = System.out;
+        double seconds = measuredNanos / 1e9;
+        out.printf(Locale.ROOT, "%nlatency from scheduled arrival, all requests (ms)%n");
+        printTable(out, latency, seconds);
+        out.printf(Locale.ROOT, "%nservice time from actual send, all requests (ms)%n");
+        printTable(out, serviceTime, seconds);
+        out.printf(Locale.ROOT, "%nlatency from scheduled arrival, failed requests: non-200, timeouts and I/O errors (ms)%n");
+        printTable(out, failedLatency, seconds);
+
+        out.printf(Locale.ROOT, "%noutcomes:");
+        new TreeMap<>(outcomes).forEach((outcome, count) -> out.printf(Locale.ROOT, " [%s]=%d", outcome, count.sum()));
+        out.printf(Locale.ROOT, "%nscheduler maxLagMs=%.1f peakInFlight=%d%n", maxLagNanos / 1e6, peakInFlight.get());
+
+        String prefix = options.get("hgrm");
+        if (prefix != null) {
+            for (LoadTrace.Endpoint endpoint : LoadTrace.Endpoint.values()) {
+                Path file = Path.of(prefix + "-" + endpoint.label() + ".hgrm");
+                try (PrintStream hgrm = new PrintStream(Files.newOutputStream(file))) {
+                    latency.get(endpoint).outputPercentileDistribution(hgrm, 1000.0);
+                }
+            }
+        }
+    }
+
+    private static void printTable(PrintStream out, Map<LoadTrace.Endpoint, Histogram> histograms, double seconds) {
+        out.printf(Locale.ROOT, "%-9s %8s %8s %9s %9s %9s %9s %9s%n", "endpoint", "count", "perSec", "p50", "p90", "p99", "p99.9", "max");
+        Histogram all = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        for (Map.Entry<LoadTrace.Endpoint, Histogram> entry : histograms.entrySet()) {
+            all.add(entry.getValue());
+            printRow(out, entry.getKey().label(), entry.getValue(), seconds);
+        }
+        printRow(out, "all", all, seconds);
+    }
+
+    private static void printRow(PrintStream out, String label, Histogram histogram, double seconds) {
+        out.printf(Locale.ROOT, "%-9s %8d %8.2f", label, histogram.getTotalCount(), histogram.getTotalCount() / seconds);
+        for (double percentile : PERCENTILES) {
+            out.printf(Locale.ROOT, " %9.1f", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        out.printf(Locale.ROOT, " %9.1f%n", histogram.getMaxValue() / 1000.0);
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            // Park in small steps; a single long park can oversleep by a timer tick.
+            LockSupport.parkNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    private static int[] range(String value) {
+        int dash = value.indexOf('-');
+        return dash < 0
+                ? new int[]{Integer.parseInt(value), Integer.parseInt(value)}
+                : new int[]{Integer.parseInt(value.substring(0, dash)), Integer.parseInt(value.substring(dash + 1))};
+    }
+
+    private static int draw(int[] range, SplittableRandom random) {
+        return range[0] == range[1] ? range[0] : random.nextInt(range[0], range[1] + 1);
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+}
@@ -0,0 +1,97 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.support.SyntheticTemplates;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+
+/**
+ * Request bodies for {@link LoadGenerator}, built from a corpus of {@code corpusSize} synthetic fingers.
+ * Candidate {@code candidate-<f>} always carries fingers {@code f, f+1, ...} of the corpus, so repeated
+ * requests send the same candidates with the same templates, as the cantina terminals do, and the
+ * server's template cache and candidate heat behave as in production. A matched scan is a second
+ * impression of one of the request's fingers; an unmatched one comes from outside the corpus.
+ *
+ * <p>Templates are kept pre-encoded as ASCII, so building a body is mostly copying bytes.
+ */
+final class LoadPayloads {
+
+    private static final byte[] QUOTE_COMMA_QUOTE = "\",\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final int corpusSize;
+    private final byte[][] templates;
+    private final Map<Long, byte[]> scans = new ConcurrentHashMap<>();
+
+    LoadPayloads(int corpusSize) {
+        this.corpusSize = corpusSize;
+        this.templates = new byte[corpusSize][];
+        for (int finger = 0; finger < corpusSize; finger++) {
+            templates[finger] = ascii(SyntheticTemplates.fingerBase64(finger));
+        }
+    }
+
+    byte[] body(LoadTrace.Request request, RandomGenerator random) {
+        return request.endpoint() == LoadTrace.Endpoint.IDENTIFY
+                ? identify(request.candidates(), request.templates(), request.matched(), random)
+                : verify(request.templates(), request.matched(), random);
+    }
+
+    private byte[] identify(int candidates, int templatesPerCandidate, boolean matched, RandomGenerator random) {
+        int first = random.nextInt(corpusSize);
+        long scanFinger = matched
+                ? (first + (long) random.nextInt(candidates) * templatesPerCandidate) % corpusSize
+                : corpusSize + random.nextInt(corpusSize);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(candidates * templatesPerCandidate * (templates[0].length + 8) + 1024);
+        body.writeBytes(ascii("{\"scanTemplateBase64\":\""));
+        body.writeBytes(scan(scanFinger, 1));
+        body.writeBytes(ascii("\",\"candidates\":["));
+        for (int candidate = 0; candidate < candidates; candidate++) {
+            int finger = (int) ((first + (long) candidate * templatesPerCandidate) % corpusSize);
+            if (candidate > 0) {
+                body.write(',');
+            }
+            body.writeBytes(ascii("{\"candidateId\":\"candidate-" + finger + "\",\"templatesBase64\":[\""));
+            for (int t = 0; t < templatesPerCandidate; t++) {
+                if (t > 0) {
+                    body.writeBytes(QUOTE_COMMA_QUOTE);
+                }
+                body.writeBytes(templates[(finger + t) % corpusSize]);
+            }
+            body.writeBytes(ascii("\"]}"));
+        }
+        body.writeBytes(ascii("]}"));
+        return body.toByteArray();
+    }
+
+    /**
+     * The person templates are impressions of one finger; the scan is another impression of it when
+     * {@code matched}, or a finger from outside the corpus otherwise.
+     */
+    private byte[] verify(int personTemplates, boolean matched, RandomGenerator random) {
+        int finger = random.nextInt(corpusSize);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(personTemplates * (templates[0].length + 8) + 1024);
+        body.writeBytes(ascii("{\"scanTemplateBase64\":\""));
+        body.writeBytes(matched ? scan(finger, 1) : scan(corpusSize + random.nextInt(corpusSize), 1));
+        body.writeBytes(ascii("\",\"personTemplatesBase64\":[\""));
+        for (int t = 0; t < personTemplates; t++) {
+            if (t > 0) {
+                body.writeBytes(QUOTE_COMMA_QUOTE);
+            }
+            body.writeBytes(t == 0 ? templates[finger] : scan(finger, t + 1));
+        }
+        body.writeBytes(ascii("\"]}"));
+        return body.toByteArray();
+    }
+
+    private byte[] scan(long finger, int impression) {
+        return scans.computeIfAbsent(finger << 8 | impression, key -> ascii(SyntheticTemplates.fingerBase64(finger, impression)));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
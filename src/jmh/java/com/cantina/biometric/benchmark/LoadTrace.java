@@ -0,0 +1,153 @@
+package com.cantina.biometric.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sequence of request shapes with their arrival times, replayed by {@link LoadGenerator}. A trace file
+ * has one request per line, {@code <offsetMs> <endpoint> <candidates> <templates> <matched>}:
+ * {@code templates} is per candidate for identify and the person templates for verify (where
+ * {@code candidates} is ignored), and {@code matched} says whether the scan should find its finger.
+ * Lines starting with {@code #} are comments.
+ *
+ * <p>{@link #fromServiceLog(Path)} builds a trace from the service's own log, so a real meal-time
+ * pattern can be recorded in production and replayed offline against another build.
+ */
+final class LoadTrace {
+
+    /**
+     * The first 23 chars of a log line: Spring Boot's default {@code yyyy-MM-dd'T'HH:mm:ss.SSSXXX} without
+     * the offset, which is the same throughout a log. A space instead of the {@code T} is accepted too.
+     */
+    private static final DateTimeFormatter LOG_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd['T'][' ']HH:mm:ss.SSS");
+    private static final Pattern FIELD = Pattern.compile("(\\w+)=(\\S*)");
+
+    private LoadTrace() {
+    }
+
+    enum Endpoint {
+        IDENTIFY("/api/v1/biometric/identify"),
+        VERIFY("/api/v1/biometric/verify");
+
+        private final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+
+        String path() {
+            return path;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Endpoint of(String label) {
+            return valueOf(label.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    record Request(long offsetNanos, Endpoint endpoint, int candidates, int templates, boolean matched) {
+    }
+
+    static List<Request> read(Path path) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length != 5) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": expected 5 fields, got " + parts.length);
+                }
+                requests.add(new Request(TimeUnit.MILLISECONDS.toNanos(Long.parseLong(parts[0])), Endpoint.of(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Boolean.parseBoolean(parts[4])));
+            }
+        }
+        return requests;
+    }
+
+    static void write(Path path, List<Request> requests) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("# offsetMs endpoint candidates templates matched\n");
+            for (Request request : requests) {
+                writer.write(TimeUnit.NANOSECONDS.toMillis(request.offsetNanos()) + " " + request.endpoint().label() + " "
+                        + request.candidates() + " " + request.templates() + " " + request.matched() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Requests to {@code /identify} and {@code /verify} found in a service log written with the default
+     * console pattern: arrival time and shape from the {@code *-request-received} events, whether it
+     * matched from the response event of the same {@code requestId}. Templates per candidate are the
+     * request's average, rounded.
+     */
+    static List<Request> fromServiceLog(Path path) throws IOException {
+        Map<String, Request> byRequestId = new LinkedHashMap<>();
+        Map<String, Boolean> matchedById = new HashMap<>();
+        LocalDateTime first = null;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int eventAt = line.indexOf("event=");
+                if (eventAt < 0 || line.length() < 23) {
+                    continue;
+                }
+                Map<String, String> fields = new HashMap<>();
+                Matcher matcher = FIELD.matcher(line.substring(eventAt));
+                while (matcher.find()) {
+                    fields.putIfAbsent(matcher.group(1), matcher.group(2));
+                }
+                String requestId = fields.get("requestId");
+                if (requestId == null) {
+                    continue;
+                }
+                switch (fields.get("event")) {
+                    case "identify-request-received", "verify-request-received" -> {
+                        LocalDateTime time = LocalDateTime.parse(line.substring(0, 23), LOG_TIMESTAMP);
+                        if (first == null) {
+                            first = time;
+                        }
+                        long offsetNanos = Duration.between(first, time).toNanos();
+                        boolean identify = fields.get("event").startsWith("identify");
+                        int templates = Integer.parseInt(fields.getOrDefault("templatesCount", "1"));
+                        int candidates = identify ? Integer.parseInt(fields.get("candidatesCount")) : 1;
+                        byRequestId.put(requestId, new Request(offsetNanos, identify ? Endpoint.IDENTIFY : Endpoint.VERIFY,
+                                candidates, Math.max(1, Math.round((float) templates / Math.max(1, candidates))), false));
+                    }
+                    case "identify", "verify" -> matchedById.put(requestId, Boolean.parseBoolean(fields.get("matched")));
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        List<Request> requests = new ArrayList<>(byRequestId.size());
+        byRequestId.forEach((requestId, request) -> requests.add(new Request(request.offsetNanos(), request.endpoint(),
+                request.candidates(), request.templates(), matchedById.getOrDefault(requestId, false))));
+        requests.sort((left, right) -> Long.compare(left.offsetNanos(), right.offsetNanos()));
+        return requests;
+    }
+}
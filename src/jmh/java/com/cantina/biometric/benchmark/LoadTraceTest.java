@@ -0,0 +1,85 @@
+package com.cantina.biometric.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs with the {@code benchmark} profile only: {@code mvn -Pbenchmark test -Dtest=LoadTraceTest}.
+ */
+class LoadTraceTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void writtenTraceReadsBackToMillisecondPrecision() throws Exception {
+        Path trace = directory.resolve("trace.txt");
+        List<LoadTrace.Request> requests = List.of(
+                new LoadTrace.Request(0, LoadTrace.Endpoint.IDENTIFY, 250, 2, true),
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(1500) + 999, LoadTrace.Endpoint.VERIFY, 1, 3, false));
+
+        LoadTrace.write(trace, requests);
+
+        assertEquals(List.of(
+                new LoadTrace.Request(0, LoadTrace.Endpoint.IDENTIFY, 250, 2, true),
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(1500), LoadTrace.Endpoint.VERIFY, 1, 3, false)), LoadTrace.read(trace));
+    }
+
+    @Test
+    void readSkipsCommentsAndBlankLinesAndNamesTheBadLine() throws Exception {
+        Path trace = directory.resolve("trace.txt");
+        Files.writeString(trace, """
+                # offsetMs endpoint candidates templates matched
+
+                  10   identify 100 1 true
+                20 verify 1 2 false
+                30 identify 100
+                """);
+
+        var ex = assertThrows(IllegalArgumentException.class, () -> LoadTrace.read(trace));
+        assertTrue(ex.getMessage().endsWith(":5: expected 5 fields, got 3"), ex.getMessage());
+
+        Files.writeString(trace, """
+                # offsetMs endpoint candidates templates matched
+                  10   identify 100 1 true
+
+                20 VERIFY 1 2 false
+                """);
+        assertEquals(List.of(
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(10), LoadTrace.Endpoint.IDENTIFY, 100, 1, true),
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(20), LoadTrace.Endpoint.VERIFY, 1, 2, false)), LoadTrace.read(trace));
+    }
+
+    /**
+     * Lines as Spring Boot's default console pattern writes them.
+     */
+    @Test
+    void serviceLogIsTurnedIntoATraceOfIdentifyAndVerifyRequests() throws Exception {
+        Path log = directory.resolve("service.log");
+        Files.writeString(log, """
+                2026-10-18T12:00:00.000-03:00  INFO 4242 --- [biometric-matching] [           main] c.c.b.BiometricMatchingApplication       : Started BiometricMatchingApplication in 2.1 seconds
+                2026-10-18T12:00:01.000-03:00  INFO 4242 --- [biometric-matching] [omcat-handler-1] c.c.b.controller.BiometricController     : event=identify-request-received requestId=r-1 candidatesCount=3 templatesCount=7
+                2026-10-18T12:00:01.002-03:00  INFO 4242 --- [biometric-matching] [atching-request-1] c.c.b.s.BiometricMatchingService        : event=identify-start requestId=r-1 candidatesCount=3 threshold=40.0 maxCandidates=2000 topK=0 budgetMs=null
+                2026-10-18T12:00:01.250-03:00  INFO 4242 --- [biometric-matching] [omcat-handler-2] c.c.b.controller.BiometricController     : event=verify-request-received requestId=r-2 templatesCount=3
+                2026-10-18T12:00:01.400-03:00  INFO 4242 --- [biometric-matching] [omcat-handler-3] c.c.b.controller.BiometricController     : event=identify-stream-request-received requestId=r-3 contentType=application/json contentLength=5120
+                2026-10-18T12:00:01.500-03:00  INFO 4242 --- [biometric-matching] [atching-request-1] c.c.b.controller.BiometricController     : event=identify requestId=r-1 candidatesEvaluated=3 duplicatesSkipped=0 elapsedMs=500 maxScore=61.2 matched=true partial=false threshold=40.0
+                2026-10-18T12:00:02.750-03:00  INFO 4242 --- [biometric-matching] [omcat-handler-4] c.c.b.controller.BiometricController     : event=identify-request-received requestId=r-4 candidatesCount=400 templatesCount=400
+                2026-10-18T12:00:02.751-03:00  WARN 4242 --- [biometric-matching] [omcat-handler-5] c.c.b.config.RequestSizeFilter          : event=request-size-rejected method=POST path=/api/v1/biometric/identify contentLength=9999999 requestMaxBytes=1048576
+                """);
+
+        assertEquals(List.of(
+                new LoadTrace.Request(0, LoadTrace.Endpoint.IDENTIFY, 3, 2, true),
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(250), LoadTrace.Endpoint.VERIFY, 1, 3, false),
+                new LoadTrace.Request(TimeUnit.MILLISECONDS.toNanos(1750), LoadTrace.Endpoint.IDENTIFY, 400, 1, false)),
+                LoadTrace.fromServiceLog(log));
+    }
+}
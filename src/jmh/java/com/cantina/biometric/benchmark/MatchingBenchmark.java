@@ -0,0 +1,83 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.service.TemplateDecoder;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.cantina.biometric.support.SyntheticCorpus;
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation costs of the identify/verify hot path on the synthetic corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingBenchmark {
+
+    private String templateBase64;
+    private FingerprintTemplate scanTemplate;
+    private FingerprintTemplate candidateTemplate;
+    private FingerprintMatcher matcher;
+    private TemplateDecoder uncachedDecoder;
+    private TemplateDecoder cachedDecoder;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = SyntheticCorpus.load();
+        BiometricProperties properties = new BiometricProperties();
+        properties.setTemplateCacheEnabled(false);
+        uncachedDecoder = ServiceFixtures.templateDecoder(properties);
+        cachedDecoder = ServiceFixtures.templateDecoder(new BiometricProperties());
+
+        templateBase64 = corpus.template(1);
+        scanTemplate = uncachedDecoder.decode(corpus.scan(0), "scan");
+        candidateTemplate = uncachedDecoder.decode(templateBase64, "template");
+        matcher = new FingerprintMatcher(scanTemplate);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.getDecoder().decode(templateBase64);
+    }
+
+    @Benchmark
+    public FingerprintTemplate toTemplate() {
+        return uncachedDecoder.decode(templateBase64, "template");
+    }
+
+    /**
+     * Decoding a template that is already cached; with {@code -prof gc} this shows the per-template
+     * allocation left on the identify hot path besides matching.
+     */
+    @Benchmark
+    public FingerprintTemplate cachedTemplateDecode() {
+        return cachedDecoder.decode(templateBase64, "template");
+    }
+
+    @Benchmark
+    public FingerprintMatcher matcherConstruction() {
+        return new FingerprintMatcher(scanTemplate);
+    }
+
+    @Benchmark
+    public double matchCandidate() {
+        return matcher.match(candidateTemplate);
+    }
+}
@@ -0,0 +1,121 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.EnrolledCandidate;
+import com.cantina.biometric.service.GalleryService;
+import com.cantina.biometric.service.TemplateDecoder;
+import com.cantina.biometric.service.TemplateStore;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.cantina.biometric.support.SyntheticTemplates;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Accuracy-vs-speedup report for the gallery identify pre-filter, used to pick PREFILTER_FRACTION.
+ *
+ * <p>Enrols {@code gallery} synthetic fingers, then identifies {@code scans} distorted impressions of
+ * enrolled fingers (genuine) and as many fingers that are not enrolled (impostors) at each fraction.
+ * Accuracy is the share of genuine scans identified as the right candidate with the fallback disabled;
+ * the fallback columns show what the default configuration costs instead.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbenchmark.main=com.cantina.biometric.benchmark.PrefilterReport -Djmh.args="2000 100 0.2 15"}
+ * (gallery size, scans, minutiae drop rate, max rotation in degrees).
+ */
+public final class PrefilterReport {
+
+    private static final double[] FRACTIONS = {1.0, 0.5, 0.2, 0.1, 0.05, 0.02, 0.01};
+
+    private PrefilterReport() {
+    }
+
+    public static void main(String[] args) {
+        int gallerySize = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int scans = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double dropRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+        double maxRotation = args.length > 3 ? Double.parseDouble(args[3]) : 15;
+
+        BiometricProperties properties = new BiometricProperties();
+        properties.setGalleryMaxCandidates(gallerySize);
+        properties.setPrefilterMinCandidates(1);
+        properties.setParallelMinCandidates(Integer.MAX_VALUE);
+        TemplateDecoder decoder = ServiceFixtures.templateDecoder(properties);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        BiometricMatchingService service = ServiceFixtures.matchingService(properties, decoder, pool);
+
+        GalleryService gallery = new GalleryService(properties, decoder, TemplateStore.NONE);
+        for (int i = 0; i < gallerySize; i++) {
+            gallery.enroll("candidate-" + i, null, List.of(SyntheticTemplates.fingerBase64(i)));
+        }
+        List<EnrolledCandidate> candidates = gallery.select(null, null);
+
+        List<String> genuine = new ArrayList<>(scans);
+        List<String> impostors = new ArrayList<>(scans);
+        for (int i = 0; i < scans; i++) {
+            long seed = (long) i * gallerySize / scans;
+            genuine.add(encode(SyntheticTemplates.distortedFinger(seed, 1, dropRate, maxRotation)));
+            impostors.add(encode(SyntheticTemplates.distortedFinger(gallerySize + seed, 1, dropRate, maxRotation)));
+        }
+
+        // Warm up the matcher and the template cache before timing anything.
+        properties.setPrefilterFraction(1.0);
+        for (int i = 0; i < Math.min(scans, 10); i++) {
+            service.identifyEnrolled(genuine.get(i), candidates);
+        }
+
+        System.out.printf(Locale.ROOT, "gallery=%d scans=%d dropRate=%.2f maxRotation=%.0f%n", gallerySize, scans, dropRate, maxRotation);
+        System.out.printf(Locale.ROOT, "%9s %10s %9s %10s %8s %16s %17s%n",
+                "fraction", "shortlist", "accuracy", "genuineMs", "speedup", "fallbackGenuineMs", "fallbackImpostorMs");
+
+        double exhaustiveMs = 0;
+        for (double fraction : FRACTIONS) {
+            properties.setPrefilterFraction(fraction);
+
+            properties.setPrefilterFallbackExhaustive(false);
+            int correct = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                var result = service.identifyEnrolled(genuine.get(i), candidates);
+                long seed = (long) i * gallerySize / scans;
+                if (("candidate-" + seed).equals(result.candidateId())) {
+                    correct++;
+                }
+            }
+            double genuineMs = (System.nanoTime() - start) / 1e6 / scans;
+            if (fraction == 1.0) {
+                exhaustiveMs = genuineMs;
+            }
+
+            properties.setPrefilterFallbackExhaustive(true);
+            double fallbackGenuineMs = meanMillis(service, genuine, candidates);
+            double fallbackImpostorMs = meanMillis(service, impostors, candidates);
+
+            System.out.printf(Locale.ROOT, "%9.2f %10d %8.1f%% %10.2f %7.1fx %16.2f %17.2f%n",
+                    fraction,
+                    Math.max(1, (int) Math.ceil(gallerySize * fraction)),
+                    100.0 * correct / scans,
+                    genuineMs,
+                    exhaustiveMs / genuineMs,
+                    fallbackGenuineMs,
+                    fallbackImpostorMs);
+        }
+        pool.shutdown();
+    }
+
+    private static double meanMillis(BiometricMatchingService service, List<String> scans, List<EnrolledCandidate> candidates) {
+        long start = System.nanoTime();
+        for (String scan : scans) {
+            service.identifyEnrolled(scan, candidates);
+        }
+        return (System.nanoTime() - start) / 1e6 / scans.size();
+    }
+
+    private static String encode(byte[] template) {
+        return Base64.getEncoder().encodeToString(template);
+    }
+}
@@ -0,0 +1,121 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.CborCandidateRequest;
+import com.cantina.biometric.dto.CborIdentifyRequest;
+import com.cantina.biometric.dto.IdentifyRequest;
+import com.cantina.biometric.service.TemplateDecoder;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.cantina.biometric.support.SyntheticCorpus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request work before matching: binding an identify body and turning its templates into
+ * {@code FingerprintTemplate}s, which the template cache serves after the first call. {@code json}
+ * is the JSON endpoint, {@code cbor} the CBOR one with byte strings bound to bytes, and
+ * {@code cborAsBase64} the same CBOR body bound to {@link IdentifyRequest}, which has Jackson encode
+ * every byte string to Base64 only for the decoder to decode it again.
+ *
+ * <p>Run with {@code -prof gc} to see the allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBindingBenchmark {
+
+    @Param({"100", "1000"})
+    private int candidates;
+
+    @Param({"2"})
+    private int templatesPerCandidate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+    private TemplateDecoder templateDecoder;
+    private byte[] jsonBody;
+    private byte[] cborBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = SyntheticCorpus.load();
+        templateDecoder = ServiceFixtures.templateDecoder(new BiometricProperties());
+
+        Base64.Decoder base64 = Base64.getDecoder();
+        List<CandidateRequest> candidateRequests = new ArrayList<>(candidates);
+        List<Map<String, Object>> cborCandidates = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            List<String> templates = new ArrayList<>(templatesPerCandidate);
+            List<byte[]> rawTemplates = new ArrayList<>(templatesPerCandidate);
+            for (int t = 0; t < templatesPerCandidate; t++) {
+                String template = corpus.template((i * templatesPerCandidate + t) % corpus.templateCount());
+                templates.add(template);
+                rawTemplates.add(base64.decode(template));
+            }
+            candidateRequests.add(new CandidateRequest("candidate-" + i, templates));
+            Map<String, Object> cborCandidate = new LinkedHashMap<>();
+            cborCandidate.put("candidateId", "candidate-" + i);
+            cborCandidate.put("templatesBase64", rawTemplates);
+            cborCandidates.add(cborCandidate);
+        }
+        jsonBody = objectMapper.writeValueAsBytes(new IdentifyRequest(corpus.scan(0), null, null, candidateRequests, null, null));
+        Map<String, Object> cborIdentify = new LinkedHashMap<>();
+        cborIdentify.put("scanTemplateBase64", base64.decode(corpus.scan(0)));
+        cborIdentify.put("candidates", cborCandidates);
+        cborBody = cborMapper.writeValueAsBytes(cborIdentify);
+    }
+
+    @Benchmark
+    public void json(Blackhole blackhole) throws IOException {
+        decode(objectMapper.readValue(jsonBody, IdentifyRequest.class), blackhole);
+    }
+
+    @Benchmark
+    public void cborAsBase64(Blackhole blackhole) throws IOException {
+        decode(cborMapper.readValue(cborBody, IdentifyRequest.class), blackhole);
+    }
+
+    @Benchmark
+    public void cbor(Blackhole blackhole) throws IOException {
+        CborIdentifyRequest request = cborMapper.readValue(cborBody, CborIdentifyRequest.class);
+        blackhole.consume(templateDecoder.fromBytesHashed(request.scanTemplateBase64(), "scanTemplateBase64"));
+        for (CborCandidateRequest candidate : request.candidates()) {
+            for (byte[] template : candidate.templatesBase64()) {
+                blackhole.consume(templateDecoder.fromCandidateBytesHashed(template, candidate.candidateId()));
+            }
+        }
+    }
+
+    private void decode(IdentifyRequest request, Blackhole blackhole) {
+        blackhole.consume(templateDecoder.decodeHashed(request.scanTemplateBase64(), "scanTemplateBase64"));
+        for (CandidateRequest candidate : request.candidates()) {
+            for (String template : candidate.templatesBase64()) {
+                blackhole.consume(templateDecoder.decodeCandidateTemplateHashed(template, candidate.candidateId()));
+            }
+        }
+    }
+}
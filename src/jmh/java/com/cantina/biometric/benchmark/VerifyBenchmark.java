@@ -0,0 +1,83 @@
+package com.cantina.biometric.benchmark;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.PreparedScan;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.cantina.biometric.support.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code verify} against one person's templates. {@code verify} includes preparing the scan (decode and
+ * matcher construction), {@code verifyPrepared} reuses a prepared scan as a {@code scanId} request does,
+ * which leaves the decoding of the person templates as the per-request work besides matching.
+ *
+ * <p>Run with {@code -prof gc} to see the allocation rate per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerifyBenchmark {
+
+    @Param({"1", "5", "10"})
+    private int templates;
+
+    @Param({"true"})
+    private boolean templateCache;
+
+    private BiometricMatchingService service;
+    private ForkJoinPool matchingPool;
+    private String scanTemplateBase64;
+    private PreparedScan preparedScan;
+    private List<String> personTemplatesBase64;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = SyntheticCorpus.load();
+        BiometricProperties properties = new BiometricProperties();
+        properties.setTemplateCacheEnabled(templateCache);
+        matchingPool = new ForkJoinPool(1);
+        service = ServiceFixtures.matchingService(properties, ServiceFixtures.templateDecoder(properties), matchingPool);
+
+        scanTemplateBase64 = corpus.scan(0);
+        preparedScan = service.prepareScan(scanTemplateBase64, null, false);
+        personTemplatesBase64 = new ArrayList<>(templates);
+        for (int t = 0; t < templates; t++) {
+            personTemplatesBase64.add(corpus.template(t));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        matchingPool.shutdown();
+    }
+
+    @Benchmark
+    public BiometricMatchingService.VerifyResult verify() {
+        return service.verify(scanTemplateBase64, personTemplatesBase64);
+    }
+
+    @Benchmark
+    public BiometricMatchingService.VerifyResult verifyPrepared() {
+        return service.verify(preparedScan, personTemplatesBase64);
+    }
+}
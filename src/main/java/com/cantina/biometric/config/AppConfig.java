@@ -1,9 +1,72 @@
 package com.cantina.biometric.config;
 
+import com.cantina.biometric.service.TemplateStore;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Configuration
 @EnableConfigurationProperties(BiometricProperties.class)
 public class AppConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool matchingPool(BiometricProperties properties) {
+        int parallelism = properties.getMatchingParallelism() > 0
+                ? properties.getMatchingParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("matching-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService matchingRequestExecutor(BiometricProperties properties) {
+        int threads = properties.getMatchingConcurrency() > 0
+                ? properties.getMatchingConcurrency()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "matching-request-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the coordinator's sub-identify calls; they only wait on the network, so one virtual thread each.
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService shardCallExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-call-", 0).factory());
+    }
+
+    @Bean(destroyMethod = "close")
+    public TemplateStore templateStore(BiometricProperties properties) {
+        if (properties.getGalleryStoreDir() == null || properties.getGalleryStoreDir().isBlank()) {
+            return TemplateStore.NONE;
+        }
+        return TemplateStore.open(Path.of(properties.getGalleryStoreDir()),
+                properties.getGalleryStoreSegmentBytes(),
+                properties.isGalleryStoreFsync());
+    }
+
+    @Bean
+    public MeterBinder matchingPoolMetrics(ForkJoinPool matchingPool, ExecutorService matchingRequestExecutor) {
+        return registry -> {
+            new ExecutorServiceMetrics(matchingPool, "matching", List.of()).bindTo(registry);
+            new ExecutorServiceMetrics(matchingRequestExecutor, "matching-request", List.of()).bindTo(registry);
+        };
+    }
 }
@@ -1,10 +1,15 @@
 package com.cantina.biometric.config;
 
+import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Validated
 @ConfigurationProperties(prefix = "biometric")
 public class BiometricProperties {
@@ -15,6 +20,159 @@ public class BiometricProperties {
     @Min(1)
     private int maxCandidates = 2000;
 
+    @Min(1)
+    private int galleryMaxCandidates = 100_000;
+
+    @Min(1)
+    private int batchMaxScans = 256;
+
+    /**
+     * Directory of the persistent gallery store; blank keeps the gallery in memory only.
+     */
+    private String galleryStoreDir = "";
+
+    @Min(1024)
+    private long galleryStoreSegmentBytes = 64L * 1024 * 1024;
+
+    private boolean galleryStoreFsync = true;
+
+    /**
+     * Worker threads of the matching pool; {@code 0} uses one per available processor.
+     */
+    @Min(0)
+    private int matchingParallelism = 0;
+
+    @Min(1)
+    private int parallelMinCandidates = 64;
+
+    private boolean earlyExitEnabled = false;
+
+    @DecimalMin(value = "0.0", inclusive = false)
+    private double certainMatchScore = 150.0;
+
+    /**
+     * With early exit, match the candidates that were recently identified most often first.
+     */
+    private boolean candidateHeatEnabled = true;
+
+    /**
+     * Counters per row of the candidate heat sketch, rounded up to a power of two.
+     */
+    @Min(2)
+    private int candidateHeatCounters = 16_384;
+
+    /**
+     * Recorded matches after which every candidate heat counter is halved.
+     */
+    @Min(1)
+    private int candidateHeatDecayHits = 5_000;
+
+    /**
+     * Scans whose quality score (in {@code [0, 1]}) is below this are rejected before matching;
+     * {@code 0}, the default, accepts every scan and only reports the score.
+     */
+    @DecimalMin(value = "0.0")
+    @DecimalMax(value = "1.0")
+    private double scanQualityMinimum = 0.0;
+
+    /**
+     * Share of gallery candidates kept by the identify pre-filter; {@code 1.0} matches every candidate.
+     */
+    @DecimalMin(value = "0.0", inclusive = false)
+    @DecimalMax(value = "1.0")
+    private double prefilterFraction = 1.0;
+
+    @Min(1)
+    private int prefilterMinCandidates = 64;
+
+    private boolean prefilterFallbackExhaustive = true;
+
+    private boolean templateCacheEnabled = true;
+
+    @Min(0)
+    private long templateCacheMaxBytes = 128L * 1024 * 1024;
+
+    /**
+     * How long a scan retained with {@code retainScan} stays referenceable by its {@code scanId}.
+     */
+    @Min(1)
+    private int scanCacheTtlSeconds = 60;
+
+    /**
+     * Heap budget of retained scans, weighed by the estimated footprint of their matchers, which index
+     * every minutia pair and are far larger than the templates themselves.
+     */
+    @Min(1)
+    private long scanCacheMaxBytes = 128L * 1024 * 1024;
+
+    /**
+     * Remembers the score of each (scan, template) pair matched by verify and identify, so a scan sent
+     * again against the same templates skips the matcher.
+     */
+    private boolean scoreMemoEnabled = false;
+
+    @Min(2)
+    @Max(1 << 26)
+    private int scoreMemoEntries = 65536;
+
+    @Min(1)
+    private int scoreMemoTtlSeconds = 600;
+
+    /**
+     * Threads of the executor that runs admitted matching requests; {@code 0} uses one per available
+     * processor.
+     */
+    @Min(0)
+    private int matchingConcurrency = 0;
+
+    @Min(1)
+    private int matchingMaxInFlight = 64;
+
+    @Min(0)
+    private long retryAfterSeconds = 1;
+
+    /**
+     * Identical identify or verify requests in flight at the same time share one matching pass.
+     */
+    private boolean coalescingEnabled = true;
+
+    /**
+     * Time budget applied to identify requests that bring none (or a larger one); {@code 0} leaves them
+     * unbounded.
+     */
+    @Min(0)
+    private long identifyDefaultTimeBudgetMs = 0;
+
+    /**
+     * Worker base URLs; when set, {@code /identify} runs in coordinator mode and spreads the candidates
+     * over these instances instead of matching locally.
+     */
+    private List<String> shardUrls = new ArrayList<>();
+
+    /**
+     * Time the coordinator waits for all shards; shards that have not answered by then are left out of
+     * the result, which is flagged partial.
+     */
+    @Min(1)
+    private long shardDeadlineMs = 2000;
+
+    /**
+     * Exercise the matching endpoints with synthetic templates at startup, before readiness flips to
+     * accepting traffic.
+     */
+    private boolean warmUpEnabled = true;
+
+    /**
+     * Longest the startup warm-up runs when the JIT has not settled yet.
+     */
+    @Min(1)
+    private long warmUpMaxSeconds = 30;
+
+    /**
+     * Shut down once the startup warm-up is done; used by the AppCDS training run of the fast-start image.
+     */
+    private boolean warmUpExit = false;
+
     public double getThreshold() {
         return threshold;
     }
@@ -30,4 +188,268 @@ public class BiometricProperties {
     public void setMaxCandidates(int maxCandidates) {
         this.maxCandidates = maxCandidates;
     }
+
+    public int getBatchMaxScans() {
+        return batchMaxScans;
+    }
+
+    public void setBatchMaxScans(int batchMaxScans) {
+        this.batchMaxScans = batchMaxScans;
+    }
+
+    public String getGalleryStoreDir() {
+        return galleryStoreDir;
+    }
+
+    public void setGalleryStoreDir(String galleryStoreDir) {
+        this.galleryStoreDir = galleryStoreDir;
+    }
+
+    public long getGalleryStoreSegmentBytes() {
+        return galleryStoreSegmentBytes;
+    }
+
+    public void setGalleryStoreSegmentBytes(long galleryStoreSegmentBytes) {
+        this.galleryStoreSegmentBytes = galleryStoreSegmentBytes;
+    }
+
+    public boolean isGalleryStoreFsync() {
+        return galleryStoreFsync;
+    }
+
+    public void setGalleryStoreFsync(boolean galleryStoreFsync) {
+        this.galleryStoreFsync = galleryStoreFsync;
+    }
+
+    public int getGalleryMaxCandidates() {
+        return galleryMaxCandidates;
+    }
+
+    public void setGalleryMaxCandidates(int galleryMaxCandidates) {
+        this.galleryMaxCandidates = galleryMaxCandidates;
+    }
+
+    public int getMatchingParallelism() {
+        return matchingParallelism;
+    }
+
+    public void setMatchingParallelism(int matchingParallelism) {
+        this.matchingParallelism = matchingParallelism;
+    }
+
+    public int getParallelMinCandidates() {
+        return parallelMinCandidates;
+    }
+
+    public void setParallelMinCandidates(int parallelMinCandidates) {
+        this.parallelMinCandidates = parallelMinCandidates;
+    }
+
+    public boolean isEarlyExitEnabled() {
+        return earlyExitEnabled;
+    }
+
+    public void setEarlyExitEnabled(boolean earlyExitEnabled) {
+        this.earlyExitEnabled = earlyExitEnabled;
+    }
+
+    public double getCertainMatchScore() {
+        return certainMatchScore;
+    }
+
+    public void setCertainMatchScore(double certainMatchScore) {
+        this.certainMatchScore = certainMatchScore;
+    }
+
+    public boolean isCandidateHeatEnabled() {
+        return candidateHeatEnabled;
+    }
+
+    public void setCandidateHeatEnabled(boolean candidateHeatEnabled) {
+        this.candidateHeatEnabled = candidateHeatEnabled;
+    }
+
+    public int getCandidateHeatCounters() {
+        return candidateHeatCounters;
+    }
+
+    public void setCandidateHeatCounters(int candidateHeatCounters) {
+        this.candidateHeatCounters = candidateHeatCounters;
+    }
+
+    public int getCandidateHeatDecayHits() {
+        return candidateHeatDecayHits;
+    }
+
+    public void setCandidateHeatDecayHits(int candidateHeatDecayHits) {
+        this.candidateHeatDecayHits = candidateHeatDecayHits;
+    }
+
+    public double getScanQualityMinimum() {
+        return scanQualityMinimum;
+    }
+
+    public void setScanQualityMinimum(double scanQualityMinimum) {
+        this.scanQualityMinimum = scanQualityMinimum;
+    }
+
+    public double getPrefilterFraction() {
+        return prefilterFraction;
+    }
+
+    public void setPrefilterFraction(double prefilterFraction) {
+        this.prefilterFraction = prefilterFraction;
+    }
+
+    public int getPrefilterMinCandidates() {
+        return prefilterMinCandidates;
+    }
+
+    public void setPrefilterMinCandidates(int prefilterMinCandidates) {
+        this.prefilterMinCandidates = prefilterMinCandidates;
+    }
+
+    public boolean isPrefilterFallbackExhaustive() {
+        return prefilterFallbackExhaustive;
+    }
+
+    public void setPrefilterFallbackExhaustive(boolean prefilterFallbackExhaustive) {
+        this.prefilterFallbackExhaustive = prefilterFallbackExhaustive;
+    }
+
+    public boolean isTemplateCacheEnabled() {
+        return templateCacheEnabled;
+    }
+
+    public void setTemplateCacheEnabled(boolean templateCacheEnabled) {
+        this.templateCacheEnabled = templateCacheEnabled;
+    }
+
+    public long getTemplateCacheMaxBytes() {
+        return templateCacheMaxBytes;
+    }
+
+    public void setTemplateCacheMaxBytes(long templateCacheMaxBytes) {
+        this.templateCacheMaxBytes = templateCacheMaxBytes;
+    }
+
+    public int getScanCacheTtlSeconds() {
+        return scanCacheTtlSeconds;
+    }
+
+    public void setScanCacheTtlSeconds(int scanCacheTtlSeconds) {
+        this.scanCacheTtlSeconds = scanCacheTtlSeconds;
+    }
+
+    public long getScanCacheMaxBytes() {
+        return scanCacheMaxBytes;
+    }
+
+    public void setScanCacheMaxBytes(long scanCacheMaxBytes) {
+        this.scanCacheMaxBytes = scanCacheMaxBytes;
+    }
+
+    public int getMatchingConcurrency() {
+        return matchingConcurrency;
+    }
+
+    public void setMatchingConcurrency(int matchingConcurrency) {
+        this.matchingConcurrency = matchingConcurrency;
+    }
+
+    public int getMatchingMaxInFlight() {
+        return matchingMaxInFlight;
+    }
+
+    public void setMatchingMaxInFlight(int matchingMaxInFlight) {
+        this.matchingMaxInFlight = matchingMaxInFlight;
+    }
+
+    public long getIdentifyDefaultTimeBudgetMs() {
+        return identifyDefaultTimeBudgetMs;
+    }
+
+    public void setIdentifyDefaultTimeBudgetMs(long identifyDefaultTimeBudgetMs) {
+        this.identifyDefaultTimeBudgetMs = identifyDefaultTimeBudgetMs;
+    }
+
+    public List<String> getShardUrls() {
+        return shardUrls;
+    }
+
+    public void setShardUrls(List<String> shardUrls) {
+        this.shardUrls = shardUrls;
+    }
+
+    public long getShardDeadlineMs() {
+        return shardDeadlineMs;
+    }
+
+    public void setShardDeadlineMs(long shardDeadlineMs) {
+        this.shardDeadlineMs = shardDeadlineMs;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public boolean isWarmUpEnabled() {
+        return warmUpEnabled;
+    }
+
+    public void setWarmUpEnabled(boolean warmUpEnabled) {
+        this.warmUpEnabled = warmUpEnabled;
+    }
+
+    public long getWarmUpMaxSeconds() {
+        return warmUpMaxSeconds;
+    }
+
+    public void setWarmUpMaxSeconds(long warmUpMaxSeconds) {
+        this.warmUpMaxSeconds = warmUpMaxSeconds;
+    }
+
+    public boolean isWarmUpExit() {
+        return warmUpExit;
+    }
+
+    public void setWarmUpExit(boolean warmUpExit) {
+        this.warmUpExit = warmUpExit;
+    }
+
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    public void setCoalescingEnabled(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    public boolean isScoreMemoEnabled() {
+        return scoreMemoEnabled;
+    }
+
+    public void setScoreMemoEnabled(boolean scoreMemoEnabled) {
+        this.scoreMemoEnabled = scoreMemoEnabled;
+    }
+
+    public int getScoreMemoEntries() {
+        return scoreMemoEntries;
+    }
+
+    public void setScoreMemoEntries(int scoreMemoEntries) {
+        this.scoreMemoEntries = scoreMemoEntries;
+    }
+
+    public int getScoreMemoTtlSeconds() {
+        return scoreMemoTtlSeconds;
+    }
+
+    public void setScoreMemoTtlSeconds(int scoreMemoTtlSeconds) {
+        this.scoreMemoTtlSeconds = scoreMemoTtlSeconds;
+    }
 }
@@ -0,0 +1,20 @@
+package com.cantina.biometric.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class RequestDeadlineConfig implements WebMvcConfigurer {
+
+    private final RequestDeadlines requestDeadlines;
+
+    public RequestDeadlineConfig(RequestDeadlines requestDeadlines) {
+        this.requestDeadlines = requestDeadlines;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerDeferredResultInterceptors(requestDeadlines);
+    }
+}
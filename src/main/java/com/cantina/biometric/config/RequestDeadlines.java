@@ -0,0 +1,98 @@
+package com.cantina.biometric.config;
+
+import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.service.MatchDeadline;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+
+/**
+ * Creates the {@link MatchDeadline} of an identify request from its time budget and cancels it when the
+ * async request fails or times out, which is how a client closing the connection surfaces while the
+ * matching runs, so abandoned requests stop using the matching threads.
+ *
+ * <p>The budget comes from the {@value #TIME_BUDGET_HEADER} header or the {@code timeBudgetMs} field,
+ * the smaller one winning, capped by {@code biometric.identify-default-time-budget-ms} when that is set.
+ * It is counted from the moment the request reaches the controller, so queueing for admission uses it up.
+ */
+@Component
+public class RequestDeadlines implements DeferredResultProcessingInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestDeadlines.class);
+
+    public static final String TIME_BUDGET_HEADER = "X-Time-Budget-Ms";
+
+    private static final String DEADLINE_ATTRIBUTE = RequestDeadlines.class.getName() + ".deadline";
+    private static final String REQUEST_ID_ATTRIBUTE = RequestDeadlines.class.getName() + ".requestId";
+
+    private final BiometricProperties properties;
+
+    public RequestDeadlines(BiometricProperties properties) {
+        this.properties = properties;
+    }
+
+    public MatchDeadline start(HttpServletRequest request, Long fieldBudgetMs) {
+        long budgetMs = properties.getIdentifyDefaultTimeBudgetMs();
+        budgetMs = tighter(budgetMs, fieldBudgetMs);
+        budgetMs = tighter(budgetMs, headerBudget(request));
+
+        MatchDeadline deadline = MatchDeadline.after(budgetMs);
+        request.setAttribute(DEADLINE_ATTRIBUTE, deadline);
+        // The timeout and error callbacks run on a container thread without the request's MDC.
+        request.setAttribute(REQUEST_ID_ATTRIBUTE, MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY));
+        return deadline;
+    }
+
+    /**
+     * A failed async request never reaches {@link #handleError}: the {@link DeferredResult}'s own
+     * interceptor runs first, takes the error as its result and stops the chain. Its error callback
+     * runs before that, so the deadline is cancelled from there.
+     */
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        deferredResult.onError(error -> cancel(request, "error"));
+    }
+
+    @Override
+    public <T> boolean handleTimeout(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        cancel(request, "timeout");
+        return true;
+    }
+
+    private void cancel(NativeWebRequest request, String reason) {
+        if (request.getAttribute(DEADLINE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof MatchDeadline deadline) {
+            deadline.cancel();
+            log.info("event=request-abandoned requestId={} reason={}",
+                    request.getAttribute(REQUEST_ID_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST), reason);
+        }
+    }
+
+    private static Long headerBudget(HttpServletRequest request) {
+        String header = request.getHeader(TIME_BUDGET_HEADER);
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            long budgetMs = Long.parseLong(header.strip());
+            if (budgetMs >= 1) {
+                return budgetMs;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below like an out-of-range value.
+        }
+        throw new BadRequestException(TIME_BUDGET_HEADER + " must be a positive number of milliseconds");
+    }
+
+    private static long tighter(long budgetMs, Long candidateMs) {
+        if (candidateMs == null) {
+            return budgetMs;
+        }
+        return budgetMs > 0 ? Math.min(budgetMs, candidateMs) : candidateMs;
+    }
+}
@@ -25,15 +25,37 @@ public class RequestIdFilter extends OncePerRequestFilter {
     public static final String REQUEST_ID_HEADER = "X-Request-Id";
     public static final String REQUEST_ID_MDC_KEY = "requestId";
 
+    private static final String REQUEST_ID_ATTRIBUTE = RequestIdFilter.class.getName() + ".requestId";
+
+    /**
+     * Also runs on the async dispatch that writes the result of async handlers, so the error handler and
+     * response logging there still see the requestId.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
+        if (isAsyncDispatch(request) && request.getAttribute(REQUEST_ID_ATTRIBUTE) instanceof String asyncRequestId) {
+            MDC.put(REQUEST_ID_MDC_KEY, asyncRequestId);
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                MDC.remove(REQUEST_ID_MDC_KEY);
+            }
+            return;
+        }
+
         String requestId = Optional.ofNullable(request.getHeader(REQUEST_ID_HEADER))
                 .filter(value -> !value.isBlank())
                 .orElse(UUID.randomUUID().toString());
         boolean generated = request.getHeader(REQUEST_ID_HEADER) == null || request.getHeader(REQUEST_ID_HEADER).isBlank();
 
         MDC.put(REQUEST_ID_MDC_KEY, requestId);
+        request.setAttribute(REQUEST_ID_ATTRIBUTE, requestId);
         response.setHeader(REQUEST_ID_HEADER, requestId);
 
         if (generated) {
@@ -20,12 +20,30 @@ public class RequestLoggingFilter extends OncePerRequestFilter {
 
     private static final Logger log = LoggerFactory.getLogger(RequestLoggingFilter.class);
 
+    private static final String START_ATTRIBUTE = RequestLoggingFilter.class.getName() + ".start";
+
+    /**
+     * Async handlers finish on a second dispatch; the end line is logged there, once the status is known.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        long start = System.nanoTime();
-
         String requestId = MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY);
+        if (isAsyncDispatch(request)) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                logEnd(request, response, requestId);
+            }
+            return;
+        }
+
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
         log.info("event=http-request-start requestId={} method={} path={} query={} contentType={} contentLength={} remoteAddr={} userAgent={}",
                 requestId,
                 request.getMethod(),
@@ -39,14 +57,21 @@ public class RequestLoggingFilter extends OncePerRequestFilter {
         try {
             filterChain.doFilter(request, response);
         } finally {
-            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
-            log.info("event=http-request-end requestId={} method={} path={} status={} elapsedMs={} responseContentType={}",
-                    requestId,
-                    request.getMethod(),
-                    request.getRequestURI(),
-                    response.getStatus(),
-                    elapsedMs,
-                    response.getContentType());
+            if (!request.isAsyncStarted()) {
+                logEnd(request, response, requestId);
+            }
         }
     }
+
+    private void logEnd(HttpServletRequest request, HttpServletResponse response, String requestId) {
+        long start = request.getAttribute(START_ATTRIBUTE) instanceof Long value ? value : System.nanoTime();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("event=http-request-end requestId={} method={} path={} status={} elapsedMs={} responseContentType={}",
+                requestId,
+                request.getMethod(),
+                request.getRequestURI(),
+                response.getStatus(),
+                elapsedMs,
+                response.getContentType());
+    }
 }
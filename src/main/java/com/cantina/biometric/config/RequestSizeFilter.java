@@ -21,30 +21,39 @@ public class RequestSizeFilter extends OncePerRequestFilter {
 
     private static final Logger log = LoggerFactory.getLogger(RequestSizeFilter.class);
 
+    private static final String STREAM_PATH_SUFFIX = "/identify/stream";
+
     private final long requestMaxBytes;
+    private final long streamRequestMaxBytes;
 
-    public RequestSizeFilter(@Value("${biometric.request-max-bytes:1048576}") long requestMaxBytes) {
+    public RequestSizeFilter(@Value("${biometric.request-max-bytes:1048576}") long requestMaxBytes,
+                             @Value("${biometric.stream-request-max-bytes:16777216}") long streamRequestMaxBytes) {
         this.requestMaxBytes = requestMaxBytes;
+        this.streamRequestMaxBytes = streamRequestMaxBytes;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         long contentLength = request.getContentLengthLong();
-        if (contentLength > requestMaxBytes) {
+        // The streaming identify never holds the whole body, so it is allowed a larger limit.
+        boolean streaming = request.getRequestURI().endsWith(STREAM_PATH_SUFFIX);
+        long maxBytes = streaming ? streamRequestMaxBytes : requestMaxBytes;
+        if (contentLength > maxBytes) {
             log.warn("event=request-size-rejected method={} path={} contentLength={} requestMaxBytes={}",
                     request.getMethod(),
                     request.getRequestURI(),
                     contentLength,
-                    requestMaxBytes);
-            throw new PayloadTooLargeException("Request body exceeds configured REQUEST_MAX_BYTES=" + requestMaxBytes);
+                    maxBytes);
+            throw new PayloadTooLargeException("Request body exceeds configured "
+                    + (streaming ? "STREAM_REQUEST_MAX_BYTES=" : "REQUEST_MAX_BYTES=") + maxBytes);
         }
 
         log.debug("event=request-size-accepted method={} path={} contentLength={} requestMaxBytes={}",
                 request.getMethod(),
                 request.getRequestURI(),
                 contentLength,
-                requestMaxBytes);
+                maxBytes);
         filterChain.doFilter(request, response);
     }
 }
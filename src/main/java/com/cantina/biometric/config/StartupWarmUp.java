@@ -0,0 +1,224 @@
+package com.cantina.biometric.config;
+
+import com.cantina.biometric.controller.BiometricController;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.IdentifyRequest;
+import com.cantina.biometric.dto.VerifyRequest;
+import com.cantina.biometric.service.ShardCoordinator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends identify and verify requests with synthetic templates to this instance before it takes
+ * traffic, so request binding, template deserialization, matcher construction, matching and response
+ * serialization are JIT-compiled by the time the first terminal calls in. Without it the first few
+ * hundred identifies after a deploy run mostly interpreted and take several times longer.
+ *
+ * <p>Runs as an {@link ApplicationRunner}: the web server is already listening, so liveness answers
+ * and the warm-up goes through the real HTTP stack, while Spring Boot only publishes
+ * {@code ReadinessState.ACCEPTING_TRAFFIC} once every runner has returned. Rounds repeat until the
+ * JIT has settled, meaning compilation took less than {@link #SETTLED_COMPILE_SHARE} of two rounds in
+ * a row, or {@code warm-up-max-seconds} have passed. A failed warm-up is logged and the instance
+ * becomes ready anyway; it is slower at first, not broken.
+ *
+ * <p>The identify scans match none of the candidates, so the warm-up records no candidate heat; its
+ * requests do show in the request and matching metrics, under the {@code warm-up-*} request IDs.
+ */
+@Component
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    static final String REQUEST_ID = "warm-up";
+
+    /**
+     * Above {@code parallel-min-candidates} by default, so the parallel matching path is compiled too.
+     */
+    static final int IDENTIFY_CANDIDATES = 128;
+    static final int TEMPLATES_PER_CANDIDATE = 2;
+    static final int VERIFY_TEMPLATES = 3;
+    static final int MIN_ROUNDS = 3;
+    static final int SETTLED_ROUNDS = 2;
+    static final double SETTLED_COMPILE_SHARE = 0.05;
+
+    /**
+     * Seeds far from the ones terminals could plausibly produce, and scans from outside the candidate range.
+     */
+    private static final long CANDIDATE_SEED = 1L << 40;
+    private static final long SCAN_SEED = CANDIDATE_SEED + 1_000_000;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BiometricProperties properties;
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+
+    public StartupWarmUp(BiometricProperties properties,
+                         Environment environment,
+                         ObjectMapper objectMapper,
+                         ConfigurableApplicationContext applicationContext) {
+        this.properties = properties;
+        this.environment = environment;
+        this.objectMapper = objectMapper;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUp();
+        if (properties.isWarmUpExit()) {
+            // AppCDS training run: the JVM writes the classes loaded so far, request paths included, on exit.
+            log.info("event=warm-up-exit");
+            System.exit(SpringApplication.exit(applicationContext));
+        }
+    }
+
+    private void warmUp() {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (!properties.isWarmUpEnabled() || port == null) {
+            log.info("event=warm-up-skipped enabled={} port={}", properties.isWarmUpEnabled(), port);
+            return;
+        }
+
+        MDC.put(RequestIdFilter.REQUEST_ID_MDC_KEY, REQUEST_ID);
+        try (HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build()) {
+            warmUp(client, URI.create("http://localhost:" + port));
+        } catch (IOException | RuntimeException ex) {
+            log.warn("event=warm-up-failed requestId={} error={}", REQUEST_ID, ex.toString());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("event=warm-up-interrupted requestId={}", REQUEST_ID);
+        } finally {
+            MDC.remove(RequestIdFilter.REQUEST_ID_MDC_KEY);
+        }
+    }
+
+    private void warmUp(HttpClient client, URI base) throws IOException, InterruptedException {
+        List<Call> calls = calls(base);
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        boolean compileTimeKnown = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(properties.getWarmUpMaxSeconds());
+        log.info("event=warm-up-started requestId={} maxSeconds={} requestsPerRound={} compileTimeKnown={}",
+                REQUEST_ID, properties.getWarmUpMaxSeconds(), calls.size(), compileTimeKnown);
+
+        int rounds = 0;
+        int settledRounds = 0;
+        long compileMsAtStart = compileTimeKnown ? compilation.getTotalCompilationTime() : 0;
+        while (System.nanoTime() < deadline && (rounds < MIN_ROUNDS || settledRounds < SETTLED_ROUNDS)) {
+            long compileMsBefore = compileTimeKnown ? compilation.getTotalCompilationTime() : 0;
+            long roundStart = System.nanoTime();
+            for (Call call : calls) {
+                call.send(client, REQUEST_ID + "-" + rounds);
+            }
+            long roundMs = Math.max(1, (System.nanoTime() - roundStart) / 1_000_000);
+            long compileMs = compileTimeKnown ? compilation.getTotalCompilationTime() - compileMsBefore : 0;
+            settledRounds = compileTimeKnown && compileMs < roundMs * SETTLED_COMPILE_SHARE ? settledRounds + 1 : 0;
+            rounds++;
+            log.debug("event=warm-up-round requestId={} round={} roundMs={} compileMs={}", REQUEST_ID, rounds, roundMs, compileMs);
+        }
+
+        log.info("event=warm-up-finished requestId={} rounds={} elapsedMs={} compileMs={} settled={}",
+                REQUEST_ID,
+                rounds,
+                (System.nanoTime() - start) / 1_000_000,
+                compileTimeKnown ? compilation.getTotalCompilationTime() - compileMsAtStart : -1,
+                settledRounds >= SETTLED_ROUNDS);
+    }
+
+    /**
+     * One round: identify through the bound and the streaming JSON endpoints and CBOR, then verify. The
+     * bound identify finds its candidates in the template cache after the first round; the streaming
+     * ones decode every template again, which keeps deserialization in the round.
+     */
+    List<Call> calls(URI base) throws IOException {
+        Base64.Encoder base64 = Base64.getEncoder();
+        List<CandidateRequest> candidates = new ArrayList<>(IDENTIFY_CANDIDATES);
+        List<Map<String, Object>> cborCandidates = new ArrayList<>(IDENTIFY_CANDIDATES);
+        for (int candidate = 0; candidate < IDENTIFY_CANDIDATES; candidate++) {
+            List<String> templates = new ArrayList<>(TEMPLATES_PER_CANDIDATE);
+            List<byte[]> rawTemplates = new ArrayList<>(TEMPLATES_PER_CANDIDATE);
+            for (int impression = 0; impression < TEMPLATES_PER_CANDIDATE; impression++) {
+                byte[] template = WarmUpTemplates.finger(CANDIDATE_SEED + candidate, impression);
+                templates.add(base64.encodeToString(template));
+                rawTemplates.add(template);
+            }
+            candidates.add(new CandidateRequest(REQUEST_ID + "-" + candidate, templates));
+            Map<String, Object> cborCandidate = new LinkedHashMap<>();
+            cborCandidate.put("candidateId", REQUEST_ID + "-" + candidate);
+            cborCandidate.put("templatesBase64", rawTemplates);
+            cborCandidates.add(cborCandidate);
+        }
+        byte[] scan = WarmUpTemplates.finger(SCAN_SEED, 0);
+        String scanBase64 = base64.encodeToString(scan);
+        byte[] identify = objectMapper.writeValueAsBytes(new IdentifyRequest(scanBase64, null, null, candidates, null, null));
+
+        Map<String, Object> cborIdentify = new LinkedHashMap<>();
+        cborIdentify.put("scanTemplateBase64", scan);
+        cborIdentify.put("candidates", cborCandidates);
+
+        List<String> personTemplates = new ArrayList<>(VERIFY_TEMPLATES);
+        for (int impression = 1; impression <= VERIFY_TEMPLATES; impression++) {
+            personTemplates.add(base64.encodeToString(WarmUpTemplates.finger(SCAN_SEED, impression)));
+        }
+        byte[] verify = objectMapper.writeValueAsBytes(new VerifyRequest(scanBase64, null, null, personTemplates));
+
+        String api = "/api/v1/biometric";
+        return List.of(
+                new Call(base.resolve(api + "/identify"), MediaType.APPLICATION_JSON_VALUE, identify),
+                new Call(base.resolve(api + "/identify/stream"), MediaType.APPLICATION_JSON_VALUE, identify),
+                new Call(base.resolve(api + "/identify"), BiometricController.APPLICATION_CBOR_VALUE,
+                        new CBORMapper().writeValueAsBytes(cborIdentify)),
+                new Call(base.resolve(api + "/verify"), MediaType.APPLICATION_JSON_VALUE, verify));
+    }
+
+    /**
+     * A warm-up request. It is marked shard-local so that, on a shard coordinator, it warms up this
+     * instance's matching instead of fanning out to the shards, which may not be up yet.
+     */
+    record Call(URI uri, String contentType, byte[] body) {
+
+        void send(HttpClient client, String requestId) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", contentType)
+                    .header(RequestIdFilter.REQUEST_ID_HEADER, requestId)
+                    .header(ShardCoordinator.SHARD_LOCAL_HEADER, "true")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(uri.getPath() + " answered " + response.statusCode());
+            }
+        }
+    }
+}
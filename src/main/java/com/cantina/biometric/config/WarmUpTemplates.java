@@ -0,0 +1,57 @@
+package com.cantina.biometric.config;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic SourceAFIS templates for the startup warm-up: random minutiae spread over a full-size
+ * impression, so they pass the scan quality gate and cost as much to match as real fingers.
+ */
+final class WarmUpTemplates {
+
+    private static final CBORMapper MAPPER = new CBORMapper();
+    private static final short WIDTH = 400;
+    private static final short HEIGHT = 500;
+
+    private WarmUpTemplates() {
+    }
+
+    /**
+     * Template of the finger identified by {@code seed}; a non-zero {@code impression} jitters the
+     * minutiae slightly, like a second scan of the same finger.
+     */
+    static byte[] finger(long seed, int impression) {
+        Random random = new Random(seed);
+        Random jitter = new Random(seed * 31 + impression);
+        int count = 30 + random.nextInt(20);
+        short[] positionsX = new short[count];
+        short[] positionsY = new short[count];
+        float[] directions = new float[count];
+        StringBuilder types = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            int dx = impression == 0 ? 0 : jitter.nextInt(5) - 2;
+            int dy = impression == 0 ? 0 : jitter.nextInt(5) - 2;
+            positionsX[i] = (short) (20 + random.nextInt(WIDTH - 40) + dx);
+            positionsY[i] = (short) (20 + random.nextInt(HEIGHT - 40) + dy);
+            directions[i] = (float) (random.nextDouble() * 2 * Math.PI);
+            types.append(random.nextBoolean() ? 'E' : 'B');
+        }
+
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("version", "3.18.1");
+        template.put("width", WIDTH);
+        template.put("height", HEIGHT);
+        template.put("positionsX", positionsX);
+        template.put("positionsY", positionsY);
+        template.put("directions", directions);
+        template.put("types", types.toString());
+        try {
+            return MAPPER.writeValueAsBytes(template);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Unable to encode warm-up template", ex);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.cantina.biometric.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMetricsConfig implements WebMvcConfigurer {
+
+    private final StageTimingAdvice stageTimingAdvice;
+
+    public WebMetricsConfig(StageTimingAdvice stageTimingAdvice) {
+        this.stageTimingAdvice = stageTimingAdvice;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(stageTimingAdvice).addPathPatterns("/api/**");
+    }
+}
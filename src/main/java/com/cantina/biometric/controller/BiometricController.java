@@ -1,81 +1,386 @@
 package com.cantina.biometric.controller;
 
 import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestDeadlines;
 import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.dto.BatchIdentifyRequest;
+import com.cantina.biometric.dto.BatchIdentifyResponse;
+import com.cantina.biometric.dto.BatchVerifyRequest;
+import com.cantina.biometric.dto.BatchVerifyResponse;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.CborCandidateRequest;
+import com.cantina.biometric.dto.CborIdentifyRequest;
+import com.cantina.biometric.dto.CborVerifyRequest;
 import com.cantina.biometric.dto.IdentifyRequest;
 import com.cantina.biometric.dto.IdentifyResponse;
+import com.cantina.biometric.dto.RankedCandidateResponse;
 import com.cantina.biometric.dto.VerifyRequest;
 import com.cantina.biometric.dto.VerifyResponse;
+import com.cantina.biometric.exception.BadRequestException;
 import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.MatchDeadline;
+import com.cantina.biometric.service.MatchingAdmission;
+import com.cantina.biometric.service.RequestCoalescer;
+import com.cantina.biometric.service.ShardCoordinator;
+import com.cantina.biometric.service.StreamingMatchingService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/v1/biometric")
 public class BiometricController {
 
     private static final Logger log = LoggerFactory.getLogger(BiometricController.class);
 
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
     private final BiometricMatchingService matchingService;
+    private final StreamingMatchingService streamingMatchingService;
+    private final ShardCoordinator shardCoordinator;
+    private final MatchingAdmission admission;
+    private final RequestCoalescer coalescer;
+    private final RequestDeadlines requestDeadlines;
     private final BiometricProperties properties;
+    private final ObjectMapper objectMapper;
 
-    public BiometricController(BiometricMatchingService matchingService, BiometricProperties properties) {
+    public BiometricController(BiometricMatchingService matchingService,
+                               StreamingMatchingService streamingMatchingService,
+                               ShardCoordinator shardCoordinator,
+                               MatchingAdmission admission,
+                               RequestCoalescer coalescer,
+                               RequestDeadlines requestDeadlines,
+                               BiometricProperties properties,
+                               ObjectMapper objectMapper) {
         this.matchingService = matchingService;
+        this.streamingMatchingService = streamingMatchingService;
+        this.shardCoordinator = shardCoordinator;
+        this.admission = admission;
+        this.coalescer = coalescer;
+        this.requestDeadlines = requestDeadlines;
         this.properties = properties;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/identify")
-    public IdentifyResponse identify(@Valid @RequestBody IdentifyRequest request) {
-        log.info("event=identify-request-received requestId={} candidatesCount={}",
+    public CompletableFuture<IdentifyResponse> identify(@Valid @RequestBody IdentifyRequest request,
+                                                        @RequestHeader(value = ShardCoordinator.SHARD_LOCAL_HEADER, required = false) String shardLocal,
+                                                        HttpServletRequest httpRequest) {
+        log.info("event=identify-request-received requestId={} candidatesCount={} templatesCount={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                request.candidates().size());
+                request.candidates().size(),
+                request.candidates().stream().mapToInt(candidate -> candidate.templatesBase64().size()).sum());
 
         long start = System.nanoTime();
-        var result = matchingService.identify(request.scanTemplateBase64(), request.candidates());
-        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        MatchDeadline deadline = requestDeadlines.start(httpRequest, request.timeBudgetMs());
+        if (shardCoordinator.isEnabled() && shardLocal == null) {
+            return identifySharded(request, deadline, start);
+        }
+        int topK = request.topK() == null ? 0 : request.topK();
+        if (request.scanId() != null || Boolean.TRUE.equals(request.retainScan())) {
+            return admission.submit(() -> {
+                var scan = matchingService.prepareScan(request.scanTemplateBase64(), request.scanId(),
+                        Boolean.TRUE.equals(request.retainScan()));
+                var result = matchingService.identify(scan, request.candidates(), topK, deadline);
+                return toIdentifyResponse("identify", result, scan.scanId(), start);
+            });
+        }
+        return coalescer.submit("identify",
+                coalescer.identifyKey(request.scanTemplateBase64(), request.candidates(), topK),
+                deadline,
+                shared -> matchingService.identify(matchingService.prepareScan(request.scanTemplateBase64(), null, false),
+                        request.candidates(), topK, shared),
+                BiometricMatchingService.IdentifyResult::partial,
+                result -> toIdentifyResponse("identify", result, null, start));
+    }
 
-        log.info("event=identify requestId={} candidatesEvaluated={} elapsedMs={} maxScore={} matched={} threshold={}",
+    /**
+     * The same identify over a CBOR body, whose templates are bound straight to bytes: parallel matching,
+     * {@code topK}, scan handles, coalescing and shards all work as for JSON, without Base64 in between.
+     * Only the coordinator encodes them, since shards are called with JSON.
+     */
+    @PostMapping(value = "/identify", consumes = APPLICATION_CBOR_VALUE)
+    public CompletableFuture<IdentifyResponse> identifyCbor(@Valid @RequestBody CborIdentifyRequest request,
+                                                            @RequestHeader(value = ShardCoordinator.SHARD_LOCAL_HEADER, required = false) String shardLocal,
+                                                            HttpServletRequest httpRequest) {
+        log.info("event=identify-cbor-request-received requestId={} candidatesCount={} templatesCount={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                result.candidatesEvaluated(),
-                elapsedMs,
-                result.maxScore(),
-                result.matched(),
-                properties.getThreshold());
+                request.candidates().size(),
+                request.candidates().stream().mapToInt(candidate -> candidate.templatesBase64().size()).sum());
 
-        return new IdentifyResponse(
-                result.matched(),
-                result.candidateId(),
-                result.score(),
-                result.maxScore(),
-                result.candidatesEvaluated(),
-                elapsedMs
-        );
+        long start = System.nanoTime();
+        MatchDeadline deadline = requestDeadlines.start(httpRequest, request.timeBudgetMs());
+        if (shardCoordinator.isEnabled() && shardLocal == null) {
+            return identifySharded(toBase64(request), deadline, start);
+        }
+        int topK = request.topK() == null ? 0 : request.topK();
+        if (request.scanId() != null || Boolean.TRUE.equals(request.retainScan())) {
+            return admission.submit(() -> {
+                var scan = matchingService.prepareRawScan(request.scanTemplateBase64(), request.scanId(),
+                        Boolean.TRUE.equals(request.retainScan()));
+                var result = matchingService.identifyRaw(scan, request.candidates(), topK, deadline);
+                return toIdentifyResponse("identify-cbor", result, scan.scanId(), start);
+            });
+        }
+        return coalescer.submit("identify",
+                coalescer.rawIdentifyKey(request.scanTemplateBase64(), request.candidates(), topK),
+                deadline,
+                shared -> matchingService.identifyRaw(matchingService.prepareRawScan(request.scanTemplateBase64(), null, false),
+                        request.candidates(), topK, shared),
+                BiometricMatchingService.IdentifyResult::partial,
+                result -> toIdentifyResponse("identify-cbor", result, null, start));
+    }
+
+    @PostMapping(value = "/identify/stream", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<IdentifyResponse> identifyStream(HttpServletRequest request) throws IOException {
+        return identifyStreaming(request, objectMapper.getFactory().createParser(request.getInputStream()));
     }
 
     @PostMapping("/verify")
-    public VerifyResponse verify(@Valid @RequestBody VerifyRequest request) {
+    public CompletableFuture<VerifyResponse> verify(@Valid @RequestBody VerifyRequest request) {
         log.info("event=verify-request-received requestId={} templatesCount={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
                 request.personTemplatesBase64().size());
 
         long start = System.nanoTime();
-        var result = matchingService.verify(request.scanTemplateBase64(), request.personTemplatesBase64());
+        if (request.scanId() != null || Boolean.TRUE.equals(request.retainScan())) {
+            return admission.submit(() -> {
+                var scan = matchingService.prepareScan(request.scanTemplateBase64(), request.scanId(),
+                        Boolean.TRUE.equals(request.retainScan()));
+                var result = matchingService.verify(scan, request.personTemplatesBase64());
+                return toVerifyResponse("verify", request.personTemplatesBase64().size(), result, scan.scanId(), start);
+            });
+        }
+        return coalescer.submit("verify",
+                coalescer.verifyKey(request.scanTemplateBase64(), request.personTemplatesBase64()),
+                MatchDeadline.NONE,
+                shared -> matchingService.verify(matchingService.prepareScan(request.scanTemplateBase64(), null, false),
+                        request.personTemplatesBase64()),
+                result -> false,
+                result -> toVerifyResponse("verify", request.personTemplatesBase64().size(), result, null, start));
+    }
+
+    /**
+     * The same verify over a CBOR body, with templates bound straight to bytes like {@link #identifyCbor}.
+     */
+    @PostMapping(value = "/verify", consumes = APPLICATION_CBOR_VALUE)
+    public CompletableFuture<VerifyResponse> verifyCbor(@Valid @RequestBody CborVerifyRequest request) {
+        log.info("event=verify-cbor-request-received requestId={} templatesCount={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.personTemplatesBase64().size());
+
+        long start = System.nanoTime();
+        int templatesCount = request.personTemplatesBase64().size();
+        if (request.scanId() != null || Boolean.TRUE.equals(request.retainScan())) {
+            return admission.submit(() -> {
+                var scan = matchingService.prepareRawScan(request.scanTemplateBase64(), request.scanId(),
+                        Boolean.TRUE.equals(request.retainScan()));
+                var result = matchingService.verifyRaw(scan, request.personTemplatesBase64());
+                return toVerifyResponse("verify-cbor", templatesCount, result, scan.scanId(), start);
+            });
+        }
+        return coalescer.submit("verify",
+                coalescer.rawVerifyKey(request.scanTemplateBase64(), request.personTemplatesBase64()),
+                MatchDeadline.NONE,
+                shared -> matchingService.verifyRaw(matchingService.prepareRawScan(request.scanTemplateBase64(), null, false),
+                        request.personTemplatesBase64()),
+                result -> false,
+                result -> toVerifyResponse("verify-cbor", templatesCount, result, null, start));
+    }
+
+    private VerifyResponse toVerifyResponse(String event,
+                                            int templatesCount,
+                                            BiometricMatchingService.VerifyResult result,
+                                            String scanId,
+                                            long start) {
         long elapsedMs = (System.nanoTime() - start) / 1_000_000;
 
-        log.info("event=verify requestId={} templatesEvaluated={} elapsedMs={} maxScore={} matched={} threshold={}",
+        log.info("event={} requestId={} templatesEvaluated={} elapsedMs={} maxScore={} matched={} threshold={}",
+                event,
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                request.personTemplatesBase64().size(),
+                templatesCount,
                 elapsedMs,
                 result.score(),
                 result.verified(),
                 result.threshold());
 
-        return new VerifyResponse(result.verified(), result.score(), result.threshold(), elapsedMs);
+        return new VerifyResponse(result.verified(), result.score(), result.threshold(), elapsedMs, scanId, result.scanQuality());
+    }
+
+    @PostMapping("/identify/batch")
+    public CompletableFuture<BatchIdentifyResponse> identifyBatch(@Valid @RequestBody BatchIdentifyRequest request) {
+        log.info("event=identify-batch-request-received requestId={} scansCount={} candidatesCount={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.scanTemplatesBase64().size(),
+                request.candidates().size());
+
+        long start = System.nanoTime();
+        return admission.submit(() -> {
+            var results = matchingService.identifyBatch(request.scanTemplatesBase64(), request.candidates());
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            List<BatchIdentifyResponse.ScanResult> scanResults = new ArrayList<>(results.size());
+            int matchedCount = 0;
+            for (int i = 0; i < results.size(); i++) {
+                var result = results.get(i);
+                matchedCount += result.matched() ? 1 : 0;
+                scanResults.add(new BatchIdentifyResponse.ScanResult(i, result.matched(), result.candidateId(),
+                        result.score(), result.maxScore(), result.candidatesEvaluated(), result.duplicatesSkipped(), result.scanQuality()));
+            }
+
+            log.info("event=identify-batch requestId={} scansCount={} matchedCount={} candidatesCount={} elapsedMs={} threshold={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    results.size(),
+                    matchedCount,
+                    request.candidates().size(),
+                    elapsedMs,
+                    properties.getThreshold());
+
+            return new BatchIdentifyResponse(scanResults, request.candidates().size(), elapsedMs);
+        });
+    }
+
+    @PostMapping("/verify/batch")
+    public CompletableFuture<BatchVerifyResponse> verifyBatch(@Valid @RequestBody BatchVerifyRequest request) {
+        log.info("event=verify-batch-request-received requestId={} scansCount={} templatesCount={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.scanTemplatesBase64().size(),
+                request.personTemplatesBase64().size());
+
+        long start = System.nanoTime();
+        return admission.submit(() -> {
+            var results = matchingService.verifyBatch(request.scanTemplatesBase64(), request.personTemplatesBase64());
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            List<BatchVerifyResponse.ScanResult> scanResults = new ArrayList<>(results.size());
+            for (int i = 0; i < results.size(); i++) {
+                var result = results.get(i);
+                scanResults.add(new BatchVerifyResponse.ScanResult(i, result.verified(), result.score(), result.scanQuality()));
+            }
+
+            log.info("event=verify-batch requestId={} scansCount={} templatesCount={} elapsedMs={} threshold={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    results.size(),
+                    request.personTemplatesBase64().size(),
+                    elapsedMs,
+                    properties.getThreshold());
+
+            return new BatchVerifyResponse(scanResults, properties.getThreshold(), elapsedMs);
+        });
+    }
+
+    /**
+     * Runs asynchronously, like the bound identify, so a client that disconnects cancels the deadline
+     * and the matching stops at the next candidate. The body is read on the matching executor thread.
+     */
+    private CompletableFuture<IdentifyResponse> identifyStreaming(HttpServletRequest request, JsonParser parser) {
+        log.info("event=identify-stream-request-received requestId={} contentType={} contentLength={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.getContentType(),
+                request.getContentLengthLong());
+
+        long start = System.nanoTime();
+        MatchDeadline deadline = requestDeadlines.start(request, null);
+        return admission.submit(() -> {
+            try {
+                return toIdentifyResponse("identify-stream", streamingMatchingService.identify(parser, deadline), null, start);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Coordinator mode: a virtual thread waits for the shards under the in-flight limit instead of
+     * occupying a matching executor thread with network waits. The request is async, so a client that
+     * disconnects cancels the deadline and with it the shard calls.
+     */
+    private CompletableFuture<IdentifyResponse> identifySharded(IdentifyRequest request, MatchDeadline deadline, long start) {
+        if (request.scanId() != null || Boolean.TRUE.equals(request.retainScan())) {
+            throw new BadRequestException("scanId: scan handles are not supported in coordinator mode");
+        }
+        if (request.scanTemplateBase64() == null || request.scanTemplateBase64().isBlank()) {
+            throw new BadRequestException("scanTemplateBase64: scanTemplateBase64 is required");
+        }
+        return admission.submitWaiting(() -> {
+            var sharded = shardCoordinator.identify(request.scanTemplateBase64(), request.candidates(),
+                    request.topK() == null ? 0 : request.topK(), deadline);
+            return toIdentifyResponse("identify-sharded", sharded.result(), null, start);
+        });
+    }
+
+    /**
+     * The JSON form of a CBOR identify, for the shard calls.
+     */
+    private static IdentifyRequest toBase64(CborIdentifyRequest request) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        List<CandidateRequest> candidates = new ArrayList<>(request.candidates().size());
+        for (CborCandidateRequest candidate : request.candidates()) {
+            List<String> templates = new ArrayList<>(candidate.templatesBase64().size());
+            for (byte[] template : candidate.templatesBase64()) {
+                templates.add(encoder.encodeToString(template));
+            }
+            candidates.add(new CandidateRequest(candidate.candidateId(), templates));
+        }
+        String scanTemplate = request.scanTemplateBase64() == null ? null : encoder.encodeToString(request.scanTemplateBase64());
+        return new IdentifyRequest(scanTemplate, request.scanId(), request.retainScan(), candidates, request.topK(), request.timeBudgetMs());
+    }
+
+    private IdentifyResponse toIdentifyResponse(String event,
+                                                BiometricMatchingService.IdentifyResult result,
+                                                String scanId,
+                                                long start) {
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("event={} requestId={} candidatesEvaluated={} duplicatesSkipped={} elapsedMs={} maxScore={} matched={} partial={} threshold={}",
+                event,
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                result.candidatesEvaluated(),
+                result.duplicatesSkipped(),
+                elapsedMs,
+                result.maxScore(),
+                result.matched(),
+                result.partial(),
+                properties.getThreshold());
+
+        return new IdentifyResponse(
+                result.matched(),
+                result.candidateId(),
+                result.score(),
+                result.maxScore(),
+                result.candidatesEvaluated(),
+                result.duplicatesSkipped(),
+                elapsedMs,
+                toRankedResponses(result.topCandidates()),
+                scanId,
+                result.partial(),
+                result.scanQuality()
+        );
+    }
+
+    static List<RankedCandidateResponse> toRankedResponses(List<BiometricMatchingService.RankedCandidate> ranked) {
+        if (ranked == null) {
+            return null;
+        }
+        return ranked.stream()
+                .map(candidate -> new RankedCandidateResponse(candidate.candidateId(), candidate.score()))
+                .toList();
     }
 }
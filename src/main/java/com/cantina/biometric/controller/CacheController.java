@@ -0,0 +1,36 @@
+package com.cantina.biometric.controller;
+
+import com.cantina.biometric.dto.TemplateCacheStatsResponse;
+import com.cantina.biometric.service.TemplateCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/biometric/cache")
+public class CacheController {
+
+    private final TemplateCache templateCache;
+
+    public CacheController(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    @GetMapping("/templates")
+    public TemplateCacheStatsResponse templates() {
+        var snapshot = templateCache.snapshot();
+        var stats = snapshot.stats();
+        return new TemplateCacheStatsResponse(
+                snapshot.enabled(),
+                snapshot.entries(),
+                snapshot.weightBytes(),
+                snapshot.maxBytes(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                stats.evictionWeight(),
+                snapshot.collisions()
+        );
+    }
+}
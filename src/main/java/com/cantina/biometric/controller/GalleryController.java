@@ -0,0 +1,130 @@
+package com.cantina.biometric.controller;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestDeadlines;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.dto.EnrollRequest;
+import com.cantina.biometric.dto.GalleryCandidateResponse;
+import com.cantina.biometric.dto.GalleryIdentifyRequest;
+import com.cantina.biometric.dto.IdentifyResponse;
+import com.cantina.biometric.exception.NotFoundException;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.EnrolledCandidate;
+import com.cantina.biometric.service.GalleryService;
+import com.cantina.biometric.service.MatchDeadline;
+import com.cantina.biometric.service.MatchingAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/api/v1/biometric/gallery")
+public class GalleryController {
+
+    private static final Logger log = LoggerFactory.getLogger(GalleryController.class);
+
+    private final GalleryService galleryService;
+    private final BiometricMatchingService matchingService;
+    private final MatchingAdmission admission;
+    private final RequestDeadlines requestDeadlines;
+    private final BiometricProperties properties;
+
+    public GalleryController(GalleryService galleryService,
+                             BiometricMatchingService matchingService,
+                             MatchingAdmission admission,
+                             RequestDeadlines requestDeadlines,
+                             BiometricProperties properties) {
+        this.galleryService = galleryService;
+        this.matchingService = matchingService;
+        this.admission = admission;
+        this.requestDeadlines = requestDeadlines;
+        this.properties = properties;
+    }
+
+    @PutMapping("/{candidateId}")
+    public GalleryCandidateResponse enroll(@PathVariable String candidateId, @Valid @RequestBody EnrollRequest request) {
+        return toResponse(galleryService.enroll(candidateId, request.gallery(), request.templatesBase64()));
+    }
+
+    @GetMapping("/{candidateId}")
+    public GalleryCandidateResponse get(@PathVariable String candidateId) {
+        return galleryService.find(candidateId)
+                .map(GalleryController::toResponse)
+                .orElseThrow(() -> new NotFoundException("candidateId not enrolled: " + candidateId));
+    }
+
+    @DeleteMapping("/{candidateId}")
+    public ResponseEntity<Void> delete(@PathVariable String candidateId) {
+        if (!galleryService.remove(candidateId)) {
+            throw new NotFoundException("candidateId not enrolled: " + candidateId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/identify")
+    public CompletableFuture<IdentifyResponse> identify(@Valid @RequestBody GalleryIdentifyRequest request,
+                                                        HttpServletRequest httpRequest) {
+        log.info("event=gallery-identify-request-received requestId={} gallery={} candidateIdsCount={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.gallery(),
+                request.candidateIds() == null ? 0 : request.candidateIds().size());
+
+        long start = System.nanoTime();
+        MatchDeadline deadline = requestDeadlines.start(httpRequest, request.timeBudgetMs());
+        return admission.submit(() -> {
+            var candidates = galleryService.select(request.gallery(), request.candidateIds());
+            var scan = matchingService.prepareScan(request.scanTemplateBase64(), request.scanId(),
+                    Boolean.TRUE.equals(request.retainScan()));
+            var result = matchingService.identifyEnrolled(scan, candidates,
+                    request.topK() == null ? 0 : request.topK(),
+                    Boolean.TRUE.equals(request.exhaustive()),
+                    deadline);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            log.info("event=gallery-identify requestId={} candidatesEvaluated={} elapsedMs={} maxScore={} matched={} partial={} threshold={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    result.candidatesEvaluated(),
+                    elapsedMs,
+                    result.maxScore(),
+                    result.matched(),
+                    result.partial(),
+                    properties.getThreshold());
+
+            return new IdentifyResponse(
+                    result.matched(),
+                    result.candidateId(),
+                    result.score(),
+                    result.maxScore(),
+                    result.candidatesEvaluated(),
+                    result.duplicatesSkipped(),
+                    elapsedMs,
+                    BiometricController.toRankedResponses(result.topCandidates()),
+                    scan.scanId(),
+                    result.partial(),
+                    result.scanQuality()
+            );
+        });
+    }
+
+    private static GalleryCandidateResponse toResponse(EnrolledCandidate candidate) {
+        return new GalleryCandidateResponse(
+                candidate.candidateId(),
+                candidate.gallery(),
+                candidate.templates().size(),
+                candidate.enrolledAt()
+        );
+    }
+}
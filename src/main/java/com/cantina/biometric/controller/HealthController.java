@@ -1,5 +1,10 @@
 package com.cantina.biometric.controller;
 
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -8,15 +13,45 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 
+/**
+ * {@code /health/live} says whether the process should be restarted, {@code /health/ready} whether it
+ * should get traffic: readiness stays {@code REFUSING_TRAFFIC} until the startup warm-up is done.
+ * {@code /health} is kept as a liveness check for existing monitors.
+ */
 @RestController
 @RequestMapping("/health")
 public class HealthController {
 
     private static final Logger log = LoggerFactory.getLogger(HealthController.class);
 
+    private final ApplicationAvailability availability;
+
+    public HealthController(ApplicationAvailability availability) {
+        this.availability = availability;
+    }
+
     @GetMapping
     public Map<String, String> health() {
         log.info("event=health-check status=UP");
         return Map.of("status", "UP");
     }
+
+    @GetMapping("/live")
+    public ResponseEntity<Map<String, String>> live() {
+        LivenessState state = availability.getLivenessState();
+        log.info("event=liveness-check state={}", state);
+        return probe(state == LivenessState.CORRECT, state.name());
+    }
+
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, String>> ready() {
+        ReadinessState state = availability.getReadinessState();
+        log.info("event=readiness-check state={}", state);
+        return probe(state == ReadinessState.ACCEPTING_TRAFFIC, state.name());
+    }
+
+    private static ResponseEntity<Map<String, String>> probe(boolean up, String state) {
+        return ResponseEntity.status(up ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("status", up ? "UP" : "DOWN", "state", state));
+    }
 }
@@ -0,0 +1,15 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record BatchIdentifyRequest(
+        @NotEmpty(message = "scanTemplatesBase64 must contain at least one scan")
+        List<@NotBlank(message = "scan in scanTemplatesBase64 cannot be blank") String> scanTemplatesBase64,
+        @NotEmpty(message = "candidates must contain at least one candidate")
+        List<@Valid CandidateRequest> candidates
+) {
+}
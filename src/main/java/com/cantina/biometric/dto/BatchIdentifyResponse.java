@@ -0,0 +1,22 @@
+package com.cantina.biometric.dto;
+
+import java.util.List;
+
+public record BatchIdentifyResponse(
+        List<ScanResult> results,
+        int candidatesCount,
+        long elapsedMs
+) {
+
+    public record ScanResult(
+            int scanIndex,
+            boolean matched,
+            String candidateId,
+            Double score,
+            double maxScore,
+            int candidatesEvaluated,
+            int duplicatesSkipped,
+            Double scanQuality
+    ) {
+    }
+}
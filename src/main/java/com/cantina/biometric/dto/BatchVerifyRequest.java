@@ -0,0 +1,14 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record BatchVerifyRequest(
+        @NotEmpty(message = "scanTemplatesBase64 must contain at least one scan")
+        List<@NotBlank(message = "scan in scanTemplatesBase64 cannot be blank") String> scanTemplatesBase64,
+        @NotEmpty(message = "personTemplatesBase64 must contain at least one template")
+        List<@NotBlank(message = "template in personTemplatesBase64 cannot be blank") String> personTemplatesBase64
+) {
+}
@@ -0,0 +1,18 @@
+package com.cantina.biometric.dto;
+
+import java.util.List;
+
+public record BatchVerifyResponse(
+        List<ScanResult> results,
+        double threshold,
+        long elapsedMs
+) {
+
+    public record ScanResult(
+            int scanIndex,
+            boolean verified,
+            double score,
+            Double scanQuality
+    ) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * {@link IdentifyRequest} as bound from CBOR: templates are bound straight to bytes, so a CBOR byte
+ * string is taken as it is read instead of being turned into Base64 text and decoded again. Field names
+ * are those of the JSON request, so the documents and the validation messages are the same.
+ */
+public record CborIdentifyRequest(
+        byte[] scanTemplateBase64,
+        String scanId,
+        Boolean retainScan,
+        @NotEmpty(message = "candidates must contain at least one candidate")
+        List<@Valid CborCandidateRequest> candidates,
+        @Min(value = 1, message = "topK must be at least 1")
+        @Max(value = 100, message = "topK must be at most 100")
+        Integer topK,
+        @Min(value = 1, message = "timeBudgetMs must be at least 1")
+        Long timeBudgetMs
+) {
+}
@@ -0,0 +1,18 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * {@link VerifyRequest} as bound from CBOR, with templates bound straight to bytes like
+ * {@link CborIdentifyRequest}.
+ */
+public record CborVerifyRequest(
+        byte[] scanTemplateBase64,
+        String scanId,
+        Boolean retainScan,
+        @NotEmpty(message = "personTemplatesBase64 must contain at least one template")
+        List<byte @NotEmpty(message = "template in personTemplatesBase64 cannot be blank") []> personTemplatesBase64
+) {
+}
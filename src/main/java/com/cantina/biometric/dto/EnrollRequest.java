@@ -0,0 +1,13 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record EnrollRequest(
+        String gallery,
+        @NotEmpty(message = "templatesBase64 must contain at least one template")
+        List<@NotBlank(message = "template in templatesBase64 cannot be blank") String> templatesBase64
+) {
+}
@@ -0,0 +1,11 @@
+package com.cantina.biometric.dto;
+
+import java.time.Instant;
+
+public record GalleryCandidateResponse(
+        String candidateId,
+        String gallery,
+        int templatesCount,
+        Instant enrolledAt
+) {
+}
@@ -0,0 +1,22 @@
+package com.cantina.biometric.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+
+import java.util.List;
+
+public record GalleryIdentifyRequest(
+        String scanTemplateBase64,
+        String scanId,
+        Boolean retainScan,
+        String gallery,
+        List<@NotBlank(message = "candidateId in candidateIds cannot be blank") String> candidateIds,
+        @Min(value = 1, message = "topK must be at least 1")
+        @Max(value = 100, message = "topK must be at most 100")
+        Integer topK,
+        Boolean exhaustive,
+        @Min(value = 1, message = "timeBudgetMs must be at least 1")
+        Long timeBudgetMs
+) {
+}
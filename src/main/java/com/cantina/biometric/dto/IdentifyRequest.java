@@ -1,15 +1,22 @@
 package com.cantina.biometric.dto;
 
 import jakarta.validation.Valid;
-import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 
 import java.util.List;
 
 public record IdentifyRequest(
-        @NotBlank(message = "scanTemplateBase64 is required")
         String scanTemplateBase64,
+        String scanId,
+        Boolean retainScan,
         @NotEmpty(message = "candidates must contain at least one candidate")
-        List<@Valid CandidateRequest> candidates
+        List<@Valid CandidateRequest> candidates,
+        @Min(value = 1, message = "topK must be at least 1")
+        @Max(value = 100, message = "topK must be at most 100")
+        Integer topK,
+        @Min(value = 1, message = "timeBudgetMs must be at least 1")
+        Long timeBudgetMs
 ) {
 }
@@ -1,11 +1,18 @@
 package com.cantina.biometric.dto;
 
+import java.util.List;
+
 public record IdentifyResponse(
         boolean matched,
         String candidateId,
         Double score,
         double maxScore,
         int candidatesEvaluated,
-        long elapsedMs
+        int duplicatesSkipped,
+        long elapsedMs,
+        List<RankedCandidateResponse> topCandidates,
+        String scanId,
+        boolean partial,
+        Double scanQuality
 ) {
 }
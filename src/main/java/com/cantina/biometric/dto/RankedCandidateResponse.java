@@ -0,0 +1,7 @@
+package com.cantina.biometric.dto;
+
+public record RankedCandidateResponse(
+        String candidateId,
+        double score
+) {
+}
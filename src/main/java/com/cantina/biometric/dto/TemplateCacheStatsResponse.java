@@ -0,0 +1,15 @@
+package com.cantina.biometric.dto;
+
+public record TemplateCacheStatsResponse(
+        boolean enabled,
+        long entries,
+        long weightBytes,
+        long maxBytes,
+        long hitCount,
+        long missCount,
+        double hitRate,
+        long evictionCount,
+        long evictionWeightBytes,
+        long collisions
+) {
+}
@@ -6,8 +6,9 @@ import jakarta.validation.constraints.NotEmpty;
 import java.util.List;
 
 public record VerifyRequest(
-        @NotBlank(message = "scanTemplateBase64 is required")
         String scanTemplateBase64,
+        String scanId,
+        Boolean retainScan,
         @NotEmpty(message = "personTemplatesBase64 must contain at least one template")
         List<@NotBlank(message = "template in personTemplatesBase64 cannot be blank") String> personTemplatesBase64
 ) {
@@ -4,6 +4,8 @@ public record VerifyResponse(
         boolean verified,
         double score,
         double threshold,
-        long elapsedMs
+        long elapsedMs,
+        String scanId,
+        Double scanQuality
 ) {
 }
@@ -6,6 +6,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -13,6 +14,7 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import java.time.Instant;
 import java.util.stream.Collectors;
@@ -22,6 +24,11 @@ public class GlobalExceptionHandler {
 
     private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    /**
+     * Carries the quality score of a rejected scan, so terminals can read it without parsing the message.
+     */
+    public static final String SCAN_QUALITY_HEADER = "X-Scan-Quality";
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidation(MethodArgumentNotValidException ex, HttpServletRequest request) {
         String message = ex.getBindingResult().getAllErrors().stream()
@@ -53,6 +60,16 @@ public class GlobalExceptionHandler {
         return buildError(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
     }
 
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleNotFound(NotFoundException ex, HttpServletRequest request) {
+        log.warn("event=not-found requestId={} method={} path={} message={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.getMethod(),
+                request.getRequestURI(),
+                ex.getMessage());
+        return buildError(HttpStatus.NOT_FOUND, ex.getMessage(), request);
+    }
+
     @ExceptionHandler(PayloadTooLargeException.class)
     public ResponseEntity<ErrorResponse> handleTooLarge(PayloadTooLargeException ex, HttpServletRequest request) {
         log.warn("event=payload-too-large requestId={} method={} path={} message={}",
@@ -63,6 +80,47 @@ public class GlobalExceptionHandler {
         return buildError(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage(), request);
     }
 
+    @ExceptionHandler(LowQualityScanException.class)
+    public ResponseEntity<ErrorResponse> handleLowQualityScan(LowQualityScanException ex, HttpServletRequest request) {
+        log.warn("event=low-quality-scan requestId={} method={} path={} scanQuality={} message={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.getMethod(),
+                request.getRequestURI(),
+                ex.getScanQuality(),
+                ex.getMessage());
+        ResponseEntity<ErrorResponse> error = buildError(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage(), request);
+        return ResponseEntity.status(error.getStatusCode())
+                .header(SCAN_QUALITY_HEADER, String.valueOf(ex.getScanQuality()))
+                .body(error.getBody());
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleUnavailable(ServiceUnavailableException ex, HttpServletRequest request) {
+        log.warn("event=service-unavailable requestId={} method={} path={} retryAfterSeconds={} message={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.getMethod(),
+                request.getRequestURI(),
+                ex.getRetryAfterSeconds(),
+                ex.getMessage());
+        ResponseEntity<ErrorResponse> error = buildError(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), request);
+        return ResponseEntity.status(error.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error.getBody());
+    }
+
+    /**
+     * The async request timeout ({@code spring.mvc.async.request-timeout}) fired before the matching
+     * finished; the matching itself has already been cancelled by the request's deadline.
+     */
+    @ExceptionHandler(AsyncRequestTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleAsyncTimeout(AsyncRequestTimeoutException ex, HttpServletRequest request) {
+        log.warn("event=async-request-timeout requestId={} method={} path={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                request.getMethod(),
+                request.getRequestURI());
+        return buildError(HttpStatus.SERVICE_UNAVAILABLE, "Request timed out before matching finished", request);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGeneric(Exception ex, HttpServletRequest request) {
         log.error("event=unhandled-exception requestId={} method={} path={} message={}",
@@ -0,0 +1,18 @@
+package com.cantina.biometric.exception;
+
+/**
+ * The scan was readable but too poor to be worth matching; the terminal should ask for a new scan.
+ */
+public class LowQualityScanException extends RuntimeException {
+
+    private final double scanQuality;
+
+    public LowQualityScanException(String message, double scanQuality) {
+        super(message);
+        this.scanQuality = scanQuality;
+    }
+
+    public double getScanQuality() {
+        return scanQuality;
+    }
+}
@@ -0,0 +1,7 @@
+package com.cantina.biometric.exception;
+
+public class NotFoundException extends RuntimeException {
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
@@ -3,7 +3,9 @@ package com.cantina.biometric.service;
 import com.cantina.biometric.config.BiometricProperties;
 import com.cantina.biometric.config.RequestIdFilter;
 import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.CborCandidateRequest;
 import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.exception.NotFoundException;
 import com.machinezoo.sourceafis.FingerprintMatcher;
 import com.machinezoo.sourceafis.FingerprintTemplate;
 import org.slf4j.Logger;
@@ -11,115 +13,548 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.stereotype.Service;
 
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class BiometricMatchingService {
 
     private static final Logger log = LoggerFactory.getLogger(BiometricMatchingService.class);
 
+    private static final String SCAN_FIELD = "scanTemplateBase64";
+
     private final BiometricProperties properties;
+    private final TemplateDecoder templateDecoder;
+    private final CandidateMatchingEngine matchingEngine;
+    private final CandidatePrefilter prefilter;
+    private final ScanMatcherCache scanCache;
+    private final CandidateHeat candidateHeat;
+    private final ScanQualityGate qualityGate;
+    private final ScoreMemo scoreMemo;
+    private final MatchingMetrics metrics;
 
-    public BiometricMatchingService(BiometricProperties properties) {
+    public BiometricMatchingService(BiometricProperties properties,
+                                    TemplateDecoder templateDecoder,
+                                    CandidateMatchingEngine matchingEngine,
+                                    CandidatePrefilter prefilter,
+                                    ScanMatcherCache scanCache,
+                                    CandidateHeat candidateHeat,
+                                    ScanQualityGate qualityGate,
+                                    ScoreMemo scoreMemo,
+                                    MatchingMetrics metrics) {
         this.properties = properties;
+        this.templateDecoder = templateDecoder;
+        this.matchingEngine = matchingEngine;
+        this.prefilter = prefilter;
+        this.scanCache = scanCache;
+        this.candidateHeat = candidateHeat;
+        this.qualityGate = qualityGate;
+        this.scoreMemo = scoreMemo;
+        this.metrics = metrics;
     }
 
     public IdentifyResult identify(String scanTemplateBase64, List<CandidateRequest> candidates) {
-        log.info("event=identify-start requestId={} candidatesCount={} threshold={} maxCandidates={}",
+        return identify(scanTemplateBase64, candidates, 0);
+    }
+
+    /**
+     * Identifies the scan and, when {@code topK} is positive, also ranks the {@code topK} best
+     * candidates scoring above zero in the same pass.
+     */
+    public IdentifyResult identify(String scanTemplateBase64, List<CandidateRequest> candidates, int topK) {
+        return identify(prepareScan(scanTemplateBase64, null, false), candidates, topK, MatchDeadline.NONE);
+    }
+
+    /**
+     * Stops matching once {@code deadline} expires and returns the best candidate so far, flagged partial.
+     */
+    public IdentifyResult identify(PreparedScan scan, List<CandidateRequest> candidates, int topK, MatchDeadline deadline) {
+        return identifyRequest(scan, candidates, topK, deadline, CandidateRequest::candidateId, CandidateRequest::templatesBase64,
+                templateDecoder::decodeCandidateTemplateHashed);
+    }
+
+    /**
+     * Same as {@link #identify(PreparedScan, List, int, MatchDeadline)} for candidates whose templates
+     * arrived as raw bytes, e.g. CBOR byte strings, which are taken as they are instead of decoded.
+     */
+    public IdentifyResult identifyRaw(PreparedScan scan, List<CborCandidateRequest> candidates, int topK, MatchDeadline deadline) {
+        return identifyRequest(scan, candidates, topK, deadline, CborCandidateRequest::candidateId, CborCandidateRequest::templatesBase64,
+                templateDecoder::fromCandidateBytesHashed);
+    }
+
+    private <T, E> IdentifyResult identifyRequest(PreparedScan scan,
+                                                  List<T> candidates,
+                                                  int topK,
+                                                  MatchDeadline deadline,
+                                                  Function<T, String> candidateIdOf,
+                                                  Function<T, List<E>> templatesOf,
+                                                  BiFunction<E, String, TemplateDecoder.HashedTemplate> decode) {
+        log.info("event=identify-start requestId={} candidatesCount={} threshold={} maxCandidates={} topK={} budgetMs={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
                 candidates.size(),
                 properties.getThreshold(),
-                properties.getMaxCandidates());
+                properties.getMaxCandidates(),
+                topK,
+                budgetOf(deadline));
 
         if (candidates.size() > properties.getMaxCandidates()) {
             throw new BadRequestException("candidates exceeds configured MAX_CANDIDATES=" + properties.getMaxCandidates());
         }
 
-        FingerprintTemplate scanTemplate = toTemplate(scanTemplateBase64, "scanTemplateBase64");
-        FingerprintMatcher matcher = new FingerprintMatcher(scanTemplate);
-
-        String bestCandidateId = null;
-        double maxScore = 0d;
-
-        for (CandidateRequest candidate : candidates) {
+        int templatesCount = candidates.stream().mapToInt(candidate -> templatesOf.apply(candidate).size()).sum();
+        ScoreMemo.Key scanKey = memoKey(scan);
+        TemplateScores scores = scanKey != null
+                ? new TemplateScores(scan.matcher(), scoreMemo, scanKey)
+                : new TemplateScores(scan.matcher());
+        return identifyAgainst("identify", scores, candidates, templatesCount, topK, deadline, candidateIdOf, (templateScores, candidate) -> {
+            String candidateId = candidateIdOf.apply(candidate);
             double candidateScore = 0d;
-            for (String candidateTemplateBase64 : candidate.templatesBase64()) {
-                FingerprintTemplate candidateTemplate = toTemplate(candidateTemplateBase64,
-                        "templatesBase64 for candidateId=" + candidate.candidateId());
-                double score = matcher.match(candidateTemplate);
+            for (E candidateTemplate : templatesOf.apply(candidate)) {
+                double score = templateScores.match(decode.apply(candidateTemplate, candidateId));
                 candidateScore = Math.max(candidateScore, score);
             }
+            return candidateScore;
+        }).withScanQuality(scan.scanQuality());
+    }
+
+    /**
+     * Identifies the scan against candidates already enrolled in the gallery, whose templates are kept
+     * deserialized so only the scan itself is decoded per request.
+     */
+    public IdentifyResult identifyEnrolled(String scanTemplateBase64, List<EnrolledCandidate> candidates) {
+        return identifyEnrolled(scanTemplateBase64, candidates, 0);
+    }
 
-            log.debug("event=identify-candidate-evaluated requestId={} candidateId={} templatesCount={} candidateMaxScore={}",
+    public IdentifyResult identifyEnrolled(String scanTemplateBase64, List<EnrolledCandidate> candidates, int topK) {
+        return identifyEnrolled(scanTemplateBase64, candidates, topK, false);
+    }
+
+    /**
+     * Gallery identify in two stages: unless {@code exhaustive} is set, {@link CandidatePrefilter} first
+     * narrows the candidates by feature similarity and only the shortlist goes through the full matcher.
+     * When the shortlist yields no match and the exhaustive fallback is enabled, every candidate is
+     * matched again, so a genuine match missed by the pre-filter only costs time.
+     */
+    public IdentifyResult identifyEnrolled(String scanTemplateBase64, List<EnrolledCandidate> candidates, int topK, boolean exhaustive) {
+        return identifyEnrolled(prepareScan(scanTemplateBase64, null, false), candidates, topK, exhaustive, MatchDeadline.NONE);
+    }
+
+    public IdentifyResult identifyEnrolled(PreparedScan scan,
+                                           List<EnrolledCandidate> candidates,
+                                           int topK,
+                                           boolean exhaustive,
+                                           MatchDeadline deadline) {
+        log.info("event=identify-enrolled-start requestId={} candidatesCount={} threshold={} topK={} exhaustive={} budgetMs={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                candidates.size(),
+                properties.getThreshold(),
+                topK,
+                exhaustive,
+                budgetOf(deadline));
+
+        List<EnrolledCandidate> shortlist = exhaustive || prefilter.shortlistSize(candidates.size()) >= candidates.size()
+                ? candidates
+                : prefilter.shortlist(TemplateFeatures.extract(scan.templateBytes() != null
+                        ? scan.templateBytes()
+                        : scan.template().toByteArray()), candidates);
+
+        // Shared by the fallback, so a template that is both shortlisted and enrolled under a
+        // candidate left out of the shortlist is still matched once.
+        TemplateScores scores = new TemplateScores(scan.matcher());
+        IdentifyResult result = identifyEnrolledAgainst(scores, shortlist, topK, deadline);
+        if (shortlist != candidates && !result.matched() && !result.partial() && properties.isPrefilterFallbackExhaustive()) {
+            log.info("event=gallery-prefilter-fallback requestId={} shortlistedCount={} candidatesCount={} maxScore={}",
                     MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                    candidate.candidateId(),
-                    candidate.templatesBase64().size(),
-                    candidateScore);
+                    shortlist.size(),
+                    candidates.size(),
+                    result.maxScore());
+            IdentifyResult rest = identifyEnrolledAgainst(scores, notShortlisted(candidates, shortlist), topK, deadline);
+            result = mergeFallback(result, rest, candidates, topK);
+        }
+        return result.withScanQuality(scan.scanQuality());
+    }
 
-            if (candidateScore > maxScore) {
-                maxScore = candidateScore;
-                bestCandidateId = candidate.candidateId();
+    private static List<EnrolledCandidate> notShortlisted(List<EnrolledCandidate> candidates, List<EnrolledCandidate> shortlist) {
+        Set<EnrolledCandidate> shortlisted = Collections.newSetFromMap(new IdentityHashMap<>());
+        shortlisted.addAll(shortlist);
+        List<EnrolledCandidate> rest = new ArrayList<>(candidates.size() - shortlist.size());
+        for (EnrolledCandidate candidate : candidates) {
+            if (!shortlisted.contains(candidate)) {
+                rest.add(candidate);
             }
         }
+        return rest;
+    }
 
-        boolean matched = maxScore >= properties.getThreshold() && bestCandidateId != null;
-        log.info("event=identify-finish requestId={} matched={} bestCandidateId={} maxScore={} candidatesEvaluated={}",
+    /**
+     * Combines the shortlist pass with the fallback over the other candidates, so every candidate is
+     * evaluated and counted once. The fallback only runs when nothing in the shortlist reached the
+     * threshold, so a match can only come from {@code rest}; ranked candidates from both passes are
+     * merged by score, ties going to the candidate enrolled first.
+     */
+    private static IdentifyResult mergeFallback(IdentifyResult shortlisted,
+                                                IdentifyResult rest,
+                                                List<EnrolledCandidate> candidates,
+                                                int topK) {
+        List<RankedCandidate> topCandidates = null;
+        if (shortlisted.topCandidates() != null && rest.topCandidates() != null) {
+            Map<String, Integer> positions = new HashMap<>(candidates.size() * 2);
+            for (int i = 0; i < candidates.size(); i++) {
+                positions.put(candidates.get(i).candidateId(), i);
+            }
+            topCandidates = new ArrayList<>(shortlisted.topCandidates());
+            topCandidates.addAll(rest.topCandidates());
+            topCandidates.sort(Comparator.comparingDouble(RankedCandidate::score).reversed()
+                    .thenComparing(ranked -> positions.get(ranked.candidateId())));
+            topCandidates = List.copyOf(topCandidates.subList(0, Math.min(topK, topCandidates.size())));
+        }
+        return new IdentifyResult(rest.matched(), rest.candidateId(), rest.score(),
+                Math.max(shortlisted.maxScore(), rest.maxScore()),
+                shortlisted.candidatesEvaluated() + rest.candidatesEvaluated(),
+                shortlisted.duplicatesSkipped() + rest.duplicatesSkipped(),
+                topCandidates, rest.partial(), null);
+    }
+
+    private IdentifyResult identifyEnrolledAgainst(TemplateScores scores,
+                                                   List<EnrolledCandidate> candidates,
+                                                   int topK,
+                                                   MatchDeadline deadline) {
+        int templatesCount = candidates.stream().mapToInt(candidate -> candidate.templates().size()).sum();
+        return identifyAgainst("gallery-identify", scores, candidates, templatesCount, topK, deadline,
+                EnrolledCandidate::candidateId, (templateScores, candidate) -> maxScore(templateScores, candidate.templates()));
+    }
+
+    /**
+     * Identifies every scan against the same candidate set. Candidate templates are decoded once and
+     * shared by all scans, and the scans are matched in parallel on the matching pool. Results are in
+     * scan order.
+     */
+    public List<IdentifyResult> identifyBatch(List<String> scanTemplatesBase64, List<CandidateRequest> candidates) {
+        log.info("event=identify-batch-start requestId={} scansCount={} candidatesCount={} threshold={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                matched,
-                matched ? bestCandidateId : null,
-                maxScore,
-                candidates.size());
-        return new IdentifyResult(matched, matched ? bestCandidateId : null, matched ? maxScore : null, maxScore, candidates.size());
+                scanTemplatesBase64.size(),
+                candidates.size(),
+                properties.getThreshold());
+
+        checkBatchSize(scanTemplatesBase64);
+        if (candidates.size() > properties.getMaxCandidates()) {
+            throw new BadRequestException("candidates exceeds configured MAX_CANDIDATES=" + properties.getMaxCandidates());
+        }
+
+        List<DecodedCandidate> decoded = matchingEngine.mapInOrder(candidates.size(), i -> {
+            CandidateRequest candidate = candidates.get(i);
+            return new DecodedCandidate(candidate.candidateId(),
+                    decodeAll(candidate.templatesBase64(), "templatesBase64 for candidateId=" + candidate.candidateId()));
+        });
+        int templatesCount = decoded.stream().mapToInt(candidate -> candidate.templates().size()).sum();
+
+        return matchingEngine.mapInOrder(scanTemplatesBase64.size(), i -> {
+            PreparedScan scan = prepareScan(scanTemplatesBase64.get(i), batchScanField(i));
+            return identifyAgainst("identify-batch", new TemplateScores(scan.matcher()), decoded, templatesCount,
+                    0, MatchDeadline.NONE, DecodedCandidate::candidateId,
+                    (templateScores, candidate) -> {
+                        double candidateScore = 0d;
+                        for (TemplateDecoder.HashedTemplate template : candidate.templates()) {
+                            candidateScore = Math.max(candidateScore, templateScores.match(template));
+                        }
+                        return candidateScore;
+                    })
+                    .withScanQuality(scan.scanQuality());
+        });
     }
 
     public VerifyResult verify(String scanTemplateBase64, List<String> personTemplatesBase64) {
+        return verify(prepareScan(scanTemplateBase64, null, false), personTemplatesBase64);
+    }
+
+    public VerifyResult verify(PreparedScan scan, List<String> personTemplatesBase64) {
+        return verifyRequest(scan, personTemplatesBase64, templateDecoder::decodeHashed);
+    }
+
+    /**
+     * Same as {@link #verify(PreparedScan, List)} for person templates that arrived as raw bytes.
+     */
+    public VerifyResult verifyRaw(PreparedScan scan, List<byte[]> personTemplates) {
+        return verifyRequest(scan, personTemplates, templateDecoder::fromBytesHashed);
+    }
+
+    private <E> VerifyResult verifyRequest(PreparedScan scan,
+                                           List<E> personTemplates,
+                                           BiFunction<E, String, TemplateDecoder.HashedTemplate> decode) {
         log.info("event=verify-start requestId={} templatesCount={} threshold={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                personTemplatesBase64.size(),
+                personTemplates.size(),
                 properties.getThreshold());
 
-        FingerprintTemplate scanTemplate = toTemplate(scanTemplateBase64, "scanTemplateBase64");
-        FingerprintMatcher matcher = new FingerprintMatcher(scanTemplate);
+        long matchingStart = System.nanoTime();
+        ScoreMemo.Key scanKey = memoKey(scan);
         double maxScore = 0d;
 
-        for (String personTemplateBase64 : personTemplatesBase64) {
-            FingerprintTemplate personTemplate = toTemplate(personTemplateBase64, "personTemplatesBase64");
-            double score = matcher.match(personTemplate);
+        for (E template : personTemplates) {
+            TemplateDecoder.HashedTemplate personTemplate = decode.apply(template, "personTemplatesBase64");
+            double score = score(scan, scanKey, personTemplate);
             maxScore = Math.max(maxScore, score);
         }
+        metrics.recordMatching("verify", System.nanoTime() - matchingStart, 1, personTemplates.size(), maxScore);
 
         log.info("event=verify-finish requestId={} verified={} maxScore={} templatesEvaluated={}",
                 MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
                 maxScore >= properties.getThreshold(),
                 maxScore,
-                personTemplatesBase64.size());
+                personTemplates.size());
 
-        return new VerifyResult(maxScore >= properties.getThreshold(), maxScore, properties.getThreshold());
+        return new VerifyResult(maxScore >= properties.getThreshold(), maxScore, properties.getThreshold(), scan.scanQuality());
     }
 
-    private FingerprintTemplate toTemplate(String base64, String field) {
-        try {
-            byte[] templateBytes = Base64.getDecoder().decode(base64);
-            return new FingerprintTemplate(templateBytes);
-        } catch (IllegalArgumentException ex) {
-            log.warn("event=template-decode-error requestId={} field={} reason=invalid-base64 message={}",
-                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                    field,
-                    ex.getMessage());
-            throw new BadRequestException("Invalid base64 in field " + field);
-        } catch (RuntimeException ex) {
-            log.warn("event=template-decode-error requestId={} field={} reason=invalid-template message={}",
-                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
-                    field,
-                    ex.getMessage());
-            throw new BadRequestException("Invalid fingerprint template in field " + field);
+    /**
+     * Verifies every scan against the same person templates, decoding those once and matching the
+     * scans in parallel on the matching pool. Results are in scan order.
+     */
+    public List<VerifyResult> verifyBatch(List<String> scanTemplatesBase64, List<String> personTemplatesBase64) {
+        log.info("event=verify-batch-start requestId={} scansCount={} templatesCount={} threshold={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                scanTemplatesBase64.size(),
+                personTemplatesBase64.size(),
+                properties.getThreshold());
+
+        checkBatchSize(scanTemplatesBase64);
+        List<TemplateDecoder.HashedTemplate> personTemplates = decodeAll(personTemplatesBase64, "personTemplatesBase64");
+
+        List<VerifyResult> results = matchingEngine.mapInOrder(scanTemplatesBase64.size(), i -> {
+            PreparedScan scan = prepareScan(scanTemplatesBase64.get(i), batchScanField(i));
+            long matchingStart = System.nanoTime();
+            double maxScore = maxScore(scan, personTemplates);
+            metrics.recordMatching("verify-batch", System.nanoTime() - matchingStart, 1, personTemplates.size(), maxScore);
+            return new VerifyResult(maxScore >= properties.getThreshold(), maxScore, properties.getThreshold(), scan.scanQuality());
+        });
+
+        log.info("event=verify-batch-finish requestId={} scansCount={} verifiedCount={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                results.size(),
+                results.stream().filter(VerifyResult::verified).count());
+        return results;
+    }
+
+    /**
+     * Resolves the probe of a single-scan request. A {@code scanId} still held by
+     * {@link ScanMatcherCache} is reused as is; otherwise the scan is decoded and its matcher built,
+     * and when {@code retain} is set the result is stored under a new {@code scanId}. Clients may send
+     * both, so an expired handle falls back to the template instead of failing. The handle wins while it
+     * is held: the template is then neither decoded nor compared with the retained scan, so a client must
+     * not send a handle with a different scan's template. A scan that fails {@link ScanQualityGate} is
+     * rejected before its matcher is built.
+     */
+    public PreparedScan prepareScan(String scanTemplateBase64, String scanId, boolean retain) {
+        boolean hasTemplate = scanTemplateBase64 != null && !scanTemplateBase64.isBlank();
+        return resolveScan(hasTemplate, scanId, retain, () -> prepareScan(scanTemplateBase64, SCAN_FIELD));
+    }
+
+    /**
+     * Same as {@link #prepareScan(String, String, boolean)} for a scan that arrived as raw bytes.
+     */
+    public PreparedScan prepareRawScan(byte[] scanTemplate, String scanId, boolean retain) {
+        boolean hasTemplate = scanTemplate != null && scanTemplate.length > 0;
+        return resolveScan(hasTemplate, scanId, retain,
+                () -> prepareScan(templateDecoder.fromBytesHashed(scanTemplate, SCAN_FIELD), SCAN_FIELD));
+    }
+
+    private PreparedScan resolveScan(boolean hasTemplate, String scanId, boolean retain, Supplier<PreparedScan> decode) {
+        if (scanId != null && !scanId.isBlank()) {
+            PreparedScan cached = scanCache.find(scanId);
+            if (cached != null) {
+                log.info("event=scan-cache-hit requestId={} scanId={} templateIgnored={}",
+                        MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY), scanId, hasTemplate);
+                return cached;
+            }
+            if (!hasTemplate) {
+                throw new NotFoundException("scanId not found or expired: " + scanId);
+            }
+            log.info("event=scan-cache-miss requestId={} scanId={}", MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY), scanId);
+        } else if (!hasTemplate) {
+            throw new BadRequestException(SCAN_FIELD + ": " + SCAN_FIELD + " or scanId is required");
+        }
+
+        PreparedScan scan = decode.get();
+        return retain ? scanCache.retain(scan) : scan;
+    }
+
+    private PreparedScan prepareScan(String scanTemplateBase64, String field) {
+        return prepareScan(templateDecoder.decodeHashed(scanTemplateBase64, field), field);
+    }
+
+    private PreparedScan prepareScan(TemplateDecoder.HashedTemplate scanTemplate, String field) {
+        double scanQuality = qualityGate.check(scanTemplate.bytes(), field);
+        return new PreparedScan(scanTemplate.template(), scanTemplate.bytes(), scanQuality, this::prepareMatcher);
+    }
+
+    /**
+     * Scores go through {@code scores}, so a template appearing more than once is matched only once.
+     * A candidate's score is still the best of its templates, and ties still go to the candidate that
+     * comes first.
+     */
+    private <T> IdentifyResult identifyAgainst(String operation,
+                                               TemplateScores scores,
+                                               List<T> candidates,
+                                               int templatesCount,
+                                               int topK,
+                                               MatchDeadline deadline,
+                                               Function<T, String> candidateIdOf,
+                                               TemplateScores.Scorer<T> scorer) {
+        long matchingStart = System.nanoTime();
+        int skippedBefore = scores.duplicatesSkipped();
+        var outcome = matchingEngine.match(scores.matcher(), candidates, candidateIdOf,
+                (matcher, candidate) -> scorer.score(scores, candidate), topK, deadline);
+        int duplicatesSkipped = scores.duplicatesSkipped() - skippedBefore;
+        metrics.recordMatching(operation, System.nanoTime() - matchingStart, candidates.size(), templatesCount, outcome.maxScore());
+        metrics.recordDuplicatesSkipped(operation, duplicatesSkipped);
+        String bestCandidateId = outcome.bestIndex() >= 0 ? candidateIdOf.apply(candidates.get(outcome.bestIndex())) : null;
+        double maxScore = outcome.maxScore();
+
+        boolean matched = maxScore >= properties.getThreshold() && bestCandidateId != null;
+        if (matched) {
+            candidateHeat.recordHit(bestCandidateId);
+        }
+        log.info("event=identify-finish requestId={} matched={} bestCandidateId={} maxScore={} candidatesEvaluated={} duplicatesSkipped={} candidatesAboveThreshold={} hotFirst={} partial={} clientGone={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                matched,
+                matched ? bestCandidateId : null,
+                maxScore,
+                outcome.candidatesEvaluated(),
+                duplicatesSkipped,
+                outcome.candidatesAboveThreshold(),
+                outcome.hotFirst(),
+                outcome.partial(),
+                deadline.isCancelled());
+        return new IdentifyResult(matched, matched ? bestCandidateId : null, matched ? maxScore : null, maxScore,
+                outcome.candidatesEvaluated(), duplicatesSkipped, rank(outcome.topScores(), candidates, candidateIdOf), outcome.partial(), null);
+    }
+
+    private static <T> List<RankedCandidate> rank(TopScores topScores, List<T> candidates, Function<T, String> candidateIdOf) {
+        if (topScores == null) {
+            return null;
+        }
+        double[] scores = new double[topScores.size()];
+        int[] indexes = topScores.drainIndexes(scores);
+        List<RankedCandidate> ranked = new ArrayList<>(indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            ranked.add(new RankedCandidate(candidateIdOf.apply(candidates.get(indexes[i])), scores[i]));
+        }
+        return ranked;
+    }
+
+    private static Long budgetOf(MatchDeadline deadline) {
+        long remaining = deadline.remainingMillis();
+        return remaining == Long.MAX_VALUE ? null : remaining;
+    }
+
+    private FingerprintMatcher prepareMatcher(FingerprintTemplate scanTemplate) {
+        long start = System.nanoTime();
+        FingerprintMatcher matcher = new FingerprintMatcher(scanTemplate);
+        metrics.recordMatcherConstruction(System.nanoTime() - start);
+        return matcher;
+    }
+
+    private List<TemplateDecoder.HashedTemplate> decodeAll(List<String> templatesBase64, String field) {
+        List<TemplateDecoder.HashedTemplate> templates = new ArrayList<>(templatesBase64.size());
+        for (String templateBase64 : templatesBase64) {
+            templates.add(templateDecoder.decodeHashed(templateBase64, field));
+        }
+        return templates;
+    }
+
+    private void checkBatchSize(List<String> scanTemplatesBase64) {
+        if (scanTemplatesBase64.size() > properties.getBatchMaxScans()) {
+            throw new BadRequestException("scanTemplatesBase64 exceeds configured BATCH_MAX_SCANS=" + properties.getBatchMaxScans());
+        }
+    }
+
+    private static String batchScanField(int index) {
+        return "scanTemplatesBase64[" + index + "]";
+    }
+
+    private static double maxScore(TemplateScores scores, List<FingerprintTemplate> templates) {
+        double maxScore = 0d;
+        for (FingerprintTemplate template : templates) {
+            maxScore = Math.max(maxScore, scores.match(template));
+        }
+        return maxScore;
+    }
+
+    private double maxScore(PreparedScan scan, List<TemplateDecoder.HashedTemplate> templates) {
+        ScoreMemo.Key scanKey = memoKey(scan);
+        double maxScore = 0d;
+        for (TemplateDecoder.HashedTemplate template : templates) {
+            maxScore = Math.max(maxScore, score(scan, scanKey, template));
         }
+        return maxScore;
     }
 
-    public record IdentifyResult(boolean matched, String candidateId, Double score, double maxScore, int candidatesEvaluated) {
+    /**
+     * The scan's {@link ScoreMemo} key, or {@code null} when the memo is off or the scan's bytes are
+     * not known.
+     */
+    private ScoreMemo.Key memoKey(PreparedScan scan) {
+        return scoreMemo.isEnabled() && scan.templateBytes() != null ? scoreMemo.key(scan.templateBytes()) : null;
     }
 
-    public record VerifyResult(boolean verified, double score, double threshold) {
+    /**
+     * Scores through {@link ScoreMemo} when the scan has a memo key. The scan's matcher is built on the
+     * first miss, so a verify whose scores are all remembered never builds it.
+     */
+    private double score(PreparedScan scan, ScoreMemo.Key scanKey, TemplateDecoder.HashedTemplate template) {
+        if (scanKey == null) {
+            return scan.matcher().match(template.template());
+        }
+        return scoreMemo.score(scanKey, scoreMemo.key(template.bytes()), () -> scan.matcher().match(template.template()));
+    }
+
+    private record DecodedCandidate(String candidateId, List<TemplateDecoder.HashedTemplate> templates) {
+    }
+
+    /**
+     * {@code topCandidates} is ranked best first and is {@code null} unless a top-K was requested.
+     * {@code partial} means not every candidate was matched (time budget spent, client gone or, in
+     * coordinator mode, a shard missing), so a better candidate may have been skipped.
+     * {@code duplicatesSkipped} counts candidate templates not matched because the same template had
+     * already been scored in this request. {@code scanQuality} is the {@link ScanQualityGate} score of
+     * the scan.
+     */
+    public record IdentifyResult(boolean matched,
+                                 String candidateId,
+                                 Double score,
+                                 double maxScore,
+                                 int candidatesEvaluated,
+                                 int duplicatesSkipped,
+                                 List<RankedCandidate> topCandidates,
+                                 boolean partial,
+                                 Double scanQuality) {
+
+        public IdentifyResult(boolean matched, String candidateId, Double score, double maxScore, int candidatesEvaluated) {
+            this(matched, candidateId, score, maxScore, candidatesEvaluated, 0, null, false, null);
+        }
+
+        IdentifyResult withScanQuality(Double scanQuality) {
+            return new IdentifyResult(matched, candidateId, score, maxScore, candidatesEvaluated, duplicatesSkipped,
+                    topCandidates, partial, scanQuality);
+        }
+    }
+
+    public record RankedCandidate(String candidateId, double score) {
+    }
+
+    public record VerifyResult(boolean verified, double score, double threshold, Double scanQuality) {
+
+        public VerifyResult(boolean verified, double score, double threshold) {
+            this(verified, score, threshold, null);
+        }
     }
 }
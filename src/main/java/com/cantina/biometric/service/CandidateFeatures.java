@@ -0,0 +1,67 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintTemplate;
+
+import java.util.List;
+
+/**
+ * {@link TemplateFeatures} rows of a candidate's templates, back to back. Extracted at enrolment while
+ * the pre-filter is on; otherwise left out until the pre-filter first ranks the candidate, so a gallery
+ * served without it holds no features at all.
+ *
+ * <p>Late extraction reads templates loaded from the {@link TemplateStore} straight from their stored
+ * bytes, without deserializing them; only templates enrolled in this process are serialized again.
+ * Concurrent first uses may both extract; either result is kept.
+ */
+public final class CandidateFeatures {
+
+    private final List<FingerprintTemplate> templates;
+    private volatile byte[] rows;
+
+    private CandidateFeatures(List<FingerprintTemplate> templates, byte[] rows) {
+        this.templates = templates;
+        this.rows = rows;
+    }
+
+    static CandidateFeatures extracted(byte[] rows) {
+        return new CandidateFeatures(null, rows);
+    }
+
+    static CandidateFeatures extractedFrom(List<byte[]> serialized) {
+        byte[] rows = new byte[serialized.size() * TemplateFeatures.ROW_BYTES];
+        for (int i = 0; i < serialized.size(); i++) {
+            TemplateFeatures.extract(serialized.get(i), rows, i * TemplateFeatures.ROW_BYTES);
+        }
+        return extracted(rows);
+    }
+
+    static CandidateFeatures onFirstUse(List<FingerprintTemplate> templates) {
+        return new CandidateFeatures(templates, null);
+    }
+
+    /**
+     * The rows, extracting them on first use.
+     */
+    byte[] rows() {
+        byte[] extracted = rows;
+        if (extracted == null) {
+            extracted = new byte[templates.size() * TemplateFeatures.ROW_BYTES];
+            for (int i = 0; i < templates.size(); i++) {
+                byte[] serialized = templates instanceof StoredTemplates stored
+                        ? stored.serialized(i)
+                        : templates.get(i).toByteArray();
+                TemplateFeatures.extract(serialized, extracted, i * TemplateFeatures.ROW_BYTES);
+            }
+            rows = extracted;
+        }
+        return extracted;
+    }
+
+    /**
+     * The rows if already extracted, else an empty array: what the {@link TemplateStore} keeps.
+     */
+    byte[] extractedRows() {
+        byte[] extracted = rows;
+        return extracted == null ? new byte[0] : extracted;
+    }
+}
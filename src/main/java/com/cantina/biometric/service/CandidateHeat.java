@@ -0,0 +1,170 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * How often each {@code candidateId} has recently been the identify match, so that with early exit the
+ * candidates that usually pay are matched first and a typical identify stops after a few of them.
+ *
+ * <p>Counts live in a fixed count-min sketch (two rows of atomic counters indexed by independent hashes
+ * of the id, the smaller of the two being the estimate), so memory does not grow with the number of
+ * distinct ids and a collision can only overestimate. Every {@code candidate-heat-decay-hits} recorded
+ * matches all counters are halved, so candidates that stopped paying cool down.
+ */
+@Component
+public class CandidateHeat implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CandidateHeat.class);
+
+    private static final int ROWS = 2;
+    private static final int[] SEEDS = {0x9E3779B9, 0x7F4A7C15};
+
+    private final boolean enabled;
+    private final int width;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final int decayHits;
+    private final AtomicInteger hitsUntilDecay;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder decays = new LongAdder();
+
+    public CandidateHeat(BiometricProperties properties) {
+        this.enabled = properties.isCandidateHeatEnabled();
+        this.width = enabled ? Integer.highestOneBit(Math.max(2, properties.getCandidateHeatCounters() - 1)) << 1 : 1;
+        this.mask = width - 1;
+        this.counters = new AtomicIntegerArray(enabled ? ROWS * width : 0);
+        this.decayHits = Math.max(1, properties.getCandidateHeatDecayHits());
+        this.hitsUntilDecay = new AtomicInteger(decayHits);
+        log.info("event=candidate-heat-configured enabled={} counters={} decayHits={}", enabled, width, decayHits);
+    }
+
+    public void recordHit(String candidateId) {
+        if (!enabled || candidateId == null) {
+            return;
+        }
+        int hash = candidateId.hashCode();
+        for (int row = 0; row < ROWS; row++) {
+            counters.getAndIncrement(slot(hash, row));
+        }
+        hits.increment();
+        if (hitsUntilDecay.decrementAndGet() == 0) {
+            decay();
+        }
+    }
+
+    int estimate(String candidateId) {
+        if (!enabled || candidateId == null) {
+            return 0;
+        }
+        int hash = candidateId.hashCode();
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < ROWS; row++) {
+            estimate = Math.min(estimate, counters.get(slot(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Evaluation order for {@code candidates}: those with recent hits first, hottest first, then the
+     * rest, ties keeping the request order. Returns {@code null} when no candidate has any hit, in which
+     * case the request order is used as is.
+     */
+    <T> int[] order(List<T> candidates, Function<T, String> candidateIdOf) {
+        if (!enabled) {
+            return null;
+        }
+        int count = candidates.size();
+        long[] hot = null;
+        int hotCount = 0;
+        for (int i = 0; i < count; i++) {
+            int heat = estimate(candidateIdOf.apply(candidates.get(i)));
+            if (heat > 0) {
+                if (hot == null) {
+                    hot = new long[count];
+                }
+                // Ascending order of (coldness, index) is hottest first, then request order.
+                hot[hotCount++] = (long) (Integer.MAX_VALUE - heat) << 32 | i;
+            }
+        }
+        if (hotCount == 0) {
+            return null;
+        }
+
+        Arrays.sort(hot, 0, hotCount);
+        int[] order = new int[count];
+        boolean[] placed = new boolean[count];
+        for (int position = 0; position < hotCount; position++) {
+            int index = (int) hot[position];
+            order[position] = index;
+            placed[index] = true;
+        }
+        int position = hotCount;
+        for (int i = 0; i < count; i++) {
+            if (!placed[i]) {
+                order[position++] = i;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Halves every counter. Hits recorded while this runs may be halved or lost, which the estimate
+     * tolerates.
+     */
+    private void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, value -> value >>> 1);
+        }
+        hitsUntilDecay.addAndGet(decayHits);
+        decays.increment();
+        log.debug("event=candidate-heat-decayed hits={}", hits.sum());
+    }
+
+    private int slot(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return row * width + (h & mask);
+    }
+
+    private double occupancy() {
+        int used = 0;
+        for (int i = 0; i < width; i++) {
+            if (counters.get(i) != 0) {
+                used++;
+            }
+        }
+        return (double) used / width;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        FunctionCounter.builder("biometric.candidate.heat.hits", hits, LongAdder::sum)
+                .description("Identify matches recorded in the candidate heat counters")
+                .register(registry);
+        FunctionCounter.builder("biometric.candidate.heat.decays", decays, LongAdder::sum)
+                .description("Times the candidate heat counters were halved")
+                .register(registry);
+        Gauge.builder("biometric.candidate.heat.occupancy", this, CandidateHeat::occupancy)
+                .description("Share of candidate heat counters in use; close to 1 means too few counters")
+                .register(registry);
+    }
+}
@@ -0,0 +1,261 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Scores candidates against a prepared matcher and keeps the best one. Large candidate lists are split
+ * across the dedicated matching {@link ForkJoinPool}; partial results are merged left to right and a
+ * right-hand result only wins with a strictly greater score, which gives the same answer as the
+ * sequential "first strictly greater score wins" loop.
+ *
+ * <p>When a top-K is requested, every task also keeps its K best candidates in a {@link TopScores} heap
+ * and the heaps are merged along with the best candidate.
+ *
+ * <p>With early exit enabled, matching stops as soon as any candidate reaches the configured certain
+ * match score. The winner is then some candidate above that score, not necessarily the first one.
+ * Candidates are then also evaluated in {@link CandidateHeat} order, recently identified ones first;
+ * the best candidate and top-K still break ties by position in the request, so a request that runs to
+ * the end gets the same answer in either order.
+ *
+ * <p>Every task also polls the request's {@link MatchDeadline} between candidates; once it expires the
+ * remaining candidates are skipped and the outcome is marked partial.
+ *
+ * <p>Per-candidate scores are only logged at TRACE; the outcome instead counts the candidates that
+ * reached the threshold, which the caller reports in its single summary event.
+ */
+@Component
+public class CandidateMatchingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(CandidateMatchingEngine.class);
+
+    private final BiometricProperties properties;
+    private final ForkJoinPool matchingPool;
+    private final CandidateHeat candidateHeat;
+
+    public CandidateMatchingEngine(BiometricProperties properties, ForkJoinPool matchingPool, CandidateHeat candidateHeat) {
+        this.properties = properties;
+        this.matchingPool = matchingPool;
+        this.candidateHeat = candidateHeat;
+    }
+
+    <T> MatchOutcome match(FingerprintMatcher matcher, List<T> candidates, Function<T, String> candidateIdOf, CandidateScorer<T> scorer) {
+        return match(matcher, candidates, candidateIdOf, scorer, 0, MatchDeadline.NONE);
+    }
+
+    <T> MatchOutcome match(FingerprintMatcher matcher,
+                           List<T> candidates,
+                           Function<T, String> candidateIdOf,
+                           CandidateScorer<T> scorer,
+                           int topK,
+                           MatchDeadline deadline) {
+        boolean earlyExit = properties.isEarlyExitEnabled();
+        MatchContext<T> context = new MatchContext<>(
+                matcher,
+                candidates,
+                earlyExit ? candidateHeat.order(candidates, candidateIdOf) : null,
+                candidateIdOf,
+                scorer,
+                topK,
+                properties.getThreshold(),
+                earlyExit ? properties.getCertainMatchScore() : Double.POSITIVE_INFINITY,
+                log.isTraceEnabled(),
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                deadline,
+                new AtomicBoolean());
+
+        int parallelism = matchingPool.getParallelism();
+        if (parallelism <= 1 || candidates.size() < properties.getParallelMinCandidates()) {
+            return context.scoreRange(0, candidates.size());
+        }
+
+        int chunkSize = Math.max(1, candidates.size() / (parallelism * 4));
+        return matchingPool.invoke(new MatchTask<>(context, 0, candidates.size(), chunkSize));
+    }
+
+    /**
+     * Runs {@code task} for indexes {@code 0..count-1} on the matching pool and returns the results in
+     * index order. Used by batch requests to spread independent scans (or candidate decoding) across
+     * the pool; a task may itself fork candidate matching. The first failing task's exception is
+     * rethrown.
+     */
+    <R> List<R> mapInOrder(int count, IntFunction<R> task) {
+        List<R> results = new ArrayList<>(count);
+        if (matchingPool.getParallelism() <= 1 || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                results.add(task.apply(i));
+            }
+            return results;
+        }
+
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        List<ForkJoinTask<R>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> withContext(context, () -> task.apply(index))));
+        }
+        matchingPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        for (ForkJoinTask<R> forked : tasks) {
+            results.add(forked.join());
+        }
+        return results;
+    }
+
+    private static <R> R withContext(Map<String, String> context, Supplier<R> work) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (context != null) {
+            MDC.setContextMap(context);
+        }
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                MDC.setContextMap(previous);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+
+    /**
+     * Best candidate found, as an index into the candidate list ({@code -1} when no candidate scored
+     * above zero), how many candidates were actually scored and how many of those reached the threshold.
+     * {@code topScores} holds the K best
+     * candidates scoring above zero, or is {@code null} when no top-K was requested. {@code partial} is
+     * set when the deadline cut matching short. {@code hotFirst} is set when candidates were evaluated
+     * in {@link CandidateHeat} order.
+     */
+    record MatchOutcome(int bestIndex,
+                        double maxScore,
+                        int candidatesEvaluated,
+                        int candidatesAboveThreshold,
+                        TopScores topScores,
+                        boolean partial,
+                        boolean hotFirst) {
+
+        MatchOutcome merge(MatchOutcome right) {
+            boolean rightWins = right.maxScore > maxScore
+                    || (right.maxScore == maxScore && right.bestIndex >= 0 && right.bestIndex < bestIndex);
+            if (topScores != null) {
+                topScores.mergeFrom(right.topScores);
+            }
+            return new MatchOutcome(
+                    rightWins ? right.bestIndex : bestIndex,
+                    rightWins ? right.maxScore : maxScore,
+                    candidatesEvaluated + right.candidatesEvaluated,
+                    candidatesAboveThreshold + right.candidatesAboveThreshold,
+                    topScores,
+                    partial || right.partial,
+                    hotFirst);
+        }
+    }
+
+    private record MatchContext<T>(FingerprintMatcher matcher,
+                                   List<T> candidates,
+                                   int[] order,
+                                   Function<T, String> candidateIdOf,
+                                   CandidateScorer<T> scorer,
+                                   int topK,
+                                   double threshold,
+                                   double certainMatchScore,
+                                   boolean traceCandidates,
+                                   String requestId,
+                                   MatchDeadline deadline,
+                                   AtomicBoolean stopped) {
+
+        /**
+         * Scores the candidates at evaluation positions {@code from..to-1}; indexes in the outcome are
+         * positions in the request.
+         */
+        MatchOutcome scoreRange(int from, int to) {
+            int bestIndex = -1;
+            double maxScore = 0d;
+            int evaluated = 0;
+            int aboveThreshold = 0;
+            TopScores topScores = topK > 0 ? new TopScores(topK) : null;
+            boolean partial = false;
+
+            for (int position = from; position < to && !stopped.get(); position++) {
+                if (deadline.expired()) {
+                    partial = true;
+                    break;
+                }
+                int i = order == null ? position : order[position];
+                T candidate = candidates.get(i);
+                double candidateScore = scorer.score(matcher, candidate);
+                evaluated++;
+                if (candidateScore >= threshold) {
+                    aboveThreshold++;
+                }
+
+                if (traceCandidates) {
+                    log.trace("event=identify-candidate-evaluated requestId={} candidateId={} candidateMaxScore={}",
+                            requestId,
+                            candidateIdOf.apply(candidate),
+                            candidateScore);
+                }
+
+                if (candidateScore > maxScore || (candidateScore == maxScore && candidateScore > 0d && i < bestIndex)) {
+                    maxScore = candidateScore;
+                    bestIndex = i;
+                }
+                if (topScores != null && candidateScore > 0d) {
+                    topScores.offer(i, candidateScore);
+                }
+                if (candidateScore >= certainMatchScore) {
+                    log.debug("event=identify-early-exit requestId={} candidateId={} candidateMaxScore={} certainMatchScore={}",
+                            requestId,
+                            candidateIdOf.apply(candidate),
+                            candidateScore,
+                            certainMatchScore);
+                    stopped.set(true);
+                }
+            }
+            return new MatchOutcome(bestIndex, maxScore, evaluated, aboveThreshold, topScores, partial, order != null);
+        }
+    }
+
+    private static final class MatchTask<T> extends RecursiveTask<MatchOutcome> {
+
+        private final MatchContext<T> context;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        private MatchTask(MatchContext<T> context, int from, int to, int chunkSize) {
+            this.context = context;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected MatchOutcome compute() {
+            if (to - from <= chunkSize) {
+                return context.scoreRange(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            MatchTask<T> left = new MatchTask<>(context, from, middle, chunkSize);
+            MatchTask<T> right = new MatchTask<>(context, middle, to, chunkSize);
+            right.fork();
+            MatchOutcome leftOutcome = left.compute();
+            return leftOutcome.merge(right.join());
+        }
+    }
+}
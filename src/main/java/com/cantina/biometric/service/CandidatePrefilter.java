@@ -0,0 +1,84 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * First stage of gallery identify: ranks enrolled candidates by {@link TemplateFeatures} similarity to
+ * the scan and keeps only the best {@code prefilterFraction} of them (never fewer than
+ * {@code prefilterMinCandidates}) for the full matcher. A fraction of {@code 1.0} disables the stage.
+ *
+ * <p>The shortlist keeps the original candidate order, so the "first strictly greater score wins"
+ * tie-break still applies among the candidates that pass.
+ */
+@Component
+public class CandidatePrefilter {
+
+    private static final Logger log = LoggerFactory.getLogger(CandidatePrefilter.class);
+
+    private final BiometricProperties properties;
+    private final MatchingMetrics metrics;
+
+    public CandidatePrefilter(BiometricProperties properties, MatchingMetrics metrics) {
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Number of candidates that survive the pre-filter out of {@code candidatesCount}, or
+     * {@code candidatesCount} when the stage does not apply.
+     */
+    int shortlistSize(int candidatesCount) {
+        if (properties.getPrefilterFraction() >= 1.0 || candidatesCount <= properties.getPrefilterMinCandidates()) {
+            return candidatesCount;
+        }
+        int keep = (int) Math.ceil(candidatesCount * properties.getPrefilterFraction());
+        return Math.min(candidatesCount, Math.max(keep, properties.getPrefilterMinCandidates()));
+    }
+
+    /**
+     * Returns the candidates most similar to {@code scanFeatures} in their original order, or
+     * {@code candidates} itself when nothing would be filtered out.
+     */
+    List<EnrolledCandidate> shortlist(byte[] scanFeatures, List<EnrolledCandidate> candidates) {
+        int keep = shortlistSize(candidates.size());
+        if (keep >= candidates.size()) {
+            return candidates;
+        }
+
+        long start = System.nanoTime();
+        TopScores best = new TopScores(keep);
+        for (int i = 0; i < candidates.size(); i++) {
+            byte[] features = candidates.get(i).features().rows();
+            double similarity = Double.NEGATIVE_INFINITY;
+            for (int offset = 0; offset < features.length; offset += TemplateFeatures.ROW_BYTES) {
+                similarity = Math.max(similarity, TemplateFeatures.similarity(scanFeatures, 0, features, offset));
+            }
+            best.offer(i, similarity);
+        }
+
+        int[] indexes = best.drainIndexes(new double[best.size()]);
+        Arrays.sort(indexes);
+        List<EnrolledCandidate> shortlisted = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            shortlisted.add(candidates.get(index));
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        metrics.recordStage(MatchingMetrics.STAGE_PREFILTER, elapsedNanos);
+
+        log.debug("event=gallery-prefilter requestId={} candidatesCount={} shortlistedCount={} elapsedUs={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                candidates.size(),
+                shortlisted.size(),
+                elapsedNanos / 1_000);
+        return shortlisted;
+    }
+}
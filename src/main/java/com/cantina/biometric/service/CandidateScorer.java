@@ -0,0 +1,8 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintMatcher;
+
+@FunctionalInterface
+interface CandidateScorer<T> {
+    double score(FingerprintMatcher matcher, T candidate);
+}
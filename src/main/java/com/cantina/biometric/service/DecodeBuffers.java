@@ -0,0 +1,65 @@
+package com.cantina.biometric.service;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of scratch buffers for decoding templates. Request threads are virtual, so a thread-local buffer
+ * would be recreated by every request; a small shared pool keeps a handful of buffers alive instead,
+ * and acquiring or releasing one allocates nothing. When every slot is taken a fresh buffer is handed
+ * out and simply dropped on release.
+ */
+final class DecodeBuffers {
+
+    private static final int INITIAL_BYTES = 4 * 1024;
+
+    /**
+     * Buffers grown past this by an unusually large template are not kept.
+     */
+    private static final int MAX_POOLED_BYTES = 256 * 1024;
+
+    private final AtomicReferenceArray<Buffer> slots;
+
+    DecodeBuffers(int size) {
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    Buffer acquire() {
+        int size = slots.length();
+        int start = (int) (Thread.currentThread().threadId() % size);
+        for (int i = 0; i < size; i++) {
+            Buffer buffer = slots.getAndSet((start + i) % size, null);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new Buffer();
+    }
+
+    void release(Buffer buffer) {
+        if (buffer.text.length > MAX_POOLED_BYTES) {
+            return;
+        }
+        int size = slots.length();
+        int start = (int) (Thread.currentThread().threadId() % size);
+        for (int i = 0; i < size; i++) {
+            if (slots.compareAndSet((start + i) % size, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    static final class Buffer {
+
+        private byte[] text = new byte[INITIAL_BYTES];
+
+        /**
+         * Room for {@code length} bytes of Base64 text.
+         */
+        byte[] text(int length) {
+            if (text.length < length) {
+                text = new byte[Math.max(length, text.length * 2)];
+            }
+            return text;
+        }
+    }
+}
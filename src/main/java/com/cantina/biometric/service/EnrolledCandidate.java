@@ -0,0 +1,17 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Gallery candidate with its templates already deserialized. {@code features} holds the
+ * {@link TemplateFeatures} row of every template, for the identify pre-filter.
+ */
+public record EnrolledCandidate(String candidateId,
+                                String gallery,
+                                List<FingerprintTemplate> templates,
+                                CandidateFeatures features,
+                                Instant enrolledAt) {
+}
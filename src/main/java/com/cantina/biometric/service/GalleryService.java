@@ -0,0 +1,178 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.exception.BadRequestException;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * In-memory gallery of enrolled candidates keyed by candidateId. Templates are deserialized once at
+ * enrolment so identify only has to decode the scan; their pre-filter features are extracted there too
+ * while the pre-filter is on (see {@link CandidateFeatures}).
+ *
+ * <p>Writes are serialized and publish an immutable snapshot: the candidates in enrolment order, which
+ * keeps the "first strictly greater score wins" tie-break stable, and an index by candidateId. Reads,
+ * identify included, use the snapshot without locking, so they never wait for a write's disk I/O.
+ *
+ * <p>With a {@link TemplateStore} configured, every write is persisted before it is published, and the
+ * gallery is reloaded from the store at startup with templates deserialized lazily.
+ */
+@Service
+public class GalleryService {
+
+    public static final String DEFAULT_GALLERY = "default";
+
+    private static final Logger log = LoggerFactory.getLogger(GalleryService.class);
+
+    private final BiometricProperties properties;
+    private final TemplateDecoder templateDecoder;
+    private final TemplateStore templateStore;
+
+    private final Map<String, EnrolledCandidate> candidates = new LinkedHashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public GalleryService(BiometricProperties properties, TemplateDecoder templateDecoder, TemplateStore templateStore) {
+        this.properties = properties;
+        this.templateDecoder = templateDecoder;
+        this.templateStore = templateStore;
+
+        for (TemplateStore.StoredCandidate stored : templateStore.load()) {
+            String field = "templatesBase64 for candidateId=" + stored.candidateId();
+            List<FingerprintTemplate> templates = new StoredTemplates(stored.templates(), templateDecoder, field);
+            // None stored, or stored in an earlier layout: extracted from the stored bytes when needed.
+            CandidateFeatures features = stored.features().length == templates.size() * TemplateFeatures.ROW_BYTES
+                    ? CandidateFeatures.extracted(stored.features())
+                    : CandidateFeatures.onFirstUse(templates);
+            candidates.put(stored.candidateId(), new EnrolledCandidate(stored.candidateId(), stored.gallery(),
+                    templates, features, stored.enrolledAt()));
+        }
+        publish();
+    }
+
+    public EnrolledCandidate enroll(String candidateId, String gallery, List<String> templatesBase64) {
+        List<FingerprintTemplate> templates = new ArrayList<>(templatesBase64.size());
+        List<byte[]> serialized = new ArrayList<>(templatesBase64.size());
+        for (String templateBase64 : templatesBase64) {
+            TemplateDecoder.HashedTemplate decoded = templateDecoder.decodeHashed(templateBase64,
+                    "templatesBase64 for candidateId=" + candidateId);
+            templates.add(decoded.template());
+            serialized.add(decoded.bytes());
+        }
+        templates = List.copyOf(templates);
+        CandidateFeatures features = properties.getPrefilterFraction() < 1.0
+                ? CandidateFeatures.extractedFrom(serialized)
+                : CandidateFeatures.onFirstUse(templates);
+
+        EnrolledCandidate candidate = new EnrolledCandidate(candidateId, galleryOrDefault(gallery), templates,
+                features, Instant.now());
+        boolean updated;
+        synchronized (candidates) {
+            updated = candidates.containsKey(candidateId);
+            if (!updated && candidates.size() >= properties.getGalleryMaxCandidates()) {
+                throw new BadRequestException("gallery exceeds configured GALLERY_MAX_CANDIDATES=" + properties.getGalleryMaxCandidates());
+            }
+            templateStore.put(candidateId, candidate.gallery(), candidate.enrolledAt(), serialized, features.extractedRows());
+            candidates.put(candidateId, candidate);
+            publish();
+        }
+
+        log.info("event=gallery-enroll requestId={} candidateId={} gallery={} templatesCount={} updated={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                candidateId,
+                candidate.gallery(),
+                templates.size(),
+                updated);
+        return candidate;
+    }
+
+    public Optional<EnrolledCandidate> find(String candidateId) {
+        return Optional.ofNullable(snapshot.byId().get(candidateId));
+    }
+
+    public boolean remove(String candidateId) {
+        boolean removed;
+        synchronized (candidates) {
+            removed = candidates.remove(candidateId) != null;
+            if (removed) {
+                templateStore.remove(candidateId);
+                publish();
+            }
+        }
+
+        log.info("event=gallery-remove requestId={} candidateId={} removed={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                candidateId,
+                removed);
+        return removed;
+    }
+
+    /**
+     * Selects the candidates to identify against. With candidateIds the request order is kept, and
+     * unknown and repeated IDs are skipped; otherwise the gallery is scanned in enrolment order. A gallery name, when
+     * given, restricts either selection to that partition.
+     */
+    public List<EnrolledCandidate> select(String gallery, List<String> candidateIds) {
+        Snapshot current = snapshot;
+        List<EnrolledCandidate> selected = new ArrayList<>();
+
+        if (candidateIds != null && !candidateIds.isEmpty()) {
+            if (candidateIds.size() > properties.getMaxCandidates()) {
+                throw new BadRequestException("candidateIds exceeds configured MAX_CANDIDATES=" + properties.getMaxCandidates());
+            }
+            Set<String> seen = new HashSet<>(candidateIds.size() * 2);
+            for (String candidateId : candidateIds) {
+                EnrolledCandidate candidate = current.byId().get(candidateId);
+                if (candidate != null && (gallery == null || gallery.equals(candidate.gallery())) && seen.add(candidateId)) {
+                    selected.add(candidate);
+                }
+            }
+        } else {
+            for (EnrolledCandidate candidate : current.ordered()) {
+                if (gallery == null || gallery.equals(candidate.gallery())) {
+                    selected.add(candidate);
+                }
+            }
+        }
+
+        log.debug("event=gallery-select requestId={} gallery={} candidateIdsCount={} selectedCount={} gallerySize={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                gallery,
+                candidateIds == null ? 0 : candidateIds.size(),
+                selected.size(),
+                current.ordered().size());
+        return selected;
+    }
+
+    public int size() {
+        return snapshot.ordered().size();
+    }
+
+    /**
+     * Called with {@code candidates} locked, or from the constructor.
+     */
+    private void publish() {
+        snapshot = new Snapshot(List.copyOf(candidates.values()), Map.copyOf(candidates));
+    }
+
+    private static String galleryOrDefault(String gallery) {
+        return gallery == null || gallery.isBlank() ? DEFAULT_GALLERY : gallery;
+    }
+
+    private record Snapshot(List<EnrolledCandidate> ordered, Map<String, EnrolledCandidate> byId) {
+
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of());
+    }
+}
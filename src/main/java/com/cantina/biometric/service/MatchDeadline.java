@@ -0,0 +1,112 @@
+package com.cantina.biometric.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of one matching request. The matching loop polls {@link #expired()} between candidates
+ * and stops once the budget is spent or the request has been {@linkplain #cancel() cancelled} because
+ * the client went away, returning the best candidate found so far as a partial result.
+ */
+public final class MatchDeadline {
+
+    public static final MatchDeadline NONE = new MatchDeadline(Long.MAX_VALUE, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+    private volatile boolean cancelled;
+    private List<Runnable> onCancel;
+
+    private MatchDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * A deadline {@code budgetMillis} from now, or one that never expires by time when the budget is
+     * not positive (it can still be cancelled).
+     */
+    public static MatchDeadline after(long budgetMillis) {
+        return budgetMillis > 0
+                ? new MatchDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis), true)
+                : new MatchDeadline(Long.MAX_VALUE, false);
+    }
+
+    public boolean expired() {
+        return cancelled || (bounded && System.nanoTime() - deadlineNanos >= 0);
+    }
+
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            listeners = onCancel;
+            onCancel = null;
+        }
+        if (listeners != null) {
+            listeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Runs {@code listener} once this deadline is cancelled, right away if it already is.
+     * {@link #NONE} is never cancelled and keeps no listeners.
+     */
+    void whenCancelled(Runnable listener) {
+        if (this == NONE) {
+            return;
+        }
+        synchronized (this) {
+            if (!cancelled) {
+                if (onCancel == null) {
+                    onCancel = new ArrayList<>(2);
+                }
+                onCancel.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * A deadline expiring at the same time as this one but cancelled on its own, for work that other
+     * requests share.
+     */
+    MatchDeadline detached() {
+        return new MatchDeadline(deadlineNanos, bounded);
+    }
+
+    /**
+     * Whether this deadline is not cancelled and expires no earlier than {@code other}.
+     */
+    boolean outlasts(MatchDeadline other) {
+        if (cancelled) {
+            return false;
+        }
+        return !bounded || (other.bounded && deadlineNanos - other.deadlineNanos >= 0);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Milliseconds left, {@code 0} once expired, or {@link Long#MAX_VALUE} without a time budget.
+     */
+    public long remainingMillis() {
+        if (cancelled) {
+            return 0;
+        }
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+}
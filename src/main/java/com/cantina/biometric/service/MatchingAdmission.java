@@ -0,0 +1,130 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded admission for matching work. At most {@code matchingMaxInFlight} matching requests are
+ * running or queued at once; beyond that requests are rejected straight away with 503 and
+ * {@code Retry-After} instead of piling up in the connector queue.
+ *
+ * <p>Admitted work runs on the fixed-size matching executor, off the (virtual) request threads, and
+ * keeps the caller's MDC so log lines still carry the requestId.
+ */
+@Component
+public class MatchingAdmission implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchingAdmission.class);
+
+    private final BiometricProperties properties;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    public MatchingAdmission(BiometricProperties properties, @Qualifier("matchingRequestExecutor") ExecutorService executor) {
+        this.properties = properties;
+        this.executor = executor;
+        this.permits = new Semaphore(properties.getMatchingMaxInFlight());
+    }
+
+    /**
+     * Runs {@code work} on the matching executor, or throws {@link ServiceUnavailableException} when the
+     * in-flight limit is reached.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        acquire();
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return withContext(context, work);
+                } finally {
+                    permits.release();
+                }
+            }, executor);
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs {@code work} under the same in-flight limit on a virtual thread of its own, for work that
+     * mostly waits on other services, such as the shard coordinator waiting for its shards, and should
+     * not hold a matching executor thread meanwhile.
+     */
+    public <T> CompletableFuture<T> submitWaiting(Supplier<T> work) {
+        acquire();
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return withContext(context, work);
+                } finally {
+                    permits.release();
+                }
+            }, runnable -> Thread.ofVirtual().name("matching-wait").start(runnable));
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public int inFlight() {
+        return properties.getMatchingMaxInFlight() - permits.availablePermits();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("biometric.admission.in.flight", this, MatchingAdmission::inFlight)
+                .description("Matching requests running or queued")
+                .register(registry);
+        FunctionCounter.builder("biometric.admission.rejected", rejected, LongAdder::sum)
+                .description("Matching requests rejected because the in-flight limit was reached")
+                .register(registry);
+    }
+
+    private void acquire() {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            log.warn("event=matching-admission-rejected requestId={} maxInFlight={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    properties.getMatchingMaxInFlight());
+            throw new ServiceUnavailableException("Matching capacity exhausted, MATCHING_MAX_IN_FLIGHT="
+                    + properties.getMatchingMaxInFlight(), properties.getRetryAfterSeconds());
+        }
+    }
+
+    static <T> T withContext(Map<String, String> context, Supplier<T> work) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (context != null) {
+            MDC.setContextMap(context);
+        }
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                MDC.setContextMap(previous);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+
+import java.util.function.Function;
+
+/**
+ * A decoded scan together with the matcher built from it and its {@link ScanQualityGate} score.
+ * {@code scanId} is set only when the scan has been retained in {@link ScanMatcherCache} and can be
+ * referenced by later requests.
+ *
+ * <p>A scan decoded from request bytes also carries those bytes, from which {@link ScoreMemo} keys
+ * its scores, and builds its matcher on first use: a verify whose scores are all remembered never
+ * pays for it.
+ */
+public final class PreparedScan {
+
+    private final String scanId;
+    private final FingerprintTemplate template;
+    private final double scanQuality;
+    private final byte[] templateBytes;
+    private Function<FingerprintTemplate, FingerprintMatcher> matcherFactory;
+    private volatile FingerprintMatcher matcher;
+
+    public PreparedScan(String scanId, FingerprintTemplate template, FingerprintMatcher matcher, double scanQuality) {
+        this(scanId, template, null, scanQuality, null, matcher);
+    }
+
+    PreparedScan(FingerprintTemplate template,
+                 byte[] templateBytes,
+                 double scanQuality,
+                 Function<FingerprintTemplate, FingerprintMatcher> matcherFactory) {
+        this(null, template, templateBytes, scanQuality, matcherFactory, null);
+    }
+
+    private PreparedScan(String scanId,
+                         FingerprintTemplate template,
+                         byte[] templateBytes,
+                         double scanQuality,
+                         Function<FingerprintTemplate, FingerprintMatcher> matcherFactory,
+                         FingerprintMatcher matcher) {
+        this.scanId = scanId;
+        this.template = template;
+        this.templateBytes = templateBytes;
+        this.scanQuality = scanQuality;
+        this.matcherFactory = matcherFactory;
+        this.matcher = matcher;
+    }
+
+    /**
+     * The same scan under {@code scanId}, with its matcher built: retained scans are kept for reuse.
+     */
+    PreparedScan withScanId(String scanId) {
+        return new PreparedScan(scanId, template, templateBytes, scanQuality, null, matcher());
+    }
+
+    public String scanId() {
+        return scanId;
+    }
+
+    public FingerprintTemplate template() {
+        return template;
+    }
+
+    public FingerprintMatcher matcher() {
+        FingerprintMatcher built = matcher;
+        if (built == null && matcherFactory != null) {
+            synchronized (this) {
+                built = matcher;
+                if (built == null) {
+                    built = matcherFactory.apply(template);
+                    matcher = built;
+                    matcherFactory = null;
+                }
+            }
+        }
+        return built;
+    }
+
+    public double scanQuality() {
+        return scanQuality;
+    }
+
+    /**
+     * The exact bytes the scan was decoded from, or {@code null} for a scan built around an existing
+     * matcher.
+     */
+    byte[] templateBytes() {
+        return templateBytes;
+    }
+}
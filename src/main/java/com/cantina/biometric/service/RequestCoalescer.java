@@ -0,0 +1,233 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.CborCandidateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Single-flight for identify and verify: while a request is being matched, an identical one (same
+ * scan, same candidates or person templates, same threshold) attaches to its result instead of
+ * running the same pass again. Terminals retry on timeout and cashiers double-tap, and both happen
+ * most when the service is slowest.
+ *
+ * <p>Only the first request of a group goes through {@link MatchingAdmission}; the others take no
+ * in-flight permit and no executor thread while they wait. Every request still gets its own response,
+ * {@code elapsedMs} and request ID: {@code respond} runs once per request, under that request's MDC.
+ * Errors are shared the same way, so a scan rejected for quality is rejected for every duplicate.
+ * Keys compare the request contents exactly; the hash only picks the bucket.
+ *
+ * <p>The shared pass runs under a deadline of its own that expires with the first request's time
+ * budget and is cancelled only once every request of the group has been abandoned, so a client that
+ * gives up does not cut short the retry waiting on it. A duplicate joins only a group whose deadline
+ * lasts at least as long as its own and has not been cancelled; otherwise it runs alone. If the
+ * shared result still comes back partial while a duplicate has time left, that duplicate runs again
+ * under its own deadline.
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final BiometricProperties properties;
+    private final MatchingAdmission admission;
+    private final MatchingMetrics metrics;
+    private final Map<Object, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(BiometricProperties properties, MatchingAdmission admission, MatchingMetrics metrics) {
+        this.properties = properties;
+        this.admission = admission;
+        this.metrics = metrics;
+    }
+
+    public IdentifyKey identifyKey(String scanTemplateBase64, List<CandidateRequest> candidates, int topK) {
+        return new IdentifyKey(scanTemplateBase64, candidates, topK, properties.getThreshold());
+    }
+
+    public VerifyKey verifyKey(String scanTemplateBase64, List<String> personTemplatesBase64) {
+        return new VerifyKey(scanTemplateBase64, personTemplatesBase64, properties.getThreshold());
+    }
+
+    /**
+     * Key of an identify whose templates arrived as raw bytes, compared by content.
+     */
+    public RawIdentifyKey rawIdentifyKey(byte[] scanTemplate, List<CborCandidateRequest> candidates, int topK) {
+        List<RawCandidateKey> candidateKeys = new ArrayList<>(candidates.size());
+        for (CborCandidateRequest candidate : candidates) {
+            candidateKeys.add(new RawCandidateKey(candidate.candidateId(), contents(candidate.templatesBase64())));
+        }
+        return new RawIdentifyKey(new Content(scanTemplate), candidateKeys, topK, properties.getThreshold());
+    }
+
+    public RawVerifyKey rawVerifyKey(byte[] scanTemplate, List<byte[]> personTemplates) {
+        return new RawVerifyKey(new Content(scanTemplate), contents(personTemplates), properties.getThreshold());
+    }
+
+    private static List<Content> contents(List<byte[]> templates) {
+        List<Content> contents = new ArrayList<>(templates.size());
+        for (byte[] template : templates) {
+            contents.add(new Content(template));
+        }
+        return contents;
+    }
+
+    /**
+     * Runs {@code work} through {@link MatchingAdmission}, or joins the identical request already
+     * running under {@code key}, then maps the result with {@code respond}.
+     *
+     * @param deadline this request's deadline; {@code work} is given the one it should poll
+     * @param partial  whether a result was cut short by its deadline
+     * @throws com.cantina.biometric.exception.ServiceUnavailableException if this request runs its own
+     *         pass and the in-flight limit is reached
+     */
+    public <T, R> CompletableFuture<R> submit(String operation,
+                                              Record key,
+                                              MatchDeadline deadline,
+                                              Function<MatchDeadline, T> work,
+                                              Predicate<T> partial,
+                                              Function<T, R> respond) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        CompletableFuture<T> result = properties.isCoalescingEnabled()
+                ? shared(operation, key, deadline, work, partial)
+                : admission.submit(() -> work.apply(deadline));
+        return result.thenApply(value -> MatchingAdmission.withContext(context, () -> respond.apply(value)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> shared(String operation,
+                                            Object key,
+                                            MatchDeadline deadline,
+                                            Function<MatchDeadline, T> work,
+                                            Predicate<T> partial) {
+        String requestId = MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY);
+        InFlight leader = new InFlight(requestId, deadline.detached());
+        InFlight running = inFlight.putIfAbsent(key, leader);
+        if (running != null) {
+            if (!running.attach(deadline)) {
+                log.info("event=request-not-coalesced requestId={} operation={} leaderRequestId={} reason=leader-deadline",
+                        requestId, operation, running.requestId());
+                return admission.submit(() -> work.apply(deadline));
+            }
+            metrics.recordCoalesced(operation);
+            log.info("event=request-coalesced requestId={} operation={} leaderRequestId={}",
+                    requestId, operation, running.requestId());
+            Map<String, String> context = MDC.getCopyOfContextMap();
+            return ((CompletableFuture<T>) running.result()).thenCompose(value -> {
+                if (!partial.test(value) || deadline.expired()) {
+                    return CompletableFuture.completedFuture(value);
+                }
+                return MatchingAdmission.withContext(context, () -> {
+                    log.info("event=request-coalesced-rerun requestId={} operation={} leaderRequestId={} remainingMs={}",
+                            requestId, operation, running.requestId(), deadline.remainingMillis());
+                    return admission.submit(() -> work.apply(deadline));
+                });
+            });
+        }
+
+        deadline.whenCancelled(leader::detach);
+        CompletableFuture<Object> result = leader.result();
+        try {
+            admission.submit(() -> work.apply(leader.deadline())).whenComplete((value, error) -> {
+                inFlight.remove(key, leader);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, leader);
+            result.completeExceptionally(ex);
+            throw ex;
+        }
+        return (CompletableFuture<T>) result;
+    }
+
+    public record IdentifyKey(String scanTemplateBase64, List<CandidateRequest> candidates, int topK, double threshold) {
+    }
+
+    public record VerifyKey(String scanTemplateBase64, List<String> personTemplatesBase64, double threshold) {
+    }
+
+    public record RawIdentifyKey(Content scanTemplate, List<RawCandidateKey> candidates, int topK, double threshold) {
+    }
+
+    public record RawCandidateKey(String candidateId, List<Content> templates) {
+    }
+
+    public record RawVerifyKey(Content scanTemplate, List<Content> personTemplates, double threshold) {
+    }
+
+    /**
+     * Template bytes as part of a key: equal when the bytes are.
+     */
+    public record Content(byte[] bytes) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Content content && Arrays.equals(content.bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+
+    /**
+     * A pass shared by identical requests. {@code attached} counts the requests still waiting on it;
+     * the first one is counted from the start, so the pass cannot be cancelled before it registers.
+     */
+    private static final class InFlight {
+
+        private final String requestId;
+        private final MatchDeadline deadline;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private int attached = 1;
+
+        InFlight(String requestId, MatchDeadline deadline) {
+            this.requestId = requestId;
+            this.deadline = deadline;
+        }
+
+        String requestId() {
+            return requestId;
+        }
+
+        MatchDeadline deadline() {
+            return deadline;
+        }
+
+        CompletableFuture<Object> result() {
+            return result;
+        }
+
+        synchronized boolean attach(MatchDeadline member) {
+            if (result.isDone() || !deadline.outlasts(member)) {
+                return false;
+            }
+            attached++;
+            member.whenCancelled(this::detach);
+            return true;
+        }
+
+        synchronized void detach() {
+            if (--attached == 0) {
+                deadline.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Short-lived cache of prepared scans, so a client that verifies a probe and then identifies with it
+ * (or retries) can refer to it by {@code scanId} instead of re-sending it and paying for matcher
+ * construction again. Entries expire a fixed time after they are stored and the cache is bounded by
+ * the estimated heap footprint of the matchers; an expired or evicted handle simply has to be replaced
+ * by sending the scan again.
+ */
+@Component
+public class ScanMatcherCache implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanMatcherCache.class);
+
+    private final Cache<String, PreparedScan> cache;
+
+    public ScanMatcherCache(BiometricProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(properties.getScanCacheTtlSeconds()))
+                .maximumWeight(properties.getScanCacheMaxBytes())
+                .weigher((String scanId, PreparedScan scan) -> scan.matcher().memory() + scan.template().memory())
+                .recordStats()
+                .build();
+        log.info("event=scan-cache-configured ttlSeconds={} maxBytes={}",
+                properties.getScanCacheTtlSeconds(),
+                properties.getScanCacheMaxBytes());
+    }
+
+    /**
+     * Stores {@code scan} under a new random handle and returns it with that {@code scanId}.
+     */
+    public PreparedScan retain(PreparedScan scan) {
+        PreparedScan retained = scan.withScanId(UUID.randomUUID().toString());
+        cache.put(retained.scanId(), retained);
+        return retained;
+    }
+
+    /**
+     * Returns the scan stored under {@code scanId}, or {@code null} when it is unknown or has expired.
+     */
+    public PreparedScan find(String scanId) {
+        return cache.getIfPresent(scanId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "scans");
+    }
+}
@@ -0,0 +1,89 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.exception.LowQualityScanException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rejects scans too poor to be worth matching before their {@code FingerprintMatcher} is built. A
+ * near-empty or smudged scan never reaches the threshold, so without the gate it pays for a full pass
+ * over every candidate only to end in a non-match.
+ *
+ * <p>The quality score is in {@code [0, 1]}: the minutiae count relative to {@link #FULL_MINUTIAE}
+ * times their spread (root mean square distance from their centroid) relative to
+ * {@link #FULL_SPREAD_PIXELS}, each capped at 1. A few minutiae, or many crowded into a small patch
+ * as with a fingertip barely touching the reader, both score low.
+ */
+@Component
+public class ScanQualityGate {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanQualityGate.class);
+
+    /**
+     * Minutiae count from which a scan is not penalized for having too few; full impressions have 30 to 80.
+     */
+    static final int FULL_MINUTIAE = 25;
+
+    /**
+     * Spread from which a scan is not penalized for covering too little of the finger, about 4 mm at
+     * the 500 dpi SourceAFIS normalizes templates to.
+     */
+    static final double FULL_SPREAD_PIXELS = 80.0;
+
+    private final double minimum;
+    private final MatchingMetrics metrics;
+
+    public ScanQualityGate(BiometricProperties properties, MatchingMetrics metrics) {
+        this.minimum = properties.getScanQualityMinimum();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the quality score of the scan serialized in {@code scanBytes}, which is the scan in
+     * {@code field} of the request and has already been decoded.
+     *
+     * @throws LowQualityScanException if the score is below {@code scan-quality-minimum}
+     */
+    public double check(byte[] scanBytes, String field) {
+        TemplateFeatures.Minutiae minutiae = TemplateFeatures.minutiae(scanBytes);
+        double quality = quality(minutiae);
+        boolean rejected = quality < minimum;
+        metrics.recordScanQuality(quality, rejected);
+        if (rejected) {
+            log.info("event=scan-rejected requestId={} field={} scanQuality={} minutiaeCount={} minimum={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY), field, quality, minutiae.count(), minimum);
+            throw new LowQualityScanException(field + ": scan quality " + quality + " is below the minimum "
+                    + minimum + ", please scan again", quality);
+        }
+        return quality;
+    }
+
+    static double quality(TemplateFeatures.Minutiae minutiae) {
+        int count = minutiae.count();
+        if (count == 0) {
+            return 0d;
+        }
+        double sumX = 0d;
+        double sumY = 0d;
+        for (int i = 0; i < count; i++) {
+            sumX += minutiae.positionsX()[i];
+            sumY += minutiae.positionsY()[i];
+        }
+        double centerX = sumX / count;
+        double centerY = sumY / count;
+        double sumSquares = 0d;
+        for (int i = 0; i < count; i++) {
+            double dx = minutiae.positionsX()[i] - centerX;
+            double dy = minutiae.positionsY()[i] - centerY;
+            sumSquares += dx * dx + dy * dy;
+        }
+        double spread = Math.sqrt(sumSquares / count);
+
+        double quality = Math.min(1d, (double) count / FULL_MINUTIAE) * Math.min(1d, spread / FULL_SPREAD_PIXELS);
+        return Math.round(quality * 100d) / 100d;
+    }
+}
@@ -0,0 +1,208 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Scores already computed for a (scan, template) pair. SourceAFIS scores are deterministic, so a
+ * remembered score is the one the matcher would return; a terminal verifying the same person again
+ * with the same capture skips the matcher, and when every template hits, the matcher is never built.
+ *
+ * <p>A pair is keyed by the 128-bit {@link SipHash} of each template's bytes under a key drawn at
+ * random when the process starts. The memo keeps no bytes to compare on a hit, so the key is what
+ * makes a hit trustworthy: without it, nobody can build a scan whose hash equals that of a genuine
+ * scan and be handed the genuine scan's score. {@link TemplateHash} must not be used here; it is
+ * unkeyed and its collisions can be constructed.
+ *
+ * <p>Entries live in one flat {@code long[]}: a two-way set-associative table whose slots hold both
+ * keys, the score bits and the expiry, so the table never grows. A new pair replaces an expired slot
+ * of its set, or else the one expiring first. Sets are guarded by a fixed number of lock stripes,
+ * held only to read or write a slot and never while matching.
+ */
+@Component
+public class ScoreMemo implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ScoreMemo.class);
+
+    private static final int WAYS = 2;
+    private static final int SLOT_LONGS = 6;
+    private static final int SCAN_HIGH = 0;
+    private static final int SCAN_LOW = 1;
+    private static final int TEMPLATE_HIGH = 2;
+    private static final int TEMPLATE_LOW = 3;
+    private static final int SCORE = 4;
+    private static final int EXPIRES = 5;
+    private static final long EMPTY = 0;
+    private static final int STRIPES = 64;
+
+    private final boolean enabled;
+    private final int sets;
+    private final int mask;
+    private final long ttlNanos;
+    private final long[] slots;
+    private final Object[] locks;
+    private final SipHash sipHash;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public ScoreMemo(BiometricProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    ScoreMemo(BiometricProperties properties, LongSupplier clock) {
+        this.enabled = properties.isScoreMemoEnabled();
+        this.sets = enabled ? powerOfTwoAtLeast(properties.getScoreMemoEntries() / WAYS) : 1;
+        this.mask = sets - 1;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(properties.getScoreMemoTtlSeconds());
+        this.slots = new long[enabled ? sets * WAYS * SLOT_LONGS : 0];
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        SecureRandom random = new SecureRandom();
+        this.sipHash = new SipHash(random.nextLong(), random.nextLong());
+        this.clock = clock;
+        log.info("event=score-memo-configured enabled={} entries={} ttlSeconds={}",
+                enabled, enabled ? sets * WAYS : 0, properties.getScoreMemoTtlSeconds());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The memo key of a template, from its exact bytes.
+     */
+    public Key key(byte[] templateBytes) {
+        long[] hash = new long[2];
+        sipHash.hash128(templateBytes, 0, templateBytes.length, hash);
+        return new Key(hash[0], hash[1]);
+    }
+
+    /**
+     * Returns the remembered score of the pair, or runs {@code match} and remembers what it returns.
+     * Two threads missing on the same pair both match it; the score is the same either way.
+     */
+    public double score(Key scan, Key template, DoubleSupplier match) {
+        if (!enabled) {
+            return match.getAsDouble();
+        }
+        int set = set(scan, template);
+        int first = set * WAYS * SLOT_LONGS;
+        Object lock = locks[set & (STRIPES - 1)];
+        synchronized (lock) {
+            long now = clock.getAsLong();
+            for (int slot = first; slot < first + WAYS * SLOT_LONGS; slot += SLOT_LONGS) {
+                if (live(slot, now) && holds(slot, scan, template)) {
+                    hits.increment();
+                    return Double.longBitsToDouble(slots[slot + SCORE]);
+                }
+            }
+        }
+
+        misses.increment();
+        double score = match.getAsDouble();
+        synchronized (lock) {
+            long now = clock.getAsLong();
+            int slot = victim(first, scan, template, now);
+            slots[slot + SCAN_HIGH] = scan.high();
+            slots[slot + SCAN_LOW] = scan.low();
+            slots[slot + TEMPLATE_HIGH] = template.high();
+            slots[slot + TEMPLATE_LOW] = template.low();
+            slots[slot + SCORE] = Double.doubleToRawLongBits(score);
+            long expiresAt = now + ttlNanos;
+            slots[slot + EXPIRES] = expiresAt == EMPTY ? 1 : expiresAt;
+        }
+        return score;
+    }
+
+    /**
+     * The slot of the pair if another thread stored it meanwhile, else an empty or expired one, else
+     * the one expiring first.
+     */
+    private int victim(int first, Key scan, Key template, long now) {
+        int end = first + WAYS * SLOT_LONGS;
+        for (int slot = first; slot < end; slot += SLOT_LONGS) {
+            if (live(slot, now) && holds(slot, scan, template)) {
+                return slot;
+            }
+        }
+        for (int slot = first; slot < end; slot += SLOT_LONGS) {
+            if (!live(slot, now)) {
+                return slot;
+            }
+        }
+        int victim = first;
+        for (int slot = first + SLOT_LONGS; slot < end; slot += SLOT_LONGS) {
+            if (slots[slot + EXPIRES] - slots[victim + EXPIRES] < 0) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private boolean holds(int slot, Key scan, Key template) {
+        return slots[slot + SCAN_HIGH] == scan.high()
+                && slots[slot + SCAN_LOW] == scan.low()
+                && slots[slot + TEMPLATE_HIGH] == template.high()
+                && slots[slot + TEMPLATE_LOW] == template.low();
+    }
+
+    private boolean live(int slot, long now) {
+        long expiresAt = slots[slot + EXPIRES];
+        return expiresAt != EMPTY && expiresAt - now > 0;
+    }
+
+    private int set(Key scan, Key template) {
+        long h = scan.high() * 0x9E3779B97F4A7C15L + template.high();
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (int) h & mask;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        FunctionCounter.builder("biometric.score.memo.hits", hits, LongAdder::sum)
+                .description("Template scores taken from the score memo instead of the matcher")
+                .register(registry);
+        FunctionCounter.builder("biometric.score.memo.misses", misses, LongAdder::sum)
+                .description("Template scores not in the score memo, matched and stored")
+                .register(registry);
+    }
+
+    /**
+     * 128-bit keyed hash of a template's bytes.
+     */
+    public record Key(long high, long low) {
+    }
+}
@@ -0,0 +1,312 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.ErrorResponse;
+import com.cantina.biometric.dto.IdentifyRequest;
+import com.cantina.biometric.dto.IdentifyResponse;
+import com.cantina.biometric.dto.RankedCandidateResponse;
+import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.exception.GlobalExceptionHandler;
+import com.cantina.biometric.exception.LowQualityScanException;
+import com.cantina.biometric.exception.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coordinator mode for identify: when {@code biometric.shard-urls} is set, the candidates of a request
+ * are partitioned over the worker instances by a consistent hash of {@code candidateId}, every worker
+ * identifies its share concurrently and the replies are merged as if one instance had matched the whole
+ * list (best score wins, ties go to the candidate that came first in the request).
+ *
+ * <p>All shards share one deadline, the shard deadline or the caller's time budget, whichever comes
+ * first. Workers get that deadline (minus a margin for the reply) as their own time budget, so a slow
+ * shard answers with what it matched so far; a shard that fails or still misses the deadline is left
+ * out. Either way the result is flagged partial. When no shard answers the request is rejected with
+ * 503, unless it was the caller's budget that ran out. When the caller goes away instead, the sub-calls
+ * still running are interrupted and the shards see their connections close.
+ */
+@Service
+public class ShardCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    /**
+     * Sent on sub-requests so a worker always matches locally, even if it is itself configured with shards.
+     */
+    public static final String SHARD_LOCAL_HEADER = "X-Biometric-Shard-Local";
+
+    private static final String IDENTIFY_PATH = "/api/v1/biometric/identify";
+    private static final int VIRTUAL_NODES = 128;
+    private static final long REPLY_MARGIN_MS = 50;
+
+    private final BiometricProperties properties;
+    private final List<String> shardUrls;
+    private final ShardRing ring;
+    private final RestClient restClient;
+    private final ExecutorService executor;
+    private final MatchingMetrics metrics;
+
+    public ShardCoordinator(BiometricProperties properties,
+                            RestClient.Builder restClientBuilder,
+                            @Qualifier("shardCallExecutor") ExecutorService executor,
+                            MatchingMetrics metrics) {
+        this.properties = properties;
+        this.shardUrls = properties.getShardUrls().stream()
+                .map(String::strip)
+                .filter(url -> !url.isEmpty())
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .toList();
+        this.ring = shardUrls.isEmpty() ? null : new ShardRing(shardUrls, VIRTUAL_NODES);
+        this.executor = executor;
+        this.metrics = metrics;
+
+        Duration deadline = Duration.ofMillis(properties.getShardDeadlineMs());
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(
+                HttpClient.newBuilder().connectTimeout(deadline).build());
+        requestFactory.setReadTimeout(deadline);
+        this.restClient = restClientBuilder.requestFactory(requestFactory).build();
+
+        log.info("event=shard-coordinator-configured enabled={} shards={} deadlineMs={}",
+                isEnabled(), shardUrls, properties.getShardDeadlineMs());
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    public ShardedIdentifyResult identify(String scanTemplateBase64, List<CandidateRequest> candidates, int topK, MatchDeadline deadline) {
+        String requestId = MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY);
+        long waitMillis = Math.min(properties.getShardDeadlineMs(), deadline.remainingMillis());
+        boolean budgetBound = waitMillis < properties.getShardDeadlineMs();
+        log.info("event=shard-identify-start requestId={} candidatesCount={} shardsCount={} topK={} waitMs={}",
+                requestId,
+                candidates.size(),
+                shardUrls.size(),
+                topK,
+                waitMillis);
+
+        if (candidates.size() > properties.getMaxCandidates()) {
+            throw new BadRequestException("candidates exceeds configured MAX_CANDIDATES=" + properties.getMaxCandidates());
+        }
+
+        List<List<CandidateRequest>> partitions = new ArrayList<>(shardUrls.size());
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            partitions.add(new ArrayList<>());
+        }
+        Map<String, Integer> firstIndex = new HashMap<>(candidates.size() * 2);
+        for (int i = 0; i < candidates.size(); i++) {
+            CandidateRequest candidate = candidates.get(i);
+            firstIndex.putIfAbsent(candidate.candidateId(), i);
+            partitions.get(ring.shardOf(candidate.candidateId())).add(candidate);
+        }
+
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long shardBudgetMillis = Math.max(1, waitMillis - REPLY_MARGIN_MS);
+        List<Integer> called = new ArrayList<>(shardUrls.size());
+        List<Future<IdentifyResponse>> calls = new ArrayList<>(shardUrls.size());
+        List<AtomicBoolean> recorded = new ArrayList<>(shardUrls.size());
+        long start = System.nanoTime();
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            if (partitions.get(shard).isEmpty()) {
+                continue;
+            }
+            IdentifyRequest subRequest = new IdentifyRequest(scanTemplateBase64, null, null, partitions.get(shard),
+                    topK > 0 ? topK : null, shardBudgetMillis);
+            String url = shardUrls.get(shard);
+            AtomicBoolean callRecorded = new AtomicBoolean();
+            called.add(shard);
+            recorded.add(callRecorded);
+            calls.add(executor.submit(() -> call(url, subRequest, requestId, callRecorded)));
+        }
+        // A caller that went away interrupts the sub-calls, which closes their connections, so the
+        // shards see the disconnect and stop matching too.
+        deadline.whenCancelled(() -> {
+            for (int i = 0; i < calls.size(); i++) {
+                recordShardCall(recorded.get(i), "cancelled", System.nanoTime() - start);
+                calls.get(i).cancel(true);
+            }
+        });
+
+        List<IdentifyResponse> replies = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            String url = shardUrls.get(called.get(i));
+            try {
+                replies.add(calls.get(i).get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (CancellationException ex) {
+                log.info("event=shard-call-cancelled requestId={} shard={}", requestId, url);
+            } catch (TimeoutException ex) {
+                recordShardCall(recorded.get(i), "timeout", TimeUnit.MILLISECONDS.toNanos(waitMillis));
+                calls.get(i).cancel(true);
+                log.warn("event=shard-call-timeout requestId={} shard={} waitMs={}",
+                        requestId, url, waitMillis);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof HttpClientErrorException.BadRequest rejected) {
+                    // Every shard gets the same scan, so a rejected request is the caller's fault, not a shard failure.
+                    ErrorResponse error = rejected.getResponseBodyAs(ErrorResponse.class);
+                    throw new BadRequestException(error != null ? error.message() : rejected.getMessage());
+                }
+                if (ex.getCause() instanceof HttpClientErrorException.UnprocessableEntity rejected) {
+                    ErrorResponse error = rejected.getResponseBodyAs(ErrorResponse.class);
+                    String quality = rejected.getResponseHeaders() == null ? null
+                            : rejected.getResponseHeaders().getFirst(GlobalExceptionHandler.SCAN_QUALITY_HEADER);
+                    throw new LowQualityScanException(error != null ? error.message() : rejected.getMessage(),
+                            quality != null ? Double.parseDouble(quality) : 0d);
+                }
+                log.warn("event=shard-call-failed requestId={} shard={} errorClass={} message={}",
+                        requestId, url, ex.getCause().getClass().getSimpleName(), ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException("Interrupted while waiting for shards", properties.getRetryAfterSeconds());
+            }
+        }
+
+        int shardsFailed = calls.size() - replies.size();
+        if (!calls.isEmpty() && replies.isEmpty() && !budgetBound && !deadline.isCancelled()) {
+            throw new ServiceUnavailableException("No shard answered within " + properties.getShardDeadlineMs() + " ms",
+                    properties.getRetryAfterSeconds());
+        }
+
+        var result = merge(replies, firstIndex, candidates, topK, shardsFailed > 0);
+        log.info("event=shard-identify-finish requestId={} matched={} bestCandidateId={} maxScore={} candidatesEvaluated={} partial={} shardsCalled={} shardsFailed={}",
+                requestId,
+                result.matched(),
+                result.candidateId(),
+                result.maxScore(),
+                result.candidatesEvaluated(),
+                result.partial(),
+                calls.size(),
+                shardsFailed);
+        return new ShardedIdentifyResult(result, calls.size(), shardsFailed);
+    }
+
+    /**
+     * {@code recorded} is shared with the waiting side: a call that timed out or was cancelled fails
+     * once interrupted, and must not be counted again as an error.
+     */
+    private IdentifyResponse call(String url, IdentifyRequest subRequest, String requestId, AtomicBoolean recorded) {
+        long start = System.nanoTime();
+        try {
+            IdentifyResponse response = restClient.post()
+                    .uri(url + IDENTIFY_PATH)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .headers(headers -> {
+                        if (requestId != null) {
+                            headers.set(RequestIdFilter.REQUEST_ID_HEADER, requestId);
+                        }
+                    })
+                    .header(SHARD_LOCAL_HEADER, "true")
+                    .body(subRequest)
+                    .retrieve()
+                    .body(IdentifyResponse.class);
+            recordShardCall(recorded, "ok", System.nanoTime() - start);
+            return response;
+        } catch (RuntimeException ex) {
+            recordShardCall(recorded, "error", System.nanoTime() - start);
+            throw ex;
+        }
+    }
+
+    /**
+     * Records the outcome of a shard call unless another one already was.
+     */
+    private void recordShardCall(AtomicBoolean recorded, String outcome, long elapsedNanos) {
+        if (recorded.compareAndSet(false, true)) {
+            metrics.recordShardCall(outcome, elapsedNanos);
+        }
+    }
+
+    /**
+     * Each shard already applied "first strictly greater score wins" to its own share, which keeps the
+     * request order, so across shards the highest score wins and equal scores go to the candidate that
+     * came first in the request.
+     */
+    private static BiometricMatchingService.IdentifyResult merge(List<IdentifyResponse> replies,
+                                                                 Map<String, Integer> firstIndex,
+                                                                 List<CandidateRequest> candidates,
+                                                                 int topK,
+                                                                 boolean shardMissing) {
+        IdentifyResponse best = null;
+        boolean partial = shardMissing;
+        double maxScore = 0d;
+        int candidatesEvaluated = 0;
+        int duplicatesSkipped = 0;
+        Double scanQuality = null;
+        TopScores topScores = topK > 0 ? new TopScores(topK) : null;
+        for (IdentifyResponse reply : replies) {
+            candidatesEvaluated += reply.candidatesEvaluated();
+            duplicatesSkipped += reply.duplicatesSkipped();
+            partial |= reply.partial();
+            // Every shard scored the same scan.
+            if (scanQuality == null) {
+                scanQuality = reply.scanQuality();
+            }
+            if (reply.maxScore() > maxScore
+                    || (best != null && reply.maxScore() == maxScore && indexOf(reply, firstIndex) < indexOf(best, firstIndex))) {
+                best = reply;
+                maxScore = reply.maxScore();
+            }
+            if (topScores != null && reply.topCandidates() != null) {
+                for (RankedCandidateResponse ranked : reply.topCandidates()) {
+                    Integer index = firstIndex.get(ranked.candidateId());
+                    if (index != null) {
+                        topScores.offer(index, ranked.score());
+                    }
+                }
+            }
+        }
+
+        List<BiometricMatchingService.RankedCandidate> topCandidates = null;
+        if (topScores != null) {
+            double[] scores = new double[topScores.size()];
+            int[] indexes = topScores.drainIndexes(scores);
+            topCandidates = new ArrayList<>(indexes.length);
+            for (int i = 0; i < indexes.length; i++) {
+                topCandidates.add(new BiometricMatchingService.RankedCandidate(candidates.get(indexes[i]).candidateId(), scores[i]));
+            }
+        }
+
+        boolean matched = best != null && best.matched();
+        return new BiometricMatchingService.IdentifyResult(matched, matched ? best.candidateId() : null,
+                matched ? best.score() : null, maxScore, candidatesEvaluated, duplicatesSkipped,
+                topCandidates, partial, scanQuality);
+    }
+
+    private static int indexOf(IdentifyResponse reply, Map<String, Integer> firstIndex) {
+        Integer index = reply.candidateId() == null ? null : firstIndex.get(reply.candidateId());
+        return index == null ? Integer.MAX_VALUE : index;
+    }
+
+    /**
+     * {@code result.partial()} is set when a shard failed, missed the deadline or itself stopped at its
+     * time budget, so some candidates were not matched.
+     */
+    public record ShardedIdentifyResult(BiometricMatchingService.IdentifyResult result, int shardsCalled, int shardsFailed) {
+
+        public boolean partial() {
+            return result.partial();
+        }
+    }
+}
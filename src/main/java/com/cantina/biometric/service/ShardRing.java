@@ -0,0 +1,59 @@
+package com.cantina.biometric.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent-hash ring mapping candidate ids to shards. Each shard owns {@code virtualNodes} points
+ * hashed from its URL, so a candidate keeps landing on the same worker (and in that worker's template
+ * cache) across requests, and adding or removing a worker only moves about {@code 1/N} of the ids.
+ */
+final class ShardRing {
+
+    private final long[] points;
+    private final int[] owners;
+
+    ShardRing(List<String> shardKeys, int virtualNodes) {
+        int size = shardKeys.size() * virtualNodes;
+        long[] hashes = new long[size];
+        int[] shards = new int[size];
+        for (int shard = 0; shard < shardKeys.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                int slot = shard * virtualNodes + node;
+                hashes[slot] = hash(shardKeys.get(shard) + "#" + node);
+                shards[slot] = shard;
+            }
+        }
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) -> {
+            int byHash = Long.compare(hashes[left], hashes[right]);
+            return byHash != 0 ? byHash : Integer.compare(shards[left], shards[right]);
+        });
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = shards[order[i]];
+        }
+    }
+
+    /**
+     * Index of the shard owning {@code candidateId}: the first point at or after its hash, wrapping around.
+     */
+    int shardOf(String candidateId) {
+        int position = Arrays.binarySearch(points, hash(candidateId));
+        if (position < 0) {
+            position = -position - 1;
+        }
+        return owners[position == points.length ? 0 : position];
+    }
+
+    private static long hash(String key) {
+        return TemplateHash.hash64(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,82 @@
+package com.cantina.biometric.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * SipHash-2-4 with 128-bit output: a keyed pseudorandom function, so without the key nobody can build
+ * bytes whose hash equals that of other bytes. Unlike {@link TemplateHash}, its hashes can stand for
+ * the bytes themselves where a collision would change a result, as long as the key stays secret.
+ */
+public final class SipHash {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long k0;
+    private final long k1;
+
+    public SipHash(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    /**
+     * Hashes {@code data} into {@code out[0]} (first 8 output bytes, little-endian) and {@code out[1]}.
+     */
+    public void hash128(byte[] data, int offset, int length, long[] out) {
+        long[] v = {
+                k0 ^ 0x736F6D6570736575L,
+                k1 ^ 0x646F72616E646F6DL ^ 0xEE,
+                k0 ^ 0x6C7967656E657261L,
+                k1 ^ 0x7465646279746573L
+        };
+
+        int index = offset;
+        int end = offset + length;
+        for (; index + Long.BYTES <= end; index += Long.BYTES) {
+            compress(v, (long) LONG_VIEW.get(data, index));
+        }
+        long last = (long) length << 56;
+        for (int shift = 0; index < end; index++, shift += 8) {
+            last |= (data[index] & 0xFFL) << shift;
+        }
+        compress(v, last);
+
+        v[2] ^= 0xEE;
+        rounds(v, 4);
+        out[0] = v[0] ^ v[1] ^ v[2] ^ v[3];
+        v[1] ^= 0xDD;
+        rounds(v, 4);
+        out[1] = v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void compress(long[] v, long m) {
+        v[3] ^= m;
+        rounds(v, 2);
+        v[0] ^= m;
+    }
+
+    private static void rounds(long[] v, int count) {
+        long v0 = v[0];
+        long v1 = v[1];
+        long v2 = v[2];
+        long v3 = v[3];
+        for (int round = 0; round < count; round++) {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13) ^ v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16) ^ v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21) ^ v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17) ^ v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+        v[0] = v0;
+        v[1] = v1;
+        v[2] = v2;
+        v[3] = v3;
+    }
+}
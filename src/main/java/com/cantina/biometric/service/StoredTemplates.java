@@ -0,0 +1,54 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Templates of a candidate loaded from the {@link TemplateStore}, kept as slices of the mapped segment
+ * and deserialized on first access. Concurrent first accesses may both deserialize; either result is
+ * kept.
+ */
+final class StoredTemplates extends AbstractList<FingerprintTemplate> implements RandomAccess {
+
+    private final List<ByteBuffer> serialized;
+    private final TemplateDecoder templateDecoder;
+    private final String field;
+    private final AtomicReferenceArray<FingerprintTemplate> templates;
+
+    StoredTemplates(List<ByteBuffer> serialized, TemplateDecoder templateDecoder, String field) {
+        this.serialized = serialized;
+        this.templateDecoder = templateDecoder;
+        this.field = field;
+        this.templates = new AtomicReferenceArray<>(serialized.size());
+    }
+
+    @Override
+    public FingerprintTemplate get(int index) {
+        FingerprintTemplate template = templates.get(index);
+        if (template == null) {
+            template = templateDecoder.fromBytes(serialized(index), field);
+            templates.compareAndSet(index, null, template);
+        }
+        return template;
+    }
+
+    /**
+     * A copy of the stored bytes of template {@code index}, without deserializing it.
+     */
+    byte[] serialized(int index) {
+        ByteBuffer slice = serialized.get(index);
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(slice.position(), bytes);
+        return bytes;
+    }
+
+    @Override
+    public int size() {
+        return serialized.size();
+    }
+}
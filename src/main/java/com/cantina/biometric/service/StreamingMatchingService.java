@@ -0,0 +1,302 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.exception.BadRequestException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Identify over an incrementally parsed request body. Each candidate is decoded straight from the
+ * token stream, matched and discarded, so memory per request is bounded by the largest candidate
+ * instead of the whole body. Duplicate templates are still matched once, found by a fixed-size digest
+ * of their bytes rather than the bytes themselves.
+ *
+ * <p>Accepts the same documents as {@code IdentifyRequest}, from any Jackson parser: JSON carries
+ * templates as Base64 strings, CBOR may carry them as raw byte strings. {@code scanTemplateBase64}
+ * must come before {@code candidates}, since candidates are matched as they arrive.
+ */
+@Service
+public class StreamingMatchingService {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingMatchingService.class);
+
+    private final BiometricProperties properties;
+    private final TemplateDecoder templateDecoder;
+    private final CandidateHeat candidateHeat;
+    private final ScanQualityGate qualityGate;
+    private final ScoreMemo scoreMemo;
+    private final MatchingMetrics metrics;
+
+    public StreamingMatchingService(BiometricProperties properties,
+                                    TemplateDecoder templateDecoder,
+                                    CandidateHeat candidateHeat,
+                                    ScanQualityGate qualityGate,
+                                    ScoreMemo scoreMemo,
+                                    MatchingMetrics metrics) {
+        this.properties = properties;
+        this.templateDecoder = templateDecoder;
+        this.candidateHeat = candidateHeat;
+        this.qualityGate = qualityGate;
+        this.scoreMemo = scoreMemo;
+        this.metrics = metrics;
+    }
+
+    public BiometricMatchingService.IdentifyResult identify(JsonParser parser) throws IOException {
+        return identify(parser, MatchDeadline.NONE);
+    }
+
+    /**
+     * Once {@code deadline} expires the remaining candidates are still read (the body has to be
+     * consumed) but no longer matched, and the result is flagged partial.
+     */
+    public BiometricMatchingService.IdentifyResult identify(JsonParser parser, MatchDeadline deadline) throws IOException {
+        log.info("event=identify-stream-start requestId={} threshold={} maxCandidates={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                properties.getThreshold(),
+                properties.getMaxCandidates());
+
+        try (parser) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new BadRequestException("Request body must be an object");
+            }
+
+            FingerprintMatcher matcher = null;
+            double scanQuality = 0d;
+            MatchState state = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    // A rejected scan stops the request before any candidate is read.
+                    case "scanTemplateBase64" -> {
+                        TemplateDecoder.HashedTemplate scanTemplate = readTemplate(parser, "scanTemplateBase64", "scanTemplateBase64: scanTemplateBase64 is required");
+                        scanQuality = qualityGate.check(scanTemplate.bytes(), "scanTemplateBase64");
+                        matcher = prepareMatcher(scanTemplate.template());
+                    }
+                    case "candidates" -> {
+                        if (matcher == null) {
+                            throw new BadRequestException("scanTemplateBase64 must precede candidates in streaming identify requests");
+                        }
+                        long matchingStart = System.nanoTime();
+                        state = matchCandidates(parser, TemplateScores.keyedByDigest(matcher, scoreMemo), deadline);
+                        metrics.recordMatching("identify-stream", System.nanoTime() - matchingStart,
+                                state.candidatesSeen, state.templatesSeen, state.maxScore);
+                    }
+                    // Candidates are discarded as they are matched, so there is nothing left to rank.
+                    case "topK" -> {
+                        if (parser.currentToken() != JsonToken.VALUE_NULL) {
+                            throw new BadRequestException("topK: topK is not supported by streaming identify");
+                        }
+                    }
+                    // Scan handles are only offered by the buffered JSON endpoint; the time budget comes from the header here.
+                    case "scanId", "retainScan", "timeBudgetMs" -> {
+                        if (parser.currentToken() != JsonToken.VALUE_NULL) {
+                            throw new BadRequestException(field + ": " + field + " is not supported by streaming identify");
+                        }
+                    }
+                    default -> throw new BadRequestException("Unrecognized field \"" + field + "\"");
+                }
+            }
+
+            if (matcher == null) {
+                throw new BadRequestException("scanTemplateBase64: scanTemplateBase64 is required");
+            }
+            if (state == null || state.candidatesSeen == 0) {
+                throw new BadRequestException("candidates: candidates must contain at least one candidate");
+            }
+
+            boolean matched = state.maxScore >= properties.getThreshold() && state.bestCandidateId != null;
+            // Candidates arrive in request order here, but the hit still warms the buffered endpoints.
+            if (matched) {
+                candidateHeat.recordHit(state.bestCandidateId);
+            }
+            log.info("event=identify-stream-finish requestId={} matched={} bestCandidateId={} maxScore={} candidatesEvaluated={} duplicatesSkipped={} candidatesAboveThreshold={} candidatesReceived={} partial={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    matched,
+                    matched ? state.bestCandidateId : null,
+                    state.maxScore,
+                    state.candidatesEvaluated,
+                    state.duplicatesSkipped,
+                    state.candidatesAboveThreshold,
+                    state.candidatesSeen,
+                    state.partial);
+            return new BiometricMatchingService.IdentifyResult(
+                    matched,
+                    matched ? state.bestCandidateId : null,
+                    matched ? state.maxScore : null,
+                    state.maxScore,
+                    state.candidatesEvaluated,
+                    state.duplicatesSkipped,
+                    null,
+                    state.partial,
+                    scanQuality);
+        } catch (JsonProcessingException ex) {
+            throw new BadRequestException("Malformed request body: " + ex.getOriginalMessage());
+        }
+    }
+
+    private MatchState matchCandidates(JsonParser parser, TemplateScores scores, MatchDeadline deadline) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new BadRequestException("candidates: candidates must contain at least one candidate");
+        }
+
+        double certainMatchScore = properties.isEarlyExitEnabled() ? properties.getCertainMatchScore() : Double.POSITIVE_INFINITY;
+        MatchState state = new MatchState();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            int index = state.candidatesSeen++;
+            if (state.candidatesSeen > properties.getMaxCandidates()) {
+                throw new BadRequestException("candidates exceeds configured MAX_CANDIDATES=" + properties.getMaxCandidates());
+            }
+            if (!state.stopped && deadline.expired()) {
+                state.stopped = true;
+                state.partial = true;
+            }
+            if (state.stopped) {
+                parser.skipChildren();
+                continue;
+            }
+
+            StreamedCandidate candidate = readCandidate(parser, index);
+            state.templatesSeen += candidate.templates().size();
+            double candidateScore = 0d;
+            for (TemplateDecoder.HashedTemplate candidateTemplate : candidate.templates()) {
+                candidateScore = Math.max(candidateScore, scores.match(candidateTemplate));
+            }
+            state.candidatesEvaluated++;
+            if (candidateScore >= properties.getThreshold()) {
+                state.candidatesAboveThreshold++;
+            }
+
+            if (log.isTraceEnabled()) {
+                log.trace("event=identify-candidate-evaluated requestId={} candidateId={} candidateMaxScore={}",
+                        MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                        candidate.candidateId(),
+                        candidateScore);
+            }
+
+            if (candidateScore > state.maxScore) {
+                state.maxScore = candidateScore;
+                state.bestCandidateId = candidate.candidateId();
+            }
+            if (candidateScore >= certainMatchScore) {
+                state.stopped = true;
+            }
+        }
+        state.duplicatesSkipped = scores.duplicatesSkipped();
+        return state;
+    }
+
+    private FingerprintMatcher prepareMatcher(FingerprintTemplate scanTemplate) {
+        long start = System.nanoTime();
+        FingerprintMatcher matcher = new FingerprintMatcher(scanTemplate);
+        metrics.recordMatcherConstruction(System.nanoTime() - start);
+        return matcher;
+    }
+
+    private StreamedCandidate readCandidate(JsonParser parser, int index) throws IOException {
+        String path = "candidates[" + index + "]";
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new BadRequestException(path + " must be an object");
+        }
+
+        String candidateId = null;
+        List<TemplateDecoder.HashedTemplate> templates = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "candidateId" -> candidateId = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                case "templatesBase64" -> templates = readTemplates(parser, path, candidateId);
+                default -> throw new BadRequestException("Unrecognized field \"" + field + "\"");
+            }
+        }
+
+        if (candidateId == null || candidateId.isBlank()) {
+            throw new BadRequestException(path + ".candidateId: candidateId is required");
+        }
+        if (templates == null || templates.isEmpty()) {
+            throw new BadRequestException(path + ".templatesBase64: templatesBase64 must contain at least one template");
+        }
+        return new StreamedCandidate(candidateId, templates);
+    }
+
+    private List<TemplateDecoder.HashedTemplate> readTemplates(JsonParser parser, String path, String candidateId) throws IOException {
+        String field = candidateId != null ? "templatesBase64 for candidateId=" + candidateId : path + ".templatesBase64";
+        return readTemplateArray(parser, path + ".templatesBase64", field);
+    }
+
+    /**
+     * Reads an array of templates, returning {@code null} for a JSON null so callers report it like a
+     * missing field. {@code path} names elements in validation messages, {@code field} in decode errors.
+     */
+    private List<TemplateDecoder.HashedTemplate> readTemplateArray(JsonParser parser, String path, String field) throws IOException {
+        String name = path.substring(path.lastIndexOf('.') + 1);
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new BadRequestException(path + ": " + name + " must contain at least one template");
+        }
+
+        List<TemplateDecoder.HashedTemplate> templates = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String element = path + "[" + templates.size() + "]";
+            templates.add(readTemplate(parser, field, element + ": template in " + name + " cannot be blank"));
+        }
+        return templates;
+    }
+
+    /**
+     * Decodes the current string token straight from the parser's text buffer, without materializing
+     * the Base64 text as a {@link String} or the template bytes as an array. Binary tokens (e.g. from
+     * non-JSON parsers) are taken as they are.
+     */
+    private TemplateDecoder.HashedTemplate readTemplate(JsonParser parser, String field, String blankMessage) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            return templateDecoder.fromBytesHashed(parser.getBinaryValue(), field);
+        }
+        if (token != JsonToken.VALUE_STRING || isBlank(parser)) {
+            throw new BadRequestException(blankMessage);
+        }
+        return templateDecoder.decodeHashed(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), field);
+    }
+
+    private static boolean isBlank(JsonParser parser) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int end = parser.getTextOffset() + parser.getTextLength();
+        for (int i = parser.getTextOffset(); i < end; i++) {
+            if (!Character.isWhitespace(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record StreamedCandidate(String candidateId, List<TemplateDecoder.HashedTemplate> templates) {
+    }
+
+    private static final class MatchState {
+        private int candidatesSeen;
+        private int candidatesEvaluated;
+        private int candidatesAboveThreshold;
+        private int templatesSeen;
+        private int duplicatesSkipped;
+        private String bestCandidateId;
+        private double maxScore;
+        private boolean stopped;
+        private boolean partial;
+    }
+}
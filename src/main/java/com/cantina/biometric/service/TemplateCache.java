@@ -0,0 +1,107 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Content-addressed cache of deserialized templates, keyed by {@link TemplateHash} of the template
+ * bytes and bounded by the estimated heap footprint of its entries (W-TinyLFU eviction).
+ *
+ * <p>Hits are confirmed by comparing the cached bytes, so a hash collision costs a cache miss but never
+ * returns the wrong template.
+ */
+@Component
+public class TemplateCache implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateCache.class);
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final Cache<Long, Entry> cache;
+    private final LongAdder collisions = new LongAdder();
+
+    public TemplateCache(BiometricProperties properties) {
+        this.maxBytes = properties.isTemplateCacheEnabled() ? properties.getTemplateCacheMaxBytes() : 0;
+        this.cache = maxBytes > 0
+                ? Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long key, Entry entry) -> entry.weight())
+                .recordStats()
+                .build()
+                : null;
+        log.info("event=template-cache-configured enabled={} maxBytes={}", cache != null, maxBytes);
+    }
+
+    public FingerprintTemplate get(byte[] templateBytes, Function<byte[], FingerprintTemplate> deserializer) {
+        long key = cache == null ? 0 : TemplateHash.hash64(templateBytes);
+        return lookup(templateBytes, key, deserializer).template();
+    }
+
+    /**
+     * Same for a caller that already has the {@link TemplateHash} of bytes it hands over and will not
+     * modify, returning the template with its bytes: the cached ones on a hit, else {@code templateBytes}.
+     */
+    Entry lookup(byte[] templateBytes, long key, Function<byte[], FingerprintTemplate> deserializer) {
+        if (cache == null) {
+            return uncached(templateBytes, deserializer);
+        }
+
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (Arrays.equals(cached.bytes(), templateBytes)) {
+                return cached;
+            }
+            collisions.increment();
+            return uncached(templateBytes, deserializer);
+        }
+
+        FingerprintTemplate template = deserializer.apply(templateBytes);
+        Entry entry = new Entry(templateBytes, template, template.memory() + templateBytes.length + ENTRY_OVERHEAD_BYTES);
+        cache.put(key, entry);
+        return entry;
+    }
+
+    private static Entry uncached(byte[] templateBytes, Function<byte[], FingerprintTemplate> deserializer) {
+        return new Entry(templateBytes, deserializer.apply(templateBytes), 0);
+    }
+
+    public Snapshot snapshot() {
+        if (cache == null) {
+            return new Snapshot(false, 0, 0, 0, CacheStats.empty(), 0);
+        }
+        long weight = cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+        return new Snapshot(true, cache.estimatedSize(), weight, maxBytes, cache.stats(), collisions.sum());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (cache == null) {
+            return;
+        }
+        CaffeineCacheMetrics.monitor(registry, cache, "templates");
+        FunctionCounter.builder("biometric.template.cache.collisions", collisions, LongAdder::sum)
+                .description("Template cache hash hits whose bytes did not match")
+                .register(registry);
+    }
+
+    record Entry(byte[] bytes, FingerprintTemplate template, int weight) {
+    }
+
+    public record Snapshot(boolean enabled, long entries, long weightBytes, long maxBytes, CacheStats stats, long collisions) {
+    }
+}
@@ -0,0 +1,185 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.RequestIdFilter;
+import com.cantina.biometric.exception.BadRequestException;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Turns Base64 or raw template bytes into {@link FingerprintTemplate}s through the {@link TemplateCache}.
+ *
+ * <p>Base64 text is copied into pooled scratch buffers ({@link DecodeBuffers}) and decoded from there by
+ * the JDK's basic (strict) decoder, so the only array allocated per template is the decoded one, which
+ * a cache miss keeps as the entry's bytes. A hit allocates it too: the cache is keyed on the decoded
+ * bytes, and the JDK decoder cannot decode into a pooled range. Against {@code Decoder.decode(String)}
+ * that saves the copy of the text (1168 to 648 B per cached template) at ~0.3 µs more per template.
+ */
+@Component
+public class TemplateDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateDecoder.class);
+
+    private static final String CANDIDATE_FIELD = "templatesBase64 for candidateId=";
+
+    /**
+     * Stands in for chars outside ASCII, which are not Base64 either, so the decoder rejects them.
+     */
+    private static final byte NOT_BASE64 = '?';
+
+    private static final Base64.Decoder BASE64 = Base64.getDecoder();
+
+    private final TemplateCache templateCache;
+    private final MatchingMetrics metrics;
+    private final DecodeBuffers buffers = new DecodeBuffers(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    public TemplateDecoder(TemplateCache templateCache, MatchingMetrics metrics) {
+        this.templateCache = templateCache;
+        this.metrics = metrics;
+    }
+
+    public FingerprintTemplate decode(String base64, String field) {
+        return decode(base64, field, null).template();
+    }
+
+    /**
+     * Decodes the template along with its bytes and their {@link TemplateHash}, for callers that key
+     * on the template's content.
+     */
+    public HashedTemplate decodeHashed(String base64, String field) {
+        return decode(base64, field, null);
+    }
+
+    /**
+     * Decodes a template of an identify candidate. The error field ({@code templatesBase64 for
+     * candidateId=...}) is only built when the template is rejected, not for every template matched.
+     */
+    public FingerprintTemplate decodeCandidateTemplate(String base64, String candidateId) {
+        return decode(base64, CANDIDATE_FIELD, candidateId).template();
+    }
+
+    public HashedTemplate decodeCandidateTemplateHashed(String base64, String candidateId) {
+        return decode(base64, CANDIDATE_FIELD, candidateId);
+    }
+
+    /**
+     * Decodes Base64 held in {@code chars[offset, offset + length)}, e.g. a streaming parser's text buffer.
+     */
+    public HashedTemplate decodeHashed(char[] chars, int offset, int length, String field) {
+        long start = System.nanoTime();
+        DecodeBuffers.Buffer buffer = buffers.acquire();
+        try {
+            byte[] text = buffer.text(length);
+            for (int i = 0; i < length; i++) {
+                text[i] = ascii(chars[offset + i]);
+            }
+            return decodeText(text, length, field, null, start);
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    public FingerprintTemplate fromBytes(byte[] templateBytes, String field) {
+        return fromBytesHashed(templateBytes, field).template();
+    }
+
+    /**
+     * Takes {@code templateBytes} as they are; the caller must not modify them afterwards.
+     */
+    public HashedTemplate fromBytesHashed(byte[] templateBytes, String field) {
+        return fromBytes(templateBytes, field, null);
+    }
+
+    /**
+     * {@link #fromBytesHashed} for a template of an identify candidate, naming the field like
+     * {@link #decodeCandidateTemplate} only when the template is rejected.
+     */
+    public HashedTemplate fromCandidateBytesHashed(byte[] templateBytes, String candidateId) {
+        return fromBytes(templateBytes, CANDIDATE_FIELD, candidateId);
+    }
+
+    private HashedTemplate fromBytes(byte[] templateBytes, String field, String candidateId) {
+        long start = System.nanoTime();
+        try {
+            long hash = TemplateHash.hash64(templateBytes);
+            TemplateCache.Entry entry = templateCache.lookup(templateBytes, hash, FingerprintTemplate::new);
+            metrics.recordTemplateDecode(System.nanoTime() - start);
+            return new HashedTemplate(entry.template(), entry.bytes(), hash);
+        } catch (RuntimeException ex) {
+            throw invalidTemplate(field, candidateId, ex);
+        }
+    }
+
+    private HashedTemplate decode(String base64, String field, String candidateId) {
+        long start = System.nanoTime();
+        DecodeBuffers.Buffer buffer = buffers.acquire();
+        try {
+            int length = base64.length();
+            byte[] text = buffer.text(length);
+            for (int i = 0; i < length; i++) {
+                text[i] = ascii(base64.charAt(i));
+            }
+            return decodeText(text, length, field, candidateId, start);
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    private HashedTemplate decodeText(byte[] text, int length, String field, String candidateId, long start) {
+        byte[] bytes;
+        try {
+            ByteBuffer decoded = BASE64.decode(ByteBuffer.wrap(text, 0, length));
+            bytes = decoded.remaining() == decoded.array().length
+                    ? decoded.array()
+                    : Arrays.copyOf(decoded.array(), decoded.remaining());
+        } catch (IllegalArgumentException ex) {
+            metrics.recordDecodeError("invalid-base64");
+            String fieldName = fieldName(field, candidateId);
+            log.warn("event=template-decode-error requestId={} field={} reason=invalid-base64 message={}",
+                    MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                    fieldName,
+                    ex.getMessage());
+            throw new BadRequestException("Invalid base64 in field " + fieldName);
+        }
+
+        try {
+            long hash = TemplateHash.hash64(bytes);
+            TemplateCache.Entry entry = templateCache.lookup(bytes, hash, FingerprintTemplate::new);
+            metrics.recordTemplateDecode(System.nanoTime() - start);
+            return new HashedTemplate(entry.template(), entry.bytes(), hash);
+        } catch (RuntimeException ex) {
+            throw invalidTemplate(field, candidateId, ex);
+        }
+    }
+
+    private static byte ascii(char c) {
+        return c < 0x80 ? (byte) c : NOT_BASE64;
+    }
+
+    private BadRequestException invalidTemplate(String field, String candidateId, RuntimeException ex) {
+        metrics.recordDecodeError("invalid-template");
+        String fieldName = fieldName(field, candidateId);
+        log.warn("event=template-decode-error requestId={} field={} reason=invalid-template message={}",
+                MDC.get(RequestIdFilter.REQUEST_ID_MDC_KEY),
+                fieldName,
+                ex.getMessage());
+        return new BadRequestException("Invalid fingerprint template in field " + fieldName);
+    }
+
+    private static String fieldName(String field, String candidateId) {
+        return candidateId == null ? field : field + candidateId;
+    }
+
+    /**
+     * {@code bytes} are the exact template bytes, shared with the template cache entry when there is
+     * one; they must not be modified.
+     */
+    public record HashedTemplate(FingerprintTemplate template, byte[] bytes, long hash) {
+    }
+}
@@ -0,0 +1,199 @@
+package com.cantina.biometric.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Compact, rotation- and translation-invariant feature vector of a template, used by
+ * {@link CandidatePrefilter} to rank candidates before the full SourceAFIS matcher runs.
+ *
+ * <p>The vector holds the minutiae count followed by a histogram over nearby minutia pairs, binned by
+ * their distance and by the direction of each minutia relative to the line joining them. Those pair
+ * invariants are what the full matcher aligns on too, so genuine impressions share most bins while
+ * unrelated fingers do not.
+ *
+ * <p>A vector is a {@link #ROW_BYTES}-byte row: the minutiae count (unsigned 16 bits), the number of
+ * pairs binned (32 bits), then the pair count of each bin, saturating at 255. Bins hold a few pairs
+ * each, so counts lose nothing against the normalized floats they replace at a quarter of the size.
+ *
+ * <p>Features are read from a template's serialized bytes, which the caller already has after decoding
+ * it, rather than from a {@code FingerprintTemplate}, which would have to be serialized again.
+ */
+public final class TemplateFeatures {
+
+    private static final int DISTANCE_BINS = 6;
+    private static final int ANGLE_BINS = 8;
+    private static final double DISTANCE_BIN_WIDTH = 20.0;
+    private static final double COUNT_PENALTY = 0.5;
+
+    static final int BINS = DISTANCE_BINS * ANGLE_BINS * ANGLE_BINS;
+    private static final int PAIRS_OFFSET = 2;
+    private static final int BINS_OFFSET = 6;
+    static final int ROW_BYTES = BINS_OFFSET + BINS;
+
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private TemplateFeatures() {
+    }
+
+    public static byte[] extract(byte[] serialized) {
+        byte[] features = new byte[ROW_BYTES];
+        extract(serialized, features, 0);
+        return features;
+    }
+
+    /**
+     * Writes the features of the template serialized in {@code serialized} into {@code target} starting
+     * at {@code offset}.
+     */
+    static void extract(byte[] serialized, byte[] target, int offset) {
+        Minutiae minutiae = minutiae(serialized);
+        int count = minutiae.count();
+        int[] bins = new int[BINS];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                if (i == j) {
+                    continue;
+                }
+                double dx = minutiae.positionsX()[j] - minutiae.positionsX()[i];
+                double dy = minutiae.positionsY()[j] - minutiae.positionsY()[i];
+                int distanceBin = (int) (Math.sqrt(dx * dx + dy * dy) / DISTANCE_BIN_WIDTH);
+                if (distanceBin >= DISTANCE_BINS) {
+                    continue;
+                }
+                double line = Math.atan2(dy, dx);
+                int fromBin = angleBin(minutiae.directions()[i] - line);
+                int toBin = angleBin(minutiae.directions()[j] - line);
+                bins[(distanceBin * ANGLE_BINS + fromBin) * ANGLE_BINS + toBin]++;
+            }
+        }
+
+        int pairs = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            int stored = Math.min(255, bins[bin]);
+            target[offset + BINS_OFFSET + bin] = (byte) stored;
+            pairs += stored;
+        }
+        int storedCount = Math.min(0xFFFF, count);
+        target[offset] = (byte) (storedCount >>> 8);
+        target[offset + 1] = (byte) storedCount;
+        for (int shift = 24, index = offset + PAIRS_OFFSET; shift >= 0; shift -= 8, index++) {
+            target[index] = (byte) (pairs >>> shift);
+        }
+    }
+
+    /**
+     * Similarity of two feature rows stored in flat arrays, in {@code [-0.5, 1]}; higher is more
+     * similar. Intersection of the histograms normalized by their pair counts, penalized by the
+     * relative difference in minutiae count.
+     */
+    static double similarity(byte[] left, int leftOffset, byte[] right, int rightOffset) {
+        long leftPairs = pairs(left, leftOffset);
+        long rightPairs = pairs(right, rightOffset);
+        double shared = 0d;
+        if (leftPairs > 0 && rightPairs > 0) {
+            // min(l / L, r / R) summed over the bins, in integers scaled by L * R.
+            long scaled = 0;
+            for (int i = BINS_OFFSET; i < ROW_BYTES; i++) {
+                scaled += Math.min((left[leftOffset + i] & 0xFF) * rightPairs, (right[rightOffset + i] & 0xFF) * leftPairs);
+            }
+            shared = (double) scaled / (leftPairs * rightPairs);
+        }
+        int leftCount = count(left, leftOffset);
+        int rightCount = count(right, rightOffset);
+        double countDifference = (double) Math.abs(leftCount - rightCount) / Math.max(1, Math.max(leftCount, rightCount));
+        return shared - COUNT_PENALTY * countDifference;
+    }
+
+    private static int count(byte[] row, int offset) {
+        return (row[offset] & 0xFF) << 8 | (row[offset + 1] & 0xFF);
+    }
+
+    private static long pairs(byte[] row, int offset) {
+        int pairs = 0;
+        for (int index = offset + PAIRS_OFFSET; index < offset + BINS_OFFSET; index++) {
+            pairs = pairs << 8 | (row[index] & 0xFF);
+        }
+        return pairs;
+    }
+
+    private static int angleBin(double angle) {
+        double normalized = angle % (2 * Math.PI);
+        if (normalized < 0) {
+            normalized += 2 * Math.PI;
+        }
+        return Math.min(ANGLE_BINS - 1, (int) (normalized / (2 * Math.PI) * ANGLE_BINS));
+    }
+
+    /**
+     * Minutiae positions and directions of the template serialized in {@code serialized}. SourceAFIS
+     * does not expose them otherwise; only these three fields are read, the rest is skipped.
+     */
+    static Minutiae minutiae(byte[] serialized) {
+        try (JsonParser parser = CBOR_FACTORY.createParser(serialized)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Template is not a CBOR map");
+            }
+            short[] positionsX = null;
+            short[] positionsY = null;
+            float[] directions = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "positionsX" -> positionsX = readShorts(parser);
+                    case "positionsY" -> positionsY = readShorts(parser);
+                    case "directions" -> directions = readFloats(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new Minutiae(positionsX, positionsY, directions);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read template minutiae", ex);
+        }
+    }
+
+    private static short[] readShorts(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        short[] values = new short[64];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getShortValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static float[] readFloats(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        float[] values = new float[64];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    record Minutiae(short[] positionsX, short[] positionsY, float[] directions) {
+
+        int count() {
+            return positionsX == null ? 0 : positionsX.length;
+        }
+    }
+}
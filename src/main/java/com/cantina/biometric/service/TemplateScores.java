@@ -0,0 +1,139 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scores of one scan against the templates of one identify, so a template sent several times (twice
+ * for the same candidate, or under two candidate IDs after a re-enrolment) is matched once and its
+ * score handed to every owner.
+ *
+ * <p>Templates decoded from the request are told apart by content: their {@link TemplateHash} picks
+ * the bucket and the bytes are compared, so duplicates are found whether or not {@link TemplateCache}
+ * handed out the same instance for them (cache disabled, or an entry evicted or rejected during a
+ * large request). The table holds the bytes of every distinct template of the request, which is at
+ * most the request itself. A table {@linkplain #keyedByDigest keyed by digest} instead holds only the
+ * 128-bit keyed {@link SipHash} of each, for streamed requests whose bytes must not outlive their
+ * candidate. Gallery templates carry no bytes and are told apart by instance. Candidates
+ * are scored in parallel; a task reaching a template another task is still matching waits for that
+ * score instead of matching it again, so the count of skipped duplicates does not depend on timing.
+ *
+ * <p>Given a {@link ScoreMemo} and the scan's memo key, templates matched along with their bytes
+ * also go through the memo, so scores remembered from earlier requests skip the matcher.
+ */
+final class TemplateScores {
+
+    private final FingerprintMatcher matcher;
+    private final ScoreMemo memo;
+    private final ScoreMemo.Key scanKey;
+    private final ScoreMemo digests;
+    private final Map<Object, CompletableFuture<Double>> scores = new ConcurrentHashMap<>();
+    private final LongAdder duplicatesSkipped = new LongAdder();
+
+    TemplateScores(FingerprintMatcher matcher) {
+        this(matcher, null, null);
+    }
+
+    TemplateScores(FingerprintMatcher matcher, ScoreMemo memo, ScoreMemo.Key scanKey) {
+        this(matcher, memo, scanKey, null);
+    }
+
+    private TemplateScores(FingerprintMatcher matcher, ScoreMemo memo, ScoreMemo.Key scanKey, ScoreMemo digests) {
+        this.matcher = matcher;
+        this.memo = memo;
+        this.scanKey = scanKey;
+        this.digests = digests;
+    }
+
+    /**
+     * Tells request templates apart by their {@link ScoreMemo#key memo key} rather than their bytes, so
+     * what the table retains per distinct template does not depend on the template's size. The key is
+     * secret, so two templates with the same digest cannot be crafted to share a score.
+     */
+    static TemplateScores keyedByDigest(FingerprintMatcher matcher, ScoreMemo digests) {
+        return new TemplateScores(matcher, null, null, digests);
+    }
+
+    /**
+     * Scores a gallery template, told apart from the others by instance.
+     */
+    double match(FingerprintTemplate template) {
+        return match(template, template, null);
+    }
+
+    /**
+     * Scores a template decoded from the request, told apart by content and, when there is a memo,
+     * looked up in it.
+     */
+    double match(TemplateDecoder.HashedTemplate template) {
+        if (digests != null) {
+            return match(digests.key(template.bytes()), template.template(), null);
+        }
+        return match(new Content(template.bytes(), template.hash()), template.template(), memo != null ? template.bytes() : null);
+    }
+
+    private double match(Object key, FingerprintTemplate template, byte[] memoBytes) {
+        CompletableFuture<Double> pending = new CompletableFuture<>();
+        CompletableFuture<Double> known = scores.putIfAbsent(key, pending);
+        if (known != null) {
+            duplicatesSkipped.increment();
+            return known.join();
+        }
+        try {
+            double score = memoBytes != null
+                    ? memo.score(scanKey, memo.key(memoBytes), () -> matcher.match(template))
+                    : matcher.match(template);
+            pending.complete(score);
+            return score;
+        } catch (RuntimeException ex) {
+            pending.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    FingerprintMatcher matcher() {
+        return matcher;
+    }
+
+    int duplicatesSkipped() {
+        return duplicatesSkipped.intValue();
+    }
+
+    /**
+     * The keys the table holds, one per distinct template scored.
+     */
+    Set<Object> keys() {
+        return scores.keySet();
+    }
+
+    /**
+     * Template bytes as a map key: equal when the bytes are.
+     */
+    private record Content(byte[] bytes, long hash) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Content content && content.hash == hash && Arrays.equals(content.bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    /**
+     * Best score of a candidate, taken through {@code scores}.
+     */
+    @FunctionalInterface
+    interface Scorer<T> {
+        double score(TemplateScores scores, T candidate);
+    }
+}
@@ -0,0 +1,470 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only on-disk store of enrolled gallery candidates, so a restart does not have to re-enrol or
+ * re-deserialize the gallery before serving.
+ *
+ * <p>Records are appended to numbered segment files ({@code segment-NNNNNNNN.dat}); a segment is
+ * sealed once it reaches {@code segmentBytes} and a new one is started. Each record is
+ * {@code magic, payloadLength, crc32c(payload), payload}, where the payload is either an enrolment
+ * (candidateId, gallery, enrolment time, serialized templates and their pre-filter features, if any) or a
+ * removal tombstone. Later records win, so replaying the segments in order rebuilds the gallery.
+ *
+ * <p>On {@link #load()} every segment is memory-mapped read-only and scanned once to rebuild the
+ * candidateId &rarr; record index. Templates are returned as slices of the mapping and only deserialized
+ * when first matched, so the OS pages them in lazily. A record that is truncated or fails its CRC in the
+ * last segment is a write torn by a crash and is cut off with the rest of the segment. In an earlier
+ * segment, which was sealed before the next one was started, it is corruption: {@link #load()} fails
+ * rather than start with the rest of that segment missing from the gallery.
+ *
+ * <p>The candidateId, the gallery and the template count are stored as unsigned 16-bit lengths;
+ * {@link #put} rejects larger ones before anything is written.
+ *
+ * <p>Removals and re-enrolments leave dead records behind. Once dead bytes exceed both the live bytes
+ * and one segment, live records are copied into fresh segments in enrolment order, and only once they
+ * are on disk is the {@value #MANIFEST} file atomically replaced to name the first of them; the old
+ * segments are deleted after that. Replay skips (and deletes) every segment numbered below the one in
+ * the manifest, so it never mixes old segments with their copies: a re-enrolled candidate would keep
+ * the position of its first enrolment in a surviving old segment instead of its position in the copy.
+ * A crash before the manifest is replaced replays the old segments followed by copies of their own
+ * live records, which is the same gallery.
+ *
+ * <p>Not thread-safe; {@link GalleryService} serializes all calls.
+ */
+public final class TemplateStore implements Closeable {
+
+    /**
+     * Store that keeps nothing, used when no store directory is configured.
+     */
+    public static final TemplateStore NONE = new TemplateStore(null, Long.MAX_VALUE, false);
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateStore.class);
+
+    private static final int MAGIC = 0x54504C31;
+    private static final int HEADER_BYTES = 12;
+    /**
+     * Enrolment whose features are {@code float}s in an earlier layout; they are dropped on load and
+     * extracted again when needed.
+     */
+    private static final byte PUT_FLOAT_FEATURES = 1;
+    private static final byte DELETE = 2;
+    private static final byte PUT = 3;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String MANIFEST = "MANIFEST";
+    private static final String MANIFEST_TEMPORARY = MANIFEST + ".tmp";
+    private static final int MAX_SHORT_LENGTH = 0xFFFF;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+
+    private final Map<String, Location> index = new LinkedHashMap<>();
+    private FileChannel active;
+    private long activeId;
+    private long liveBytes;
+    private long totalBytes;
+
+    private TemplateStore(Path directory, long segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    public static TemplateStore open(Path directory, long segmentBytes, boolean fsync) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to create template store directory " + directory, ex);
+        }
+        return new TemplateStore(directory, segmentBytes, fsync);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Replays every segment and returns the live candidates in enrolment order. Must be called once,
+     * before any write.
+     *
+     * @throws IllegalStateException if a segment other than the last one holds a corrupt record
+     */
+    public List<StoredCandidate> load() {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        Map<String, StoredCandidate> candidates = new LinkedHashMap<>();
+        List<Long> segments;
+        try {
+            long firstSegment = readManifest();
+            segments = liveSegmentIds(firstSegment);
+            for (int i = 0; i < segments.size(); i++) {
+                replay(segments.get(i), i == segments.size() - 1, candidates);
+            }
+            activeId = segments.isEmpty() ? Math.max(1, firstSegment) : segments.get(segments.size() - 1);
+            openActive();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to load template store " + directory, ex);
+        }
+
+        log.info("event=template-store-loaded directory={} segments={} candidates={} liveBytes={} totalBytes={} elapsedMs={}",
+                directory,
+                segments.size(),
+                candidates.size(),
+                liveBytes,
+                totalBytes,
+                (System.nanoTime() - start) / 1_000_000);
+        return new ArrayList<>(candidates.values());
+    }
+
+    public void put(String candidateId, String gallery, Instant enrolledAt, List<byte[]> templates, byte[] features) {
+        if (!isEnabled()) {
+            return;
+        }
+        byte[] id = candidateId.getBytes(StandardCharsets.UTF_8);
+        byte[] galleryBytes = gallery.getBytes(StandardCharsets.UTF_8);
+        checkShortLength("candidateId", "bytes", id.length);
+        checkShortLength("gallery", "bytes", galleryBytes.length);
+        checkShortLength("templatesBase64", "templates", templates.size());
+        int payloadBytes = 1 + 2 + id.length + 2 + galleryBytes.length + 8 + 2 + 4 + features.length;
+        for (byte[] template : templates) {
+            payloadBytes += 4 + template.length;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+        payload.put(PUT).putShort((short) id.length).put(id);
+        payload.putShort((short) galleryBytes.length).put(galleryBytes);
+        payload.putLong(enrolledAt.toEpochMilli());
+        payload.putShort((short) templates.size());
+        for (byte[] template : templates) {
+            payload.putInt(template.length).put(template);
+        }
+        payload.putInt(features.length).put(features);
+        append(candidateId, payload.flip(), true);
+    }
+
+    private static void checkShortLength(String field, String unit, int length) {
+        if (length > MAX_SHORT_LENGTH) {
+            throw new BadRequestException(field + " exceeds " + MAX_SHORT_LENGTH + " " + unit);
+        }
+    }
+
+    public void remove(String candidateId) {
+        if (!isEnabled() || !index.containsKey(candidateId)) {
+            return;
+        }
+        byte[] id = candidateId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 2 + id.length);
+        payload.put(DELETE).putShort((short) id.length).put(id);
+        append(candidateId, payload.flip(), false);
+    }
+
+    /**
+     * Rewrites the live records into fresh segments and deletes the old ones.
+     */
+    public void compact() {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long before = totalBytes;
+        try {
+            List<Long> oldSegments = segmentIds();
+            Map<Long, MappedByteBuffer> sources = new LinkedHashMap<>();
+            for (long segment : oldSegments) {
+                sources.put(segment, map(segment));
+            }
+
+            active.close();
+            activeId = oldSegments.get(oldSegments.size() - 1) + 1;
+            openActive();
+            totalBytes = 0;
+            liveBytes = 0;
+            Map<String, Location> live = new LinkedHashMap<>(index);
+            index.clear();
+            for (Map.Entry<String, Location> entry : live.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer record = sources.get(location.segment())
+                        .slice(Math.toIntExact(location.offset()), location.length());
+                writeRecord(entry.getKey(), record, true);
+            }
+            // Forced whatever the fsync setting: once the manifest names the copies, the old
+            // segments are gone for replay.
+            active.force(false);
+            writeManifest(oldSegments.get(oldSegments.size() - 1) + 1);
+
+            for (long segment : oldSegments) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to compact template store " + directory, ex);
+        }
+
+        log.info("event=template-store-compacted directory={} candidates={} bytesBefore={} bytesAfter={} elapsedMs={}",
+                directory,
+                index.size(),
+                before,
+                totalBytes,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public long liveBytes() {
+        return liveBytes;
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    private void append(String candidateId, ByteBuffer payload, boolean live) {
+        try {
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.remaining());
+            record.putInt(MAGIC).putInt(payload.remaining()).putInt(crc(payload)).put(payload).flip();
+            writeRecord(candidateId, record, live);
+            sync();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write template store " + directory, ex);
+        }
+
+        if (totalBytes - liveBytes > Math.max(liveBytes, segmentBytes)) {
+            compact();
+        }
+    }
+
+    private void writeRecord(String candidateId, ByteBuffer record, boolean live) throws IOException {
+        int length = record.remaining();
+        if (active.size() > 0 && active.size() + length > segmentBytes) {
+            sync();
+            active.close();
+            activeId++;
+            openActive();
+        }
+
+        long offset = active.size();
+        while (record.hasRemaining()) {
+            active.write(record, active.size());
+        }
+        totalBytes += length;
+        if (live) {
+            track(candidateId, new Location(activeId, offset, length));
+        } else {
+            untrack(candidateId);
+        }
+    }
+
+    private void replay(long segment, boolean last, Map<String, StoredCandidate> candidates) throws IOException {
+        MappedByteBuffer buffer = map(segment);
+        int position = 0;
+        while (position < buffer.limit()) {
+            int length = validRecordLength(buffer, position);
+            if (length < 0) {
+                if (last) {
+                    log.warn("event=template-store-truncated segment={} offset={} droppedBytes={}",
+                            segment, position, buffer.limit() - position);
+                    try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE)) {
+                        channel.truncate(position);
+                        channel.force(true);
+                    }
+                    break;
+                }
+                log.error("event=template-store-corrupt segment={} offset={} unreadableBytes={}",
+                        segment, position, buffer.limit() - position);
+                throw new IllegalStateException("Template store segment " + segmentPath(segment)
+                        + " has a corrupt record at offset " + position + "; the " + (buffer.limit() - position)
+                        + " bytes from there on cannot be replayed. Restore the segment from a backup, or truncate"
+                        + " it at that offset to start without the candidates stored after it.");
+            }
+
+            ByteBuffer payload = buffer.slice(position + HEADER_BYTES, length - HEADER_BYTES);
+            String candidateId = readString(payload.position(1));
+            byte type = payload.get(0);
+            if (type == PUT || type == PUT_FLOAT_FEATURES) {
+                // Like the in-memory gallery, a re-enrolment keeps the candidate's original position.
+                candidates.put(candidateId, readCandidate(candidateId, payload, type == PUT));
+                track(candidateId, new Location(segment, position, length));
+            } else {
+                candidates.remove(candidateId);
+                untrack(candidateId);
+            }
+            totalBytes += length;
+            position += length;
+        }
+    }
+
+    /**
+     * Length of the record at {@code position} including its header, or {@code -1} if it is truncated or
+     * fails its CRC.
+     */
+    private static int validRecordLength(ByteBuffer buffer, int position) {
+        if (buffer.limit() - position < HEADER_BYTES || buffer.getInt(position) != MAGIC) {
+            return -1;
+        }
+        int payloadLength = buffer.getInt(position + 4);
+        if (payloadLength <= 0 || payloadLength > buffer.limit() - position - HEADER_BYTES) {
+            return -1;
+        }
+        if (crc(buffer.slice(position + HEADER_BYTES, payloadLength)) != buffer.getInt(position + 8)) {
+            return -1;
+        }
+        return HEADER_BYTES + payloadLength;
+    }
+
+    /**
+     * Reads an enrolment payload positioned just after the candidateId. Features in the float layout
+     * are not read, leaving them empty.
+     */
+    private static StoredCandidate readCandidate(String candidateId, ByteBuffer payload, boolean byteFeatures) {
+        String gallery = readString(payload);
+        Instant enrolledAt = Instant.ofEpochMilli(payload.getLong());
+        int templateCount = Short.toUnsignedInt(payload.getShort());
+        List<ByteBuffer> templates = new ArrayList<>(templateCount);
+        for (int i = 0; i < templateCount; i++) {
+            int length = payload.getInt();
+            templates.add(payload.slice(payload.position(), length));
+            payload.position(payload.position() + length);
+        }
+        byte[] features = new byte[byteFeatures ? payload.getInt() : 0];
+        payload.get(features);
+        return new StoredCandidate(candidateId, gallery, enrolledAt, templates, features);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[Short.toUnsignedInt(payload.getShort())];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void track(String candidateId, Location location) {
+        Location previous = index.put(candidateId, location);
+        liveBytes += location.length() - (previous == null ? 0 : previous.length());
+    }
+
+    private void untrack(String candidateId) {
+        Location previous = index.remove(candidateId);
+        if (previous != null) {
+            liveBytes -= previous.length();
+        }
+    }
+
+    private MappedByteBuffer map(long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * First segment of the last completed compaction, or {@code 0} before the first one.
+     */
+    private long readManifest() throws IOException {
+        Files.deleteIfExists(directory.resolve(MANIFEST_TEMPORARY));
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(manifest, StandardCharsets.US_ASCII).strip());
+    }
+
+    private void writeManifest(long firstSegment) throws IOException {
+        Path temporary = directory.resolve(MANIFEST_TEMPORARY);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(Long.toString(firstSegment).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Segments from {@code firstSegment} on. Older ones were superseded by a compaction that crashed
+     * before deleting them all, and are deleted now.
+     */
+    private List<Long> liveSegmentIds(long firstSegment) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        for (long segment : segmentIds()) {
+            if (segment < firstSegment) {
+                log.warn("event=template-store-superseded-segment-deleted segment={} firstSegment={}", segment, firstSegment);
+                Files.delete(segmentPath(segment));
+            } else {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private void openActive() throws IOException {
+        active = FileChannel.open(segmentPath(activeId), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    private void sync() throws IOException {
+        if (fsync) {
+            active.force(false);
+        }
+    }
+
+    private List<Long> segmentIds() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to list template store " + directory, ex);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Candidate replayed from the store. {@code templates} are read-only slices of the mapped segment;
+     * {@code features} is empty when none were stored.
+     */
+    public record StoredCandidate(String candidateId, String gallery, Instant enrolledAt, List<ByteBuffer> templates, byte[] features) {
+    }
+
+    private record Location(long segment, long offset, int length) {
+    }
+}
@@ -0,0 +1,104 @@
+package com.cantina.biometric.service;
+
+/**
+ * Bounded min-heap of the {@code k} best (candidate index, score) pairs, kept in two primitive arrays
+ * so offering a candidate never allocates. Ranking is by score descending and, on equal scores, by
+ * candidate index ascending, which matches the "first strictly greater score wins" rule; the root is
+ * always the worst entry kept.
+ *
+ * <p>Not thread-safe: each matching task fills its own instance and partial heaps are combined with
+ * {@link #mergeFrom(TopScores)}, which gives the same result regardless of how the list was split.
+ */
+final class TopScores {
+
+    private final int[] indexes;
+    private final double[] scores;
+    private int size;
+
+    TopScores(int capacity) {
+        this.indexes = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    void offer(int index, double score) {
+        if (size < indexes.length) {
+            indexes[size] = index;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && ranksAbove(index, score, indexes[0], scores[0])) {
+            indexes[0] = index;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    void mergeFrom(TopScores other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.indexes[i], other.scores[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Candidate indexes from best to worst. Consumes the heap.
+     */
+    int[] drainIndexes(double[] scoresOut) {
+        int count = size;
+        int[] ranked = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            ranked[i] = indexes[0];
+            scoresOut[i] = scores[0];
+            size--;
+            if (size > 0) {
+                indexes[0] = indexes[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return ranked;
+    }
+
+    private void siftUp(int position) {
+        int index = indexes[position];
+        double score = scores[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!ranksAbove(indexes[parent], scores[parent], index, score)) {
+                break;
+            }
+            indexes[position] = indexes[parent];
+            scores[position] = scores[parent];
+            position = parent;
+        }
+        indexes[position] = index;
+        scores[position] = score;
+    }
+
+    private void siftDown(int position) {
+        int index = indexes[position];
+        double score = scores[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && ranksAbove(indexes[child], scores[child], indexes[right], scores[right])) {
+                child = right;
+            }
+            if (!ranksAbove(index, score, indexes[child], scores[child])) {
+                break;
+            }
+            indexes[position] = indexes[child];
+            scores[position] = scores[child];
+            position = child;
+        }
+        indexes[position] = index;
+        scores[position] = score;
+    }
+
+    private static boolean ranksAbove(int index, double score, int otherIndex, double otherScore) {
+        return score > otherScore || (score == otherScore && index < otherIndex);
+    }
+}
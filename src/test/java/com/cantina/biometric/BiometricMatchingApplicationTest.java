@@ -0,0 +1,56 @@
+package com.cantina.biometric;
+
+import com.cantina.biometric.service.ScoreMemo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts the whole application, so a bean that cannot be wired fails the build rather than the deploy.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "biometric.score-memo-enabled=true",
+        "biometric.warm-up-max-seconds=5"
+})
+class BiometricMatchingApplicationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @Autowired
+    private ScoreMemo scoreMemo;
+
+    @Test
+    void applicationStartsAndServesVerifyOnceReady() throws Exception {
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+        assertTrue(scoreMemo.isEnabled());
+
+        String payload = """
+                {"scanTemplateBase64": "%s", "personTemplatesBase64": ["%s"]}
+                """.formatted(fingerBase64(7, 1), fingerBase64(7));
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/biometric/verify"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(payload))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"verified\":true"), response.body());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.cantina.biometric.config;
+
+import com.cantina.biometric.service.ScanQualityGate;
+import com.cantina.biometric.service.TemplateDecoder;
+import com.cantina.biometric.support.ServiceFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The instance is a shard coordinator whose only shard is unreachable: without the shard-local header
+ * the bound identify would be sent there and fail.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "biometric.warm-up-enabled=false",
+        "biometric.shard-urls=http://127.0.0.1:9",
+        "biometric.shard-deadline-ms=200"
+})
+class StartupWarmUpTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private StartupWarmUp warmUp;
+
+    @Test
+    void warmUpTemplatesDecodeAndPassTheQualityGate() {
+        BiometricProperties properties = new BiometricProperties();
+        properties.setScanQualityMinimum(0.2);
+        TemplateDecoder decoder = ServiceFixtures.templateDecoder(properties);
+        ScanQualityGate gate = new ScanQualityGate(properties, ServiceFixtures.metrics());
+
+        for (long seed = 0; seed < 20; seed++) {
+            for (int impression = 0; impression <= StartupWarmUp.VERIFY_TEMPLATES; impression++) {
+                byte[] template = WarmUpTemplates.finger((1L << 40) + seed, impression);
+                decoder.fromBytes(template, "warm-up");
+                assertTrue(gate.check(template, "warm-up") >= 0.2);
+            }
+        }
+    }
+
+    @Test
+    void everyWarmUpCallIsAnsweredLocallyWith200() throws Exception {
+        List<StartupWarmUp.Call> calls = warmUp.calls(URI.create("http://localhost:" + port));
+        assertEquals(4, calls.size());
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            for (StartupWarmUp.Call call : calls) {
+                // Throws unless the call is answered with 200.
+                call.send(client, StartupWarmUp.REQUEST_ID + "-test");
+            }
+        }
+    }
+}
@@ -1,38 +1,90 @@
 package com.cantina.biometric.controller;
 
 import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestDeadlines;
+import com.cantina.biometric.config.RequestIdFilter;
 import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.exception.GlobalExceptionHandler;
+import com.cantina.biometric.exception.LowQualityScanException;
 import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.MatchDeadline;
+import com.cantina.biometric.service.MatchingAdmission;
+import com.cantina.biometric.service.MatchingMetrics;
+import com.cantina.biometric.service.PreparedScan;
+import com.cantina.biometric.service.RequestCoalescer;
+import com.cantina.biometric.service.ShardCoordinator;
+import com.cantina.biometric.service.StreamingMatchingService;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
-import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.MockReset;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(BiometricController.class)
+@WebMvcTest(controllers = BiometricController.class, properties = "biometric.matching-max-in-flight=1")
 class BiometricControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
-    @MockBean
+    @Autowired
     private BiometricMatchingService matchingService;
 
+    @Autowired
+    private StreamingMatchingService streamingMatchingService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private MatchingAdmission admission;
+
     @Test
     void identifyReturnsExpectedMatch() throws Exception {
-        when(matchingService.identify(anyString(), anyList())).thenReturn(
+        when(matchingService.prepareScan(anyString(), isNull(), anyBoolean())).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.identify(any(PreparedScan.class), anyList(), anyInt(), any())).thenReturn(
                 new BiometricMatchingService.IdentifyResult(true, "uuid-2", 56.2, 56.2, 3)
         );
 
@@ -46,18 +98,24 @@ class BiometricControllerTest {
                 }
                 """;
 
-        mockMvc.perform(post("/api/v1/biometric/identify")
+        MvcResult pending = mockMvc.perform(post("/api/v1/biometric/identify")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.matched").value(true))
                 .andExpect(jsonPath("$.candidateId").value("uuid-2"))
-                .andExpect(jsonPath("$.score").value(56.2));
+                .andExpect(jsonPath("$.score").value(56.2))
+                .andExpect(jsonPath("$.partial").value(false));
     }
 
     @Test
     void identifyReturnsNotFoundWhenBelowThreshold() throws Exception {
-        when(matchingService.identify(anyString(), anyList())).thenReturn(
+        when(matchingService.prepareScan(anyString(), isNull(), anyBoolean())).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.identify(any(PreparedScan.class), anyList(), anyInt(), any())).thenReturn(
                 new BiometricMatchingService.IdentifyResult(false, null, null, 12.3, 2)
         );
 
@@ -70,18 +128,49 @@ class BiometricControllerTest {
                 }
                 """;
 
-        mockMvc.perform(post("/api/v1/biometric/identify")
+        MvcResult pending = mockMvc.perform(post("/api/v1/biometric/identify")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.matched").value(false))
                 .andExpect(jsonPath("$.candidateId").doesNotExist())
                 .andExpect(jsonPath("$.maxScore").value(12.3));
     }
 
+    @Test
+    void lowQualityScanIsUnprocessableWithItsScore() throws Exception {
+        when(matchingService.prepareScan(anyString(), isNull(), anyBoolean())).thenThrow(
+                new LowQualityScanException("scanTemplateBase64: scan quality 0.04 is below the minimum 0.2, please scan again", 0.04));
+
+        String payload = """
+                {
+                  "scanTemplateBase64": "U0NBTg==",
+                  "candidates": [
+                    {"candidateId": "uuid-1", "templatesBase64": ["QQ=="]}
+                  ]
+                }
+                """;
+
+        MvcResult pending = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(header().string(GlobalExceptionHandler.SCAN_QUALITY_HEADER, "0.04"))
+                .andExpect(jsonPath("$.message").value("scanTemplateBase64: scan quality 0.04 is below the minimum 0.2, please scan again"));
+    }
+
     @Test
     void verifyReturnsTrueAndFalse() throws Exception {
-        when(matchingService.verify(anyString(), anyList()))
+        when(matchingService.prepareScan(anyString(), isNull(), anyBoolean())).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.verify(any(PreparedScan.class), anyList()))
                 .thenReturn(new BiometricMatchingService.VerifyResult(true, 49.1, 40.0))
                 .thenReturn(new BiometricMatchingService.VerifyResult(false, 10.0, 40.0));
 
@@ -92,19 +181,252 @@ class BiometricControllerTest {
                 }
                 """;
 
-        mockMvc.perform(post("/api/v1/biometric/verify")
+        MvcResult first = mockMvc.perform(post("/api/v1/biometric/verify")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(first))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.verified").value(true));
 
-        mockMvc.perform(post("/api/v1/biometric/verify")
+        MvcResult second = mockMvc.perform(post("/api/v1/biometric/verify")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(second))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.verified").value(false));
     }
 
+    @Test
+    void verifyRetainsScanAndIdentifyReusesItByScanId() throws Exception {
+        PreparedScan retained = new PreparedScan("scan-1", null, null, 1.0);
+        when(matchingService.prepareScan(anyString(), isNull(), eq(true))).thenReturn(retained);
+        when(matchingService.prepareScan(isNull(), eq("scan-1"), eq(false))).thenReturn(retained);
+        when(matchingService.verify(eq(retained), anyList())).thenReturn(new BiometricMatchingService.VerifyResult(false, 10.0, 40.0));
+        when(matchingService.identify(eq(retained), anyList(), anyInt(), any())).thenReturn(
+                new BiometricMatchingService.IdentifyResult(true, "uuid-2", 56.2, 56.2, 1)
+        );
+
+        MvcResult verify = mockMvc.perform(post("/api/v1/biometric/verify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"scanTemplateBase64": "U0NBTg==", "retainScan": true, "personTemplatesBase64": ["QQ=="]}
+                                """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(verify))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.verified").value(false))
+                .andExpect(jsonPath("$.scanId").value("scan-1"));
+
+        MvcResult identify = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"scanId": "scan-1", "candidates": [{"candidateId": "uuid-2", "templatesBase64": ["Qg=="]}]}
+                                """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(identify))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.candidateId").value("uuid-2"))
+                .andExpect(jsonPath("$.scanId").value("scan-1"));
+    }
+
+    @Test
+    void identifyReturnsServiceUnavailableWhenAdmissionIsSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> holder = admission.submit(() -> {
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        while (admission.inFlight() < 1) {
+            Thread.onSpinWait();
+        }
+
+        String payload = """
+                {
+                  "scanTemplateBase64": "U0NBTg==",
+                  "candidates": [
+                    {"candidateId": "uuid-1", "templatesBase64": ["QQ=="]}
+                  ]
+                }
+                """;
+
+        try {
+            mockMvc.perform(post("/api/v1/biometric/identify")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(payload))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"))
+                    .andExpect(jsonPath("$.status").value(503));
+        } finally {
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void identifyBindsCborByteStringsStraightToBytes() throws Exception {
+        when(matchingService.prepareRawScan(aryEq(new byte[]{1, 2, 3}), isNull(), anyBoolean())).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.identifyRaw(any(PreparedScan.class), argThat(candidates -> candidates.size() == 1
+                && candidates.get(0).candidateId().equals("uuid-2")
+                && Arrays.equals(candidates.get(0).templatesBase64().get(0), new byte[]{4})), eq(3), any())).thenReturn(
+                new BiometricMatchingService.IdentifyResult(true, "uuid-2", 56.2, 56.2, 2)
+        );
+
+        byte[] payload = new CBORMapper().writeValueAsBytes(Map.of(
+                "scanTemplateBase64", new byte[]{1, 2, 3},
+                "candidates", List.of(Map.of("candidateId", "uuid-2", "templatesBase64", List.of(new byte[]{4}))),
+                "topK", 3));
+
+        MvcResult result = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .contentType(BiometricController.APPLICATION_CBOR_VALUE)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matched").value(true))
+                .andExpect(jsonPath("$.candidateId").value("uuid-2"));
+        verify(matchingService, never()).identify(any(PreparedScan.class), anyList(), anyInt(), any());
+    }
+
+    @Test
+    void cborRequestsAreValidatedLikeJson() throws Exception {
+        byte[] payload = new CBORMapper().writeValueAsBytes(Map.of(
+                "scanTemplateBase64", new byte[]{1, 2, 3},
+                "candidates", List.of(Map.of("candidateId", "uuid-2", "templatesBase64", List.of(new byte[0])))));
+
+        mockMvc.perform(post("/api/v1/biometric/identify")
+                        .contentType(BiometricController.APPLICATION_CBOR_VALUE)
+                        .content(payload))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("candidates[0].templatesBase64[0]: template in templatesBase64 cannot be blank"));
+    }
+
+    @Test
+    void cborVerifyRunsOnTheMatchingExecutor() throws Exception {
+        CompletableFuture<Thread> matchedOn = new CompletableFuture<>();
+        when(matchingService.prepareRawScan(any(), isNull(), eq(false))).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.verifyRaw(any(PreparedScan.class), anyList())).thenAnswer(invocation -> {
+            matchedOn.complete(Thread.currentThread());
+            return new BiometricMatchingService.VerifyResult(true, 61.0, 40.0);
+        });
+
+        byte[] payload = new CBORMapper().writeValueAsBytes(Map.of(
+                "scanTemplateBase64", new byte[]{1, 2, 3},
+                "personTemplatesBase64", List.of(new byte[]{4})));
+
+        MvcResult result = mockMvc.perform(post("/api/v1/biometric/verify")
+                        .contentType(BiometricController.APPLICATION_CBOR_VALUE)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.verified").value(true));
+        assertFalse(matchedOn.get(5, TimeUnit.SECONDS).isVirtual());
+    }
+
+    @Test
+    void cborVerifyRetainsScanAndReusesItByScanId() throws Exception {
+        PreparedScan retained = new PreparedScan("scan-1", null, null, 1.0);
+        when(matchingService.prepareRawScan(aryEq(new byte[]{1, 2, 3}), isNull(), eq(true))).thenReturn(retained);
+        when(matchingService.prepareRawScan(isNull(), eq("scan-1"), eq(false))).thenReturn(retained);
+        when(matchingService.verifyRaw(eq(retained), anyList())).thenReturn(new BiometricMatchingService.VerifyResult(true, 61.0, 40.0));
+
+        for (Map<String, Object> body : List.<Map<String, Object>>of(
+                Map.of("scanTemplateBase64", new byte[]{1, 2, 3}, "retainScan", true, "personTemplatesBase64", List.of(new byte[]{4})),
+                Map.of("scanId", "scan-1", "personTemplatesBase64", List.of(new byte[]{4})))) {
+            MvcResult result = mockMvc.perform(post("/api/v1/biometric/verify")
+                            .contentType(BiometricController.APPLICATION_CBOR_VALUE)
+                            .content(new CBORMapper().writeValueAsBytes(body)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.verified").value(true))
+                    .andExpect(jsonPath("$.scanId").value("scan-1"));
+        }
+        verify(matchingService, times(2)).verifyRaw(eq(retained), anyList());
+    }
+
+    @Test
+    void streamingIdentifyStopsWhenTheClientGoesAway() throws Exception {
+        CompletableFuture<MatchDeadline> started = new CompletableFuture<>();
+        when(streamingMatchingService.identify(any(), any())).thenAnswer(invocation -> {
+            MatchDeadline deadline = invocation.getArgument(1);
+            started.complete(deadline);
+            awaitExpired(deadline);
+            return new BiometricMatchingService.IdentifyResult(false, null, null, 0d, 0, 0, null, true, null);
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/v1/biometric/identify/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        disconnect(result);
+        assertTrue(started.get(5, TimeUnit.SECONDS).isCancelled());
+    }
+
+    @Test
+    void shardedIdentifyStopsWhenTheClientGoesAway() throws Exception {
+        CompletableFuture<MatchDeadline> started = new CompletableFuture<>();
+        when(shardCoordinator.isEnabled()).thenReturn(true);
+        when(shardCoordinator.identify(anyString(), anyList(), anyInt(), any())).thenAnswer(invocation -> {
+            MatchDeadline deadline = invocation.getArgument(3);
+            started.complete(deadline);
+            awaitExpired(deadline);
+            return new ShardCoordinator.ShardedIdentifyResult(
+                    new BiometricMatchingService.IdentifyResult(false, null, null, 0d, 0, 0, null, true, null), 1, 1);
+        });
+
+        String payload = """
+                {
+                  "scanTemplateBase64": "U0NBTg==",
+                  "candidates": [
+                    {"candidateId": "uuid-1", "templatesBase64": ["QQ=="]}
+                  ]
+                }
+                """;
+        MvcResult result = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        disconnect(result);
+        assertTrue(started.get(5, TimeUnit.SECONDS).isCancelled());
+    }
+
+    /**
+     * What the container does when the client closes the connection of an async request.
+     */
+    private static void disconnect(MvcResult result) throws IOException {
+        AsyncContext context = result.getRequest().getAsyncContext();
+        for (AsyncListener listener : ((MockAsyncContext) context).getListeners()) {
+            listener.onError(new AsyncEvent(context, new IOException("Connection reset by peer")));
+        }
+    }
+
+    private static void awaitExpired(MatchDeadline deadline) throws InterruptedException {
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!deadline.expired() && System.nanoTime() < giveUp) {
+            Thread.sleep(10);
+        }
+    }
+
     @Test
     void returnsBadRequestForInvalidPayload() throws Exception {
         String payload = """
@@ -121,8 +443,95 @@ class BiometricControllerTest {
                 .andExpect(jsonPath("$.status").value(400));
     }
 
+    @Test
+    void rejectsInvalidTimeBudgetHeader() throws Exception {
+        String payload = """
+                {
+                  "scanTemplateBase64": "U0NBTg==",
+                  "candidates": [
+                    {"candidateId": "uuid-1", "templatesBase64": ["QQ=="]}
+                  ]
+                }
+                """;
+
+        mockMvc.perform(post("/api/v1/biometric/identify")
+                        .header(RequestDeadlines.TIME_BUDGET_HEADER, "soon")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(RequestDeadlines.TIME_BUDGET_HEADER + " must be a positive number of milliseconds"));
+    }
+
+    @Test
+    void identicalConcurrentIdentifiesShareOneMatchingPass() throws Exception {
+        CountDownLatch matching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(matchingService.prepareScan(anyString(), isNull(), anyBoolean())).thenReturn(new PreparedScan(null, null, null, 1.0));
+        when(matchingService.identify(any(PreparedScan.class), anyList(), anyInt(), any())).thenAnswer(invocation -> {
+            matching.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new BiometricMatchingService.IdentifyResult(true, "uuid-1", 61.0, 61.0, 1);
+        });
+
+        String payload = """
+                {
+                  "scanTemplateBase64": "U0NBTg==",
+                  "candidates": [
+                    {"candidateId": "uuid-1", "templatesBase64": ["QQ=="]}
+                  ]
+                }
+                """;
+
+        MvcResult first = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .header(RequestIdFilter.REQUEST_ID_HEADER, "first")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        matching.await(5, TimeUnit.SECONDS);
+
+        // matching-max-in-flight is 1: without coalescing the retry would be rejected with 503
+        MvcResult retry = mockMvc.perform(post("/api/v1/biometric/identify")
+                        .header(RequestIdFilter.REQUEST_ID_HEADER, "retry")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        release.countDown();
+
+        mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andExpect(header().string(RequestIdFilter.REQUEST_ID_HEADER, "first"))
+                .andExpect(jsonPath("$.candidateId").value("uuid-1"));
+        mockMvc.perform(asyncDispatch(retry))
+                .andExpect(status().isOk())
+                .andExpect(header().string(RequestIdFilter.REQUEST_ID_HEADER, "retry"))
+                .andExpect(jsonPath("$.candidateId").value("uuid-1"))
+                .andExpect(jsonPath("$.score").value(61.0));
+        verify(matchingService, times(1)).identify(any(PreparedScan.class), anyList(), anyInt(), any());
+    }
+
+    /**
+     * Mocks are plain beans rather than {@code @MockBean}, which Spring AOT cannot process, so the same
+     * test also runs against the AOT-processed context ({@code mvn -Pfast-start verify}).
+     */
     @TestConfiguration
     static class TestConfig {
+        @Bean
+        BiometricMatchingService matchingService() {
+            return mock(BiometricMatchingService.class, MockReset.after());
+        }
+
+        @Bean
+        StreamingMatchingService streamingMatchingService() {
+            return mock(StreamingMatchingService.class, MockReset.after());
+        }
+
+        @Bean
+        ShardCoordinator shardCoordinator() {
+            return mock(ShardCoordinator.class, MockReset.after());
+        }
+
         @Bean
         BiometricProperties biometricProperties() {
             BiometricProperties props = new BiometricProperties();
@@ -130,5 +539,31 @@ class BiometricControllerTest {
             props.setMaxCandidates(2000);
             return props;
         }
+
+        @Bean(destroyMethod = "shutdown")
+        ExecutorService matchingRequestExecutor() {
+            return Executors.newSingleThreadExecutor();
+        }
+
+        @Bean
+        MatchingAdmission matchingAdmission(BiometricProperties biometricProperties, ExecutorService matchingRequestExecutor) {
+            return new MatchingAdmission(biometricProperties, matchingRequestExecutor);
+        }
+
+        @Bean
+        RequestCoalescer requestCoalescer(BiometricProperties biometricProperties, MatchingAdmission matchingAdmission,
+                                          MatchingMetrics matchingMetrics) {
+            return new RequestCoalescer(biometricProperties, matchingAdmission, matchingMetrics);
+        }
+
+        @Bean
+        RequestDeadlines requestDeadlines(BiometricProperties biometricProperties) {
+            return new RequestDeadlines(biometricProperties);
+        }
+
+        @Bean
+        MatchingMetrics matchingMetrics() {
+            return ServiceFixtures.metrics();
+        }
     }
 }
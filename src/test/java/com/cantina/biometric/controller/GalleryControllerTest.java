@@ -0,0 +1,197 @@
+package com.cantina.biometric.controller;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.config.RequestDeadlines;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.EnrolledCandidate;
+import com.cantina.biometric.service.GalleryService;
+import com.cantina.biometric.service.MatchingAdmission;
+import com.cantina.biometric.service.MatchingMetrics;
+import com.cantina.biometric.service.PreparedScan;
+import com.cantina.biometric.support.ServiceFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockReset;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = GalleryController.class)
+class GalleryControllerTest {
+
+    private static final Instant ENROLLED_AT = Instant.parse("2026-10-18T12:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private GalleryService galleryService;
+
+    @Autowired
+    private BiometricMatchingService matchingService;
+
+    @Test
+    void enrollReturnsTheEnrolledCandidate() throws Exception {
+        when(galleryService.enroll("uuid-1", "kitchen", List.of("QQ==", "Qg=="))).thenReturn(candidate("uuid-1", "kitchen", 2));
+
+        mockMvc.perform(put("/api/v1/biometric/gallery/uuid-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"gallery": "kitchen", "templatesBase64": ["QQ==", "Qg=="]}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.candidateId").value("uuid-1"))
+                .andExpect(jsonPath("$.gallery").value("kitchen"))
+                .andExpect(jsonPath("$.templatesCount").value(2))
+                .andExpect(jsonPath("$.enrolledAt").value("2026-10-18T12:00:00Z"));
+    }
+
+    @Test
+    void enrollRejectsACandidateWithoutTemplates() throws Exception {
+        mockMvc.perform(put("/api/v1/biometric/gallery/uuid-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"templatesBase64": []}
+                                """))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400));
+
+        verify(galleryService, never()).enroll(anyString(), any(), any());
+    }
+
+    @Test
+    void getAndDeleteAnswerNotFoundForUnknownCandidates() throws Exception {
+        when(galleryService.find("uuid-1")).thenReturn(Optional.of(candidate("uuid-1", GalleryService.DEFAULT_GALLERY, 1)));
+        when(galleryService.find("uuid-2")).thenReturn(Optional.empty());
+        when(galleryService.remove("uuid-1")).thenReturn(true);
+
+        mockMvc.perform(get("/api/v1/biometric/gallery/uuid-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gallery").value(GalleryService.DEFAULT_GALLERY));
+        mockMvc.perform(get("/api/v1/biometric/gallery/uuid-2"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("candidateId not enrolled: uuid-2"));
+        mockMvc.perform(delete("/api/v1/biometric/gallery/uuid-1"))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(delete("/api/v1/biometric/gallery/uuid-2"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void identifyMatchesTheScanAgainstTheSelectedCandidates() throws Exception {
+        List<EnrolledCandidate> selected = List.of(candidate("uuid-2", "kitchen", 1), candidate("uuid-1", "kitchen", 1));
+        when(galleryService.select("kitchen", List.of("uuid-2", "uuid-1"))).thenReturn(selected);
+        when(matchingService.prepareScan(eq("U0NBTg=="), isNull(), eq(false))).thenReturn(new PreparedScan(null, null, null, 0.9));
+        when(matchingService.identifyEnrolled(any(PreparedScan.class), eq(selected), eq(2), eq(true), any())).thenReturn(
+                new BiometricMatchingService.IdentifyResult(true, "uuid-1", 58.0, 58.0, 2, 0,
+                        List.of(new BiometricMatchingService.RankedCandidate("uuid-1", 58.0),
+                                new BiometricMatchingService.RankedCandidate("uuid-2", 12.5)),
+                        false, 0.9));
+
+        MvcResult pending = mockMvc.perform(post("/api/v1/biometric/gallery/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                  "scanTemplateBase64": "U0NBTg==",
+                                  "gallery": "kitchen",
+                                  "candidateIds": ["uuid-2", "uuid-1"],
+                                  "topK": 2,
+                                  "exhaustive": true
+                                }
+                                """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matched").value(true))
+                .andExpect(jsonPath("$.candidateId").value("uuid-1"))
+                .andExpect(jsonPath("$.candidatesEvaluated").value(2))
+                .andExpect(jsonPath("$.topCandidates[1].candidateId").value("uuid-2"))
+                .andExpect(jsonPath("$.scanQuality").value(0.9));
+    }
+
+    @Test
+    void identifyRejectsAnOutOfRangeTopK() throws Exception {
+        mockMvc.perform(post("/api/v1/biometric/gallery/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"scanTemplateBase64": "U0NBTg==", "topK": 101}
+                                """))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400));
+    }
+
+    private static EnrolledCandidate candidate(String candidateId, String gallery, int templatesCount) {
+        return new EnrolledCandidate(candidateId, gallery, Collections.nCopies(templatesCount, null), null, ENROLLED_AT);
+    }
+
+    /**
+     * Mocks are plain beans rather than {@code @MockBean}, as in {@link BiometricControllerTest}, so the
+     * test also runs against the AOT-processed context.
+     */
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        GalleryService galleryService() {
+            return mock(GalleryService.class, MockReset.after());
+        }
+
+        @Bean
+        BiometricMatchingService matchingService() {
+            return mock(BiometricMatchingService.class, MockReset.after());
+        }
+
+        @Bean
+        BiometricProperties biometricProperties() {
+            return new BiometricProperties();
+        }
+
+        @Bean(destroyMethod = "shutdown")
+        ExecutorService matchingRequestExecutor() {
+            return Executors.newSingleThreadExecutor();
+        }
+
+        @Bean
+        MatchingAdmission matchingAdmission(BiometricProperties biometricProperties, ExecutorService matchingRequestExecutor) {
+            return new MatchingAdmission(biometricProperties, matchingRequestExecutor);
+        }
+
+        @Bean
+        RequestDeadlines requestDeadlines(BiometricProperties biometricProperties) {
+            return new RequestDeadlines(biometricProperties);
+        }
+
+        @Bean
+        MatchingMetrics matchingMetrics() {
+            return ServiceFixtures.metrics();
+        }
+    }
+}
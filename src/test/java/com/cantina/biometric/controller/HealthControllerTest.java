@@ -0,0 +1,37 @@
+package com.cantina.biometric.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HealthControllerTest {
+
+    private final ApplicationAvailabilityBean availability = new ApplicationAvailabilityBean();
+    private final HealthController controller = new HealthController(availability);
+
+    @Test
+    void readinessIsRefusedWhileLivenessIsUpDuringWarmUp() {
+        availability.onApplicationEvent(new AvailabilityChangeEvent<>(this, LivenessState.CORRECT));
+
+        assertEquals(HttpStatus.OK, controller.live().getStatusCode());
+        assertEquals("UP", controller.health().get("status"));
+        var ready = controller.ready();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ready.getStatusCode());
+        assertEquals("REFUSING_TRAFFIC", ready.getBody().get("state"));
+    }
+
+    @Test
+    void readinessIsUpOnceAcceptingTraffic() {
+        availability.onApplicationEvent(new AvailabilityChangeEvent<>(this, LivenessState.CORRECT));
+        availability.onApplicationEvent(new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+
+        var ready = controller.ready();
+        assertEquals(HttpStatus.OK, ready.getStatusCode());
+        assertEquals("UP", ready.getBody().get("status"));
+    }
+}
@@ -2,30 +2,456 @@ package com.cantina.biometric.service;
 
 import com.cantina.biometric.config.BiometricProperties;
 import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.CborCandidateRequest;
 import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.exception.LowQualityScanException;
+import com.cantina.biometric.exception.NotFoundException;
+import com.cantina.biometric.support.ServiceFixtures;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.cantina.biometric.support.SyntheticTemplates.finger;
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static com.cantina.biometric.support.SyntheticTemplates.partialFingerBase64;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BiometricMatchingServiceTest {
 
+    private final BiometricProperties properties = new BiometricProperties();
+    private final TemplateDecoder templateDecoder = ServiceFixtures.templateDecoder(properties);
+    private final ForkJoinPool matchingPool = new ForkJoinPool(4);
+    private final BiometricMatchingService service = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool);
+
+    @AfterEach
+    void shutdownPool() {
+        matchingPool.shutdownNow();
+    }
+
     @Test
     void identifyRejectsInvalidBase64() {
-        BiometricProperties properties = new BiometricProperties();
-        BiometricMatchingService service = new BiometricMatchingService(properties);
-
         assertThrows(BadRequestException.class,
                 () -> service.identify("%%%", List.of(new CandidateRequest("id-1", List.of("AAA=")))));
     }
 
     @Test
     void verifyRejectsInvalidBase64() {
-        BiometricProperties properties = new BiometricProperties();
-        BiometricMatchingService service = new BiometricMatchingService(properties);
-
         assertThrows(BadRequestException.class,
                 () -> service.verify("AAA=", List.of("%%%")));
     }
+
+    @Test
+    void identifyFindsMatchingCandidate() {
+        var result = service.identify(fingerBase64(7, 1), List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1), fingerBase64(2))),
+                new CandidateRequest("id-7", List.of(fingerBase64(3), fingerBase64(7))),
+                new CandidateRequest("id-9", List.of(fingerBase64(9)))));
+
+        assertTrue(result.matched());
+        assertEquals("id-7", result.candidateId());
+        assertEquals(3, result.candidatesEvaluated());
+    }
+
+    @Test
+    void identifyEnrolledMatchesGalleryCandidates() {
+        GalleryService gallery = new GalleryService(properties, templateDecoder, TemplateStore.NONE);
+        gallery.enroll("id-1", null, List.of(fingerBase64(1)));
+        gallery.enroll("id-2", "school-b", List.of(fingerBase64(2)));
+        gallery.enroll("id-3", null, List.of(fingerBase64(3)));
+
+        var matched = service.identifyEnrolled(fingerBase64(3, 1), gallery.select(null, null));
+        assertTrue(matched.matched());
+        assertEquals("id-3", matched.candidateId());
+        assertEquals(3, matched.candidatesEvaluated());
+
+        var partitioned = service.identifyEnrolled(fingerBase64(3, 1), gallery.select("school-b", null));
+        assertFalse(partitioned.matched());
+        assertEquals(1, partitioned.candidatesEvaluated());
+
+        var byIds = service.identifyEnrolled(fingerBase64(3, 1), gallery.select(null, List.of("id-3", "unknown", "id-1", "id-3")));
+        assertEquals("id-3", byIds.candidateId());
+        assertEquals(2, byIds.candidatesEvaluated());
+        assertEquals(List.of("id-3", "id-1"),
+                gallery.select(null, List.of("id-3", "id-1", "id-3")).stream().map(EnrolledCandidate::candidateId).toList());
+
+        assertTrue(gallery.remove("id-3"));
+        assertFalse(service.identifyEnrolled(fingerBase64(3, 1), gallery.select(null, null)).matched());
+    }
+
+    @Test
+    void prefilterShortlistsGalleryAndFallsBackToExhaustive() {
+        properties.setPrefilterFraction(0.05);
+        properties.setPrefilterMinCandidates(4);
+        GalleryService gallery = new GalleryService(properties, templateDecoder, TemplateStore.NONE);
+        for (int i = 0; i < 200; i++) {
+            gallery.enroll("id-" + i, null, List.of(fingerBase64(1000 + i)));
+        }
+
+        var genuine = service.identifyEnrolled(fingerBase64(1137, 1), gallery.select(null, null), 0, false);
+        assertEquals("id-137", genuine.candidateId());
+        assertEquals(10, genuine.candidatesEvaluated());
+
+        var exhaustive = service.identifyEnrolled(fingerBase64(1137, 1), gallery.select(null, null), 0, true);
+        assertEquals("id-137", exhaustive.candidateId());
+        assertEquals(200, exhaustive.candidatesEvaluated());
+
+        var unknown = service.identifyEnrolled(fingerBase64(5, 1), gallery.select(null, null), 3, false);
+        assertFalse(unknown.matched());
+        assertEquals(200, unknown.candidatesEvaluated());
+        var unknownExhaustive = service.identifyEnrolled(fingerBase64(5, 1), gallery.select(null, null), 3, true);
+        assertEquals(unknownExhaustive.maxScore(), unknown.maxScore());
+        assertEquals(unknownExhaustive.topCandidates(), unknown.topCandidates());
+        assertEquals(0, unknown.duplicatesSkipped());
+        assertEquals(unknownExhaustive.duplicatesSkipped(), unknown.duplicatesSkipped());
+
+        properties.setPrefilterFallbackExhaustive(false);
+        assertEquals(10, service.identifyEnrolled(fingerBase64(5, 1), gallery.select(null, null)).candidatesEvaluated());
+    }
+
+    @Test
+    void parallelIdentifyKeepsFirstStrictlyGreaterTieBreak() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            long seed = i == 11 || i == 29 ? 7 : 100 + i;
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(seed))));
+        }
+
+        var sequential = service.identify(fingerBase64(7, 1), candidates);
+        properties.setParallelMinCandidates(1);
+        var parallel = service.identify(fingerBase64(7, 1), candidates);
+
+        assertEquals("id-11", sequential.candidateId());
+        assertEquals(sequential, parallel);
+        assertEquals(40, parallel.candidatesEvaluated());
+    }
+
+    @Test
+    void duplicateTemplatesAreMatchedOnceAndScoredForEveryOwner() {
+        List<CandidateRequest> candidates = List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1), fingerBase64(1))),
+                new CandidateRequest("id-7", List.of(fingerBase64(3), fingerBase64(7))),
+                new CandidateRequest("id-7-reenrolled", List.of(fingerBase64(7))),
+                new CandidateRequest("id-9", List.of(fingerBase64(9), fingerBase64(3))));
+
+        var result = service.identify(fingerBase64(7, 1), candidates, 4);
+
+        assertEquals("id-7", result.candidateId());
+        assertEquals(4, result.candidatesEvaluated());
+        assertEquals(3, result.duplicatesSkipped());
+        assertEquals(result.topCandidates().get(0).score(), result.topCandidates().get(1).score());
+        assertEquals("id-7-reenrolled", result.topCandidates().get(1).candidateId());
+
+        properties.setTemplateCacheEnabled(false);
+        BiometricMatchingService uncached = ServiceFixtures.matchingService(properties, ServiceFixtures.templateDecoder(properties), matchingPool);
+        var uncachedResult = uncached.identify(fingerBase64(7, 1), candidates, 4);
+        assertEquals(3, uncachedResult.duplicatesSkipped());
+        assertEquals(uncachedResult.topCandidates(), result.topCandidates());
+    }
+
+    @Test
+    void topKRanksBestCandidatesAndMergesAcrossParallelTasks() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            long seed = i == 5 || i == 31 ? 7 : i == 18 ? 8 : 100 + i;
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(seed))));
+        }
+
+        var sequential = service.identify(fingerBase64(7, 1), candidates, 3);
+        properties.setParallelMinCandidates(1);
+        var parallel = service.identify(fingerBase64(7, 1), candidates, 3);
+
+        assertEquals(sequential, parallel);
+        assertEquals("id-5", sequential.candidateId());
+        var ranked = sequential.topCandidates();
+        assertTrue(ranked.size() <= 3);
+        assertEquals("id-5", ranked.get(0).candidateId());
+        assertEquals("id-31", ranked.get(1).candidateId());
+        assertEquals(sequential.maxScore(), ranked.get(0).score());
+        for (int i = 1; i < ranked.size(); i++) {
+            assertTrue(ranked.get(i - 1).score() >= ranked.get(i).score());
+        }
+        assertEquals(null, service.identify(fingerBase64(7, 1), candidates).topCandidates());
+    }
+
+    @Test
+    void batchMatchesEachScanAgainstSharedCandidatesInOrder() {
+        List<CandidateRequest> candidates = List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1))),
+                new CandidateRequest("id-2", List.of(fingerBase64(2), fingerBase64(12))),
+                new CandidateRequest("id-3", List.of(fingerBase64(3))));
+        List<String> scans = List.of(fingerBase64(3, 1), fingerBase64(50, 1), fingerBase64(1, 2), fingerBase64(12, 1));
+
+        var batch = service.identifyBatch(scans, candidates);
+
+        assertEquals(4, batch.size());
+        for (int i = 0; i < scans.size(); i++) {
+            assertEquals(service.identify(scans.get(i), candidates), batch.get(i));
+        }
+        assertEquals("id-3", batch.get(0).candidateId());
+        assertFalse(batch.get(1).matched());
+        assertEquals("id-2", batch.get(3).candidateId());
+
+        var verified = service.verifyBatch(List.of(fingerBase64(2, 1), fingerBase64(3, 1)), List.of(fingerBase64(2)));
+        assertTrue(verified.get(0).verified());
+        assertFalse(verified.get(1).verified());
+
+        var error = assertThrows(BadRequestException.class,
+                () -> service.identifyBatch(List.of(fingerBase64(1), "%%%"), candidates));
+        assertTrue(error.getMessage().contains("scanTemplatesBase64[1]"));
+    }
+
+    @Test
+    void retainedScanIsReusedByScanIdUntilItIsGone() {
+        PreparedScan retained = service.prepareScan(fingerBase64(7, 1), null, true);
+        assertTrue(service.verify(retained, List.of(fingerBase64(7))).verified());
+
+        PreparedScan reused = service.prepareScan(null, retained.scanId(), false);
+        assertSame(retained.matcher(), reused.matcher());
+        assertSame(reused, service.prepareScan(fingerBase64(1), retained.scanId(), false));
+        var result = service.identify(reused, List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1))),
+                new CandidateRequest("id-7", List.of(fingerBase64(7)))), 0, MatchDeadline.NONE);
+        assertEquals("id-7", result.candidateId());
+
+        assertNull(service.prepareScan(fingerBase64(7, 1), null, false).scanId());
+        assertThrows(NotFoundException.class, () -> service.prepareScan(null, "unknown", false));
+        assertThrows(BadRequestException.class, () -> service.prepareScan(" ", null, false));
+
+        PreparedScan resent = service.prepareScan(fingerBase64(7, 1), "unknown", true);
+        assertNotEquals(retained.scanId(), resent.scanId());
+        assertSame(resent, service.prepareScan(null, resent.scanId(), false));
+    }
+
+    /**
+     * Templates that arrived as raw bytes (CBOR) share the scan handles and the score memo with Base64
+     * ones, and match the same.
+     */
+    @Test
+    void rawTemplatesShareScanHandlesAndScoreMemoWithBase64() {
+        properties.setScoreMemoEnabled(true);
+        ScoreMemo memo = new ScoreMemo(properties);
+        BiometricMatchingService memoized = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool, memo);
+
+        PreparedScan retained = memoized.prepareRawScan(finger(7, 1), null, true);
+        var verified = memoized.verifyRaw(retained, List.of(finger(7)));
+        assertTrue(verified.verified());
+        assertEquals(1, memo.misses());
+
+        assertSame(retained, memoized.prepareRawScan(null, retained.scanId(), false));
+        assertSame(retained, memoized.prepareScan(null, retained.scanId(), false));
+        assertEquals(verified, memoized.verify(retained, List.of(fingerBase64(7))));
+        assertEquals(1, memo.hits());
+
+        var identified = memoized.identifyRaw(retained, List.of(
+                new CborCandidateRequest("id-1", List.of(finger(1))),
+                new CborCandidateRequest("id-7", List.of(finger(7), finger(7)))), 0, MatchDeadline.NONE);
+        assertEquals(memoized.identify(retained, List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1))),
+                new CandidateRequest("id-7", List.of(fingerBase64(7), fingerBase64(7)))), 0, MatchDeadline.NONE), identified);
+        assertEquals("id-7", identified.candidateId());
+        assertEquals(1, identified.duplicatesSkipped());
+
+        assertThrows(NotFoundException.class, () -> memoized.prepareRawScan(null, "unknown", false));
+        assertThrows(BadRequestException.class, () -> memoized.prepareRawScan(new byte[0], null, false));
+        var error = assertThrows(BadRequestException.class, () -> memoized.identifyRaw(retained,
+                List.of(new CborCandidateRequest("id-9", List.of(new byte[]{1, 2, 3}))), 0, MatchDeadline.NONE));
+        assertEquals("Invalid fingerprint template in field templatesBase64 for candidateId=id-9", error.getMessage());
+    }
+
+    @Test
+    void lowQualityScansAreRejectedBeforeMatching() {
+        List<CandidateRequest> candidates = List.of(new CandidateRequest("id-7", List.of(fingerBase64(7))));
+        properties.setScanQualityMinimum(0.2);
+        BiometricMatchingService strict = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool);
+
+        var accepted = strict.identify(fingerBase64(7, 1), candidates);
+        assertEquals(1.0, accepted.scanQuality());
+        assertEquals(1.0, strict.verify(fingerBase64(7, 1), List.of(fingerBase64(7))).scanQuality());
+
+        var nearEmpty = assertThrows(LowQualityScanException.class,
+                () -> strict.identify(partialFingerBase64(3, 3, 200), candidates));
+        assertTrue(nearEmpty.getScanQuality() < properties.getScanQualityMinimum());
+        var crowded = assertThrows(LowQualityScanException.class,
+                () -> strict.verify(partialFingerBase64(3, 40, 30), List.of(fingerBase64(7))));
+        assertTrue(crowded.getScanQuality() < properties.getScanQualityMinimum());
+        var batch = assertThrows(LowQualityScanException.class,
+                () -> strict.identifyBatch(List.of(fingerBase64(7, 1), partialFingerBase64(3, 3, 200)), candidates));
+        assertTrue(batch.getMessage().startsWith("scanTemplatesBase64[1]"));
+
+        properties.setScanQualityMinimum(0.0);
+        BiometricMatchingService lenient = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool);
+        var scored = lenient.identify(partialFingerBase64(3, 3, 200), candidates);
+        assertFalse(scored.matched());
+        assertEquals(nearEmpty.getScanQuality(), scored.scanQuality());
+    }
+
+    @Test
+    void expiredBudgetReturnsBestSoFarAsPartial() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(i == 0 ? 7 : 100 + i))));
+        }
+        PreparedScan scan = service.prepareScan(fingerBase64(7, 1), null, false);
+
+        var budgeted = service.identify(scan, candidates, 0, MatchDeadline.after(1));
+        assertTrue(budgeted.partial());
+        assertTrue(budgeted.candidatesEvaluated() < candidates.size());
+
+        MatchDeadline abandoned = MatchDeadline.after(0);
+        abandoned.cancel();
+        var cancelled = service.identify(scan, candidates, 0, abandoned);
+        assertTrue(cancelled.partial());
+        assertEquals(0, cancelled.candidatesEvaluated());
+        assertFalse(cancelled.matched());
+
+        var complete = service.identify(scan, candidates, 0, MatchDeadline.after(60_000));
+        assertFalse(complete.partial());
+        assertEquals("id-0", complete.candidateId());
+    }
+
+    @Test
+    void earlyExitStopsOnceCertainMatchIsFound() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(i == 3 ? 7 : 100 + i))));
+        }
+        properties.setEarlyExitEnabled(true);
+        properties.setCertainMatchScore(100.0);
+
+        var result = service.identify(fingerBase64(7), candidates);
+
+        assertEquals("id-3", result.candidateId());
+        assertEquals(4, result.candidatesEvaluated());
+    }
+
+    @Test
+    void recentlyIdentifiedCandidatesAreMatchedFirstWithEarlyExit() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(i == 35 ? 7 : 100 + i))));
+        }
+        properties.setEarlyExitEnabled(true);
+        properties.setCertainMatchScore(100.0);
+
+        assertEquals(36, service.identify(fingerBase64(7), candidates).candidatesEvaluated());
+        var repeated = service.identify(fingerBase64(7), candidates);
+
+        assertEquals("id-35", repeated.candidateId());
+        assertEquals(1, repeated.candidatesEvaluated());
+    }
+
+    @Test
+    void hotFirstOrderKeepsRequestOrderTieBreak() {
+        properties.setEarlyExitEnabled(true);
+        properties.setCertainMatchScore(Double.MAX_VALUE);
+        properties.setParallelMinCandidates(8);
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(i == 17 || i == 29 ? 7 : 100 + i))));
+        }
+        service.identify(fingerBase64(7, 1), List.of(candidates.get(29), candidates.get(3)));
+
+        var result = service.identify(fingerBase64(7, 1), candidates, 2);
+
+        assertEquals("id-17", result.candidateId());
+        assertEquals(40, result.candidatesEvaluated());
+        assertEquals(List.of("id-17", "id-29"), result.topCandidates().stream().map(BiometricMatchingService.RankedCandidate::candidateId).toList());
+    }
+
+    @Test
+    void templateCacheReusesDeserializedTemplates() {
+        TemplateCache cache = new TemplateCache(properties);
+        TemplateDecoder decoder = new TemplateDecoder(cache, ServiceFixtures.metrics());
+
+        var first = decoder.decode(fingerBase64(5), "templatesBase64");
+        var second = decoder.decode(fingerBase64(5), "templatesBase64");
+        decoder.decode(fingerBase64(6), "templatesBase64");
+
+        assertSame(first, second);
+        assertEquals(1, cache.snapshot().stats().hitCount());
+        assertEquals(2, cache.snapshot().stats().missCount());
+        assertEquals(2, cache.snapshot().entries());
+    }
+
+    @Test
+    void scoreMemoAnswersRepeatedPairsUntilTheyExpire() {
+        properties.setScoreMemoEnabled(true);
+        properties.setScoreMemoTtlSeconds(60);
+        AtomicLong clock = new AtomicLong(1);
+        ScoreMemo memo = new ScoreMemo(properties, clock::get);
+        BiometricMatchingService memoized = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool, memo);
+        List<String> personTemplates = List.of(fingerBase64(7), fingerBase64(7, 2));
+
+        var first = memoized.verify(fingerBase64(7, 1), personTemplates);
+        assertEquals(0, memo.hits());
+        assertEquals(2, memo.misses());
+
+        var repeated = memoized.verify(fingerBase64(7, 1), personTemplates);
+        assertEquals(2, memo.hits());
+        assertEquals(first, repeated);
+        assertEquals(service.verify(fingerBase64(7, 1), personTemplates), repeated);
+
+        var identified = memoized.identify(fingerBase64(7, 1), List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1))),
+                new CandidateRequest("id-7", List.of(fingerBase64(7)))));
+        assertEquals("id-7", identified.candidateId());
+        assertEquals(first.score(), identified.maxScore());
+        assertEquals(3, memo.hits());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        memoized.verify(fingerBase64(7, 1), personTemplates);
+        assertEquals(3, memo.hits());
+        assertEquals(5, memo.misses());
+    }
+
+    @Test
+    void scoreMemoReplacesThePairExpiringFirstInAFullSet() {
+        properties.setScoreMemoEnabled(true);
+        properties.setScoreMemoEntries(2);
+        AtomicLong clock = new AtomicLong(1);
+        ScoreMemo memo = new ScoreMemo(properties, clock::get);
+        ScoreMemo.Key scan = memo.key(new byte[] {1});
+
+        assertEquals(1.0, memo.score(scan, memo.key(new byte[] {1}), () -> 1.0));
+        clock.incrementAndGet();
+        assertEquals(2.0, memo.score(scan, memo.key(new byte[] {2}), () -> 2.0));
+        clock.incrementAndGet();
+        assertEquals(3.0, memo.score(scan, memo.key(new byte[] {3}), () -> 3.0));
+
+        assertEquals(2.0, memo.score(scan, memo.key(new byte[] {2}), () -> -1.0));
+        assertEquals(3.0, memo.score(scan, memo.key(new byte[] {3}), () -> -1.0));
+        assertEquals(-1.0, memo.score(scan, memo.key(new byte[] {1}), () -> -1.0));
+        assertEquals(2, memo.hits());
+
+        properties.setScoreMemoEnabled(false);
+        ScoreMemo disabled = new ScoreMemo(properties);
+        assertEquals(4.0, disabled.score(scan, scan, () -> 4.0));
+        assertEquals(5.0, disabled.score(scan, scan, () -> 5.0));
+        assertEquals(0, disabled.hits() + disabled.misses());
+    }
+
+    @Test
+    void scoreMemoKeysAreKeyedPerProcessAndCoverEveryByte() {
+        properties.setScoreMemoEnabled(true);
+        ScoreMemo memo = new ScoreMemo(properties);
+        byte[] template = Base64.getDecoder().decode(fingerBase64(7));
+        byte[] flipped = template.clone();
+        flipped[flipped.length - 1] ^= 1;
+
+        assertEquals(memo.key(template), memo.key(template.clone()));
+        assertNotEquals(memo.key(template), memo.key(flipped));
+        assertNotEquals(memo.key(template), new ScoreMemo(properties).key(template));
+    }
 }
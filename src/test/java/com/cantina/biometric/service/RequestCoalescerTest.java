@@ -0,0 +1,114 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.support.ServiceFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final BiometricProperties properties = new BiometricProperties();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final RequestCoalescer coalescer = new RequestCoalescer(properties,
+            new MatchingAdmission(properties, executor), ServiceFixtures.metrics());
+    private final RequestCoalescer.VerifyKey key = coalescer.verifyKey("U0NBTg==", List.of("QQ=="));
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger passes = new AtomicInteger();
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void cancelledLeaderDoesNotCutShortTheRetryWaitingOnIt() throws Exception {
+        MatchDeadline leader = MatchDeadline.after(0);
+        MatchDeadline retry = MatchDeadline.after(0);
+
+        CompletableFuture<String> first = submit(leader, this::blockingPass);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = submit(retry, this::blockingPass);
+        leader.cancel();
+        release.countDown();
+
+        assertEquals("full", second.get(5, TimeUnit.SECONDS));
+        assertEquals("full", first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, passes.get());
+    }
+
+    @Test
+    void sharedPassIsCancelledOnceEveryRequestIsAbandoned() throws Exception {
+        MatchDeadline leader = MatchDeadline.after(0);
+        MatchDeadline retry = MatchDeadline.after(0);
+
+        CompletableFuture<String> first = submit(leader, this::blockingPass);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = submit(retry, this::blockingPass);
+        leader.cancel();
+        retry.cancel();
+        release.countDown();
+
+        assertEquals("partial", first.get(5, TimeUnit.SECONDS));
+        assertEquals("partial", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, passes.get());
+    }
+
+    @Test
+    void duplicateWithALongerBudgetRunsAlone() throws Exception {
+        CompletableFuture<String> first = submit(MatchDeadline.after(60_000), this::blockingPass);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = submit(MatchDeadline.after(0), this::blockingPass);
+        release.countDown();
+
+        assertEquals("full", first.get(5, TimeUnit.SECONDS));
+        assertEquals("full", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, passes.get());
+    }
+
+    @Test
+    void duplicateRunsAgainWhenTheSharedResultIsPartial() throws Exception {
+        Function<MatchDeadline, String> partialFirst = deadline -> {
+            String result = blockingPass(deadline);
+            return passes.get() == 1 ? "partial" : result;
+        };
+
+        CompletableFuture<String> first = submit(MatchDeadline.after(0), partialFirst);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = submit(MatchDeadline.after(0), partialFirst);
+        release.countDown();
+
+        assertEquals("partial", first.get(5, TimeUnit.SECONDS));
+        assertEquals("full", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, passes.get());
+    }
+
+    private CompletableFuture<String> submit(MatchDeadline deadline, Function<MatchDeadline, String> work) {
+        return coalescer.submit("verify", key, deadline, work, "partial"::equals, Function.identity());
+    }
+
+    private String blockingPass(MatchDeadline deadline) {
+        passes.incrementAndGet();
+        started.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return deadline.expired() ? "partial" : "full";
+    }
+}
@@ -0,0 +1,149 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.IdentifyRequest;
+import com.cantina.biometric.dto.IdentifyResponse;
+import com.cantina.biometric.dto.RankedCandidateResponse;
+import com.cantina.biometric.exception.ServiceUnavailableException;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardCoordinatorTest {
+
+    private final BiometricProperties properties = new BiometricProperties();
+    private final TemplateDecoder templateDecoder = ServiceFixtures.templateDecoder(properties);
+    private final ForkJoinPool matchingPool = new ForkJoinPool(1);
+    private final BiometricMatchingService service = ServiceFixtures.matchingService(properties, templateDecoder, matchingPool);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService shardCallExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<HttpServer> workers = new ArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void stopWorkers() {
+        workers.forEach(worker -> worker.stop(0));
+        shardCallExecutor.close();
+        matchingPool.shutdownNow();
+    }
+
+    @Test
+    void shardedIdentifyMergesLikeASingleInstance() throws IOException {
+        properties.setShardUrls(List.of(startWorker(0), startWorker(0), startWorker(0)));
+        List<CandidateRequest> candidates = candidates();
+
+        var sharded = coordinator().identify(fingerBase64(7, 1), candidates, 5, MatchDeadline.NONE);
+
+        // Duplicate templates are only skipped within a shard, so that count depends on the shard placement.
+        var single = service.identify(fingerBase64(7, 1), candidates, 5);
+        assertEquals(new BiometricMatchingService.IdentifyResult(single.matched(), single.candidateId(), single.score(),
+                single.maxScore(), single.candidatesEvaluated(), sharded.result().duplicatesSkipped(), single.topCandidates(),
+                single.partial(), single.scanQuality()), sharded.result());
+        assertEquals("id-17", sharded.result().candidateId());
+        assertEquals(3, sharded.shardsCalled());
+        assertFalse(sharded.partial());
+    }
+
+    @Test
+    void slowShardIsLeftOutAtTheDeadline() throws IOException {
+        properties.setShardUrls(List.of(startWorker(0), startWorker(0), startWorker(2000)));
+        properties.setShardDeadlineMs(500);
+
+        var sharded = coordinator().identify(fingerBase64(7, 1), candidates(), 0, MatchDeadline.NONE);
+
+        assertTrue(sharded.partial());
+        assertEquals(1, sharded.shardsFailed());
+        assertTrue(sharded.result().candidatesEvaluated() < 40);
+
+        // Waits for the interrupted call to the slow shard, which must not count as an error as well.
+        shardCallExecutor.close();
+        assertEquals(2, shardCalls("ok"));
+        assertEquals(1, shardCalls("timeout"));
+        assertEquals(0, shardCalls("error"));
+    }
+
+    @Test
+    void noAnsweringShardIsServiceUnavailable() throws IOException {
+        HttpServer stopped = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        String url = "http://localhost:" + stopped.getAddress().getPort();
+        stopped.stop(0);
+        properties.setShardUrls(List.of(url));
+        properties.setShardDeadlineMs(500);
+
+        assertThrows(ServiceUnavailableException.class, () -> coordinator().identify(fingerBase64(7, 1), candidates(), 0, MatchDeadline.NONE));
+    }
+
+    private ShardCoordinator coordinator() {
+        return new ShardCoordinator(properties, RestClient.builder(), shardCallExecutor, new MatchingMetrics(registry));
+    }
+
+    private long shardCalls(String outcome) {
+        Timer timer = registry.find("biometric.shard.call.duration").tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    /**
+     * Candidates 17 and 29 both hold the enrolled finger, so the tie has to go to 17 wherever they land.
+     */
+    private static List<CandidateRequest> candidates() {
+        List<CandidateRequest> candidates = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            candidates.add(new CandidateRequest("id-" + i, List.of(fingerBase64(i == 17 || i == 29 ? 7 : 100 + i))));
+        }
+        return candidates;
+    }
+
+    /**
+     * A worker instance on localhost serving the identify endpoint from a local matching service.
+     */
+    private String startWorker(long delayMillis) throws IOException {
+        HttpServer worker = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        worker.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        worker.createContext("/api/v1/biometric/identify", exchange -> {
+            IdentifyRequest request = objectMapper.readValue(exchange.getRequestBody(), IdentifyRequest.class);
+            var result = service.identify(service.prepareScan(request.scanTemplateBase64(), null, false), request.candidates(),
+                    request.topK() == null ? 0 : request.topK(), MatchDeadline.after(request.timeBudgetMs() == null ? 0 : request.timeBudgetMs()));
+            byte[] body = objectMapper.writeValueAsBytes(new IdentifyResponse(result.matched(), result.candidateId(),
+                    result.score(), result.maxScore(), result.candidatesEvaluated(), result.duplicatesSkipped(), 0,
+                    result.topCandidates() == null ? null : result.topCandidates().stream()
+                            .map(candidate -> new RankedCandidateResponse(candidate.candidateId(), candidate.score()))
+                            .toList(),
+                    null, result.partial(), result.scanQuality()));
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        worker.start();
+        workers.add(worker);
+        return "http://localhost:" + worker.getAddress().getPort();
+    }
+}
@@ -0,0 +1,34 @@
+package com.cantina.biometric.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SipHashTest {
+
+    /**
+     * Reference SipHash-2-4-128 vectors: key {@code 00..0f}, message {@code 00..(n-1)}.
+     */
+    @Test
+    void matchesReferenceVectors() {
+        SipHash sipHash = new SipHash(0x0706050403020100L, 0x0F0E0D0C0B0A0908L);
+
+        assertEquals("a3817f04ba25a8e66df67214c7550293", hash(sipHash, 0));
+        assertEquals("da87c1d86b99af44347659119b22fc45", hash(sipHash, 1));
+        assertEquals("3b62a9ba6258f5610f83e264f31497b4", hash(sipHash, 8));
+        assertEquals("5150d1772f50834a503e069a973fbd7c", hash(sipHash, 63));
+    }
+
+    private static String hash(SipHash sipHash, int length) {
+        byte[] data = new byte[length + 3];
+        for (int i = 0; i < length; i++) {
+            data[i + 3] = (byte) i;
+        }
+        long[] out = new long[2];
+        sipHash.hash128(data, 3, length, out);
+        // Output bytes are little-endian within each word.
+        return HexFormat.of().toHexDigits(Long.reverseBytes(out[0])) + HexFormat.of().toHexDigits(Long.reverseBytes(out[1]));
+    }
+}
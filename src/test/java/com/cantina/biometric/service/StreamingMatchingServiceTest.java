@@ -0,0 +1,113 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.dto.CandidateRequest;
+import com.cantina.biometric.dto.IdentifyRequest;
+import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.exception.LowQualityScanException;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.machinezoo.sourceafis.FingerprintMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.cantina.biometric.support.SyntheticTemplates.finger;
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static com.cantina.biometric.support.SyntheticTemplates.partialFinger;
+import static com.cantina.biometric.support.SyntheticTemplates.partialFingerBase64;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingMatchingServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BiometricProperties properties = new BiometricProperties();
+    private final TemplateDecoder templateDecoder = ServiceFixtures.templateDecoder(properties);
+    private final StreamingMatchingService service = ServiceFixtures.streamingService(properties, templateDecoder);
+
+    @Test
+    void streamingIdentifyMatchesBoundIdentify() throws Exception {
+        List<CandidateRequest> candidates = List.of(
+                new CandidateRequest("id-1", List.of(fingerBase64(1))),
+                new CandidateRequest("id-4", List.of(fingerBase64(2), fingerBase64(4))),
+                new CandidateRequest("id-5", List.of(fingerBase64(4))));
+        String body = objectMapper.writeValueAsString(new IdentifyRequest(fingerBase64(4, 1), null, null, candidates, null, null));
+        BiometricMatchingService boundService = ServiceFixtures.matchingService(properties, templateDecoder, ForkJoinPool.commonPool());
+
+        var streamed = service.identify(objectMapper.getFactory().createParser(body));
+
+        assertEquals(boundService.identify(fingerBase64(4, 1), candidates), streamed);
+        assertEquals("id-4", streamed.candidateId());
+    }
+
+    @Test
+    void streamingIdentifyRejectsCandidatesBeforeScan() {
+        String body = """
+                {"candidates": [{"candidateId": "id-1", "templatesBase64": ["QQ=="]}], "scanTemplateBase64": "U0NBTg=="}
+                """;
+
+        var ex = assertThrows(BadRequestException.class, () -> service.identify(objectMapper.getFactory().createParser(body)));
+        assertEquals("scanTemplateBase64 must precede candidates in streaming identify requests", ex.getMessage());
+    }
+
+    @Test
+    void streamingIdentifyRejectsLowQualityScanBeforeReadingCandidates() {
+        String body = "{\"scanTemplateBase64\": \"" + partialFingerBase64(3, 3, 200) + "\", \"candidates\": [{\"templatesBase64\": [\" \"]}]}";
+
+        properties.setScanQualityMinimum(0.2);
+        StreamingMatchingService strict = ServiceFixtures.streamingService(properties, templateDecoder);
+
+        assertThrows(LowQualityScanException.class, () -> strict.identify(objectMapper.getFactory().createParser(body)));
+    }
+
+    @Test
+    void streamingIdentifyValidatesCandidates() {
+        String body = "{\"scanTemplateBase64\": \"" + fingerBase64(1) + "\", \"candidates\": [{\"templatesBase64\": [\" \"]}]}";
+
+        var ex = assertThrows(BadRequestException.class, () -> service.identify(objectMapper.getFactory().createParser(body)));
+        assertEquals("candidates[0].templatesBase64[0]: template in templatesBase64 cannot be blank", ex.getMessage());
+    }
+
+    @Test
+    void cborRequestsCarryRawTemplateBytes() throws Exception {
+        CBORMapper cborMapper = new CBORMapper();
+        Map<String, Object> identify = new LinkedHashMap<>();
+        identify.put("scanTemplateBase64", finger(8, 1));
+        identify.put("candidates", List.of(
+                Map.of("candidateId", "id-1", "templatesBase64", List.of(finger(1))),
+                Map.of("candidateId", "id-8", "templatesBase64", List.of(finger(8)))));
+        byte[] identifyBody = cborMapper.writeValueAsBytes(identify);
+
+        var identified = service.identify(cborMapper.getFactory().createParser(identifyBody));
+
+        assertEquals("id-8", identified.candidateId());
+    }
+
+    /**
+     * The streaming dedup table keeps a fixed-size digest per distinct template, never the bytes, so
+     * what it retains does not grow with the size of the templates in the body.
+     */
+    @Test
+    void streamingDedupRetainsDigestsNotTemplateBytes() {
+        TemplateScores scores = TemplateScores.keyedByDigest(new FingerprintMatcher(
+                templateDecoder.fromBytes(finger(4, 1), "scan")), new ScoreMemo(properties));
+        TemplateDecoder.HashedTemplate small = templateDecoder.fromBytesHashed(partialFinger(4, 12, 200), "small");
+        TemplateDecoder.HashedTemplate large = templateDecoder.fromBytesHashed(finger(4), "large");
+        TemplateDecoder.HashedTemplate largeAgain = templateDecoder.fromBytesHashed(finger(4), "large");
+
+        scores.match(small);
+        scores.match(large);
+        scores.match(largeAgain);
+
+        assertTrue(large.bytes().length > small.bytes().length);
+        assertEquals(1, scores.duplicatesSkipped());
+        assertEquals(2, scores.keys().size());
+        assertTrue(scores.keys().stream().allMatch(ScoreMemo.Key.class::isInstance), scores.keys().toString());
+    }
+}
@@ -0,0 +1,52 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TemplateDecoderTest {
+
+    @Test
+    void pooledDecodeAcceptsWhatTheJdkDecoderAccepts() {
+        BiometricProperties properties = new BiometricProperties();
+        properties.setTemplateCacheEnabled(false);
+        TemplateDecoder decoder = new TemplateDecoder(new TemplateCache(properties), ServiceFixtures.metrics());
+
+        // Longest first, so the shorter templates are decoded over leftovers in the reused buffers.
+        for (long seed : new long[]{3, 1, 2}) {
+            String padded = fingerBase64(seed);
+            byte[] expected = new FingerprintTemplate(Base64.getDecoder().decode(padded)).toByteArray();
+            assertArrayEquals(expected, decoder.decode(padded, "templatesBase64").toByteArray());
+            assertArrayEquals(expected, decoder.decode(padded.replace("=", ""), "templatesBase64").toByteArray());
+            assertArrayEquals(expected, decoder.decodeHashed(padded.toCharArray(), 0, padded.length(), "templatesBase64").template().toByteArray());
+        }
+        for (String invalid : List.of("A", "AA=A", "AAAA=", "AAA==", " AAAA", "AA\nAA", "AAÀA", "AAŁA")) {
+            BadRequestException rejected = assertThrows(BadRequestException.class,
+                    () -> decoder.decodeCandidateTemplate(invalid, "id-1"));
+            assertEquals("Invalid base64 in field templatesBase64 for candidateId=id-1", rejected.getMessage());
+        }
+    }
+
+    /**
+     * Streamed templates used to be decoded by Jackson, which tolerates line breaks like MIME Base64.
+     * They now go through the same strict decoder as bound ones.
+     */
+    @Test
+    void streamedTextIsDecodedAsStrictlyAsBoundText() {
+        TemplateDecoder decoder = new TemplateDecoder(new TemplateCache(new BiometricProperties()), ServiceFixtures.metrics());
+        String padded = fingerBase64(1);
+        char[] wrapped = (padded.substring(0, 76) + "\r\n" + padded.substring(76)).toCharArray();
+
+        assertThrows(BadRequestException.class, () -> decoder.decodeHashed(wrapped, 0, wrapped.length, "scanTemplateBase64"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.cantina.biometric.service;
+
+import com.machinezoo.sourceafis.FingerprintCompatibility;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static com.cantina.biometric.support.SyntheticTemplates.finger;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateFeaturesTest {
+
+    /**
+     * {@link TemplateFeatures#minutiae} reads the field names of SourceAFIS's internal serialization,
+     * which the library does not promise to keep. Upgrading it fails here first: check that templates
+     * it writes still carry {@code positionsX}, {@code positionsY} and {@code directions}, then move the pin.
+     */
+    @Test
+    void minutiaeAreReadFromTemplatesSerializedBySourceAfis() {
+        assertEquals("3.18.1", FingerprintCompatibility.version());
+
+        TemplateFeatures.Minutiae written = TemplateFeatures.minutiae(finger(7));
+        TemplateFeatures.Minutiae read = TemplateFeatures.minutiae(new FingerprintTemplate(finger(7)).toByteArray());
+
+        assertTrue(written.count() > 0);
+        assertEquals(written.count(), read.count());
+        assertEquals(read.count(), read.positionsY().length);
+        assertEquals(read.count(), read.directions().length);
+        assertArrayEquals(positions(written), positions(read));
+        float[] writtenDirections = written.directions().clone();
+        float[] readDirections = read.directions().clone();
+        Arrays.sort(writtenDirections);
+        Arrays.sort(readDirections);
+        assertArrayEquals(writtenDirections, readDirections, 1e-6f);
+    }
+
+    /**
+     * Positions as sorted {@code (x, y)} keys: SourceAFIS may reorder minutiae when serializing.
+     */
+    private static int[] positions(TemplateFeatures.Minutiae minutiae) {
+        int[] positions = new int[minutiae.count()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = minutiae.positionsX()[i] << 16 | minutiae.positionsY()[i] & 0xFFFF;
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+}
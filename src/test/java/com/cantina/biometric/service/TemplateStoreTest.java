@@ -0,0 +1,240 @@
+package com.cantina.biometric.service;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.exception.BadRequestException;
+import com.cantina.biometric.support.ServiceFixtures;
+import com.machinezoo.sourceafis.FingerprintTemplate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.cantina.biometric.support.SyntheticTemplates.finger;
+import static com.cantina.biometric.support.SyntheticTemplates.fingerBase64;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateStoreTest {
+
+    private final BiometricProperties properties = new BiometricProperties();
+    private final TemplateDecoder templateDecoder = ServiceFixtures.templateDecoder(properties);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void galleryIsReloadedFromStoreInEnrolmentOrder() throws IOException {
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            gallery.enroll("id-1", null, List.of(fingerBase64(1)));
+            gallery.enroll("id-2", "school-b", List.of(fingerBase64(2), fingerBase64(12)));
+            gallery.enroll("id-3", null, List.of(fingerBase64(3)));
+            gallery.enroll("id-1", null, List.of(fingerBase64(11)));
+            gallery.remove("id-3");
+        }
+
+        try (TemplateStore store = open()) {
+            GalleryService reloaded = new GalleryService(properties, templateDecoder, store);
+            List<EnrolledCandidate> candidates = reloaded.select(null, null);
+
+            assertEquals(List.of("id-1", "id-2"), candidates.stream().map(EnrolledCandidate::candidateId).toList());
+            assertEquals("school-b", candidates.get(1).gallery());
+            assertEquals(2, candidates.get(1).templates().size());
+            assertArrayEquals(new FingerprintTemplate(finger(11)).toByteArray(), candidates.get(0).templates().get(0).toByteArray());
+            assertEquals(TemplateFeatures.ROW_BYTES * 2, candidates.get(1).features().rows().length);
+        }
+    }
+
+    @Test
+    void featuresAreExtractedAtEnrolmentOnlyWhileThePrefilterIsOn() throws IOException {
+        byte[] reserialized = new FingerprintTemplate(finger(1)).toByteArray();
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            gallery.enroll("id-1", null, List.of(fingerBase64(1)));
+            properties.setPrefilterFraction(0.5);
+            gallery.enroll("id-2", null, List.of(fingerBase64(2)));
+
+            assertEquals(0, gallery.find("id-1").orElseThrow().features().extractedRows().length);
+            assertArrayEquals(TemplateFeatures.extract(finger(2)), gallery.find("id-2").orElseThrow().features().extractedRows());
+            // Extracted late from the template serialized again, which reads the same minutiae.
+            assertArrayEquals(TemplateFeatures.extract(reserialized), gallery.find("id-1").orElseThrow().features().rows());
+        }
+
+        try (TemplateStore store = open()) {
+            GalleryService reloaded = new GalleryService(properties, templateDecoder, store);
+            assertEquals(0, reloaded.find("id-1").orElseThrow().features().extractedRows().length);
+            assertArrayEquals(TemplateFeatures.extract(finger(2)), reloaded.find("id-2").orElseThrow().features().extractedRows());
+            assertArrayEquals(TemplateFeatures.extract(finger(1)), reloaded.find("id-1").orElseThrow().features().rows());
+        }
+    }
+
+    @Test
+    void tornWriteAtTheEndIsCutOff() throws IOException {
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            gallery.enroll("id-1", null, List.of(fingerBase64(1)));
+            gallery.enroll("id-2", null, List.of(fingerBase64(2)));
+        }
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Half of the last record, as left by a crash in the middle of an append.
+            channel.truncate(intact - 40);
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), intact - 40);
+        }
+
+        try (TemplateStore store = open()) {
+            GalleryService reloaded = new GalleryService(properties, templateDecoder, store);
+            assertEquals(List.of("id-1"), reloaded.select(null, null).stream().map(EnrolledCandidate::candidateId).toList());
+
+            reloaded.enroll("id-3", null, List.of(fingerBase64(3)));
+        }
+
+        try (TemplateStore store = open()) {
+            assertEquals(List.of("id-1", "id-3"), store.load().stream().map(TemplateStore.StoredCandidate::candidateId).toList());
+        }
+    }
+
+    @Test
+    void corruptRecordInASealedSegmentFailsTheLoad() throws IOException {
+        properties.setGalleryStoreSegmentBytes(1024);
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            for (int i = 0; i < 6; i++) {
+                gallery.enroll("id-" + i, null, List.of(fingerBase64(i)));
+            }
+        }
+        assertTrue(segments().size() > 1);
+        Path sealed = segments().get(0);
+        try (FileChannel channel = FileChannel.open(sealed, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer flipped = ByteBuffer.allocate(1);
+            channel.read(flipped, 40);
+            flipped.put(0, (byte) ~flipped.get(0));
+            channel.write(flipped.rewind(), 40);
+        }
+        long size = Files.size(sealed);
+
+        try (TemplateStore store = open()) {
+            IllegalStateException ex = assertThrows(IllegalStateException.class, store::load);
+            assertTrue(ex.getMessage().contains(sealed.toString()));
+        }
+        assertEquals(size, Files.size(sealed));
+    }
+
+    @Test
+    void lengthsAreStoredUnsignedAndOversizedOnesRejectedBeforeWriting() throws IOException {
+        String longId = "i".repeat(40_000);
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            gallery.enroll(longId, null, List.of(fingerBase64(1)));
+            long written = store.totalBytes();
+
+            assertThrows(BadRequestException.class, () -> gallery.enroll("i".repeat(70_000), null, List.of(fingerBase64(2))));
+            assertThrows(BadRequestException.class, () -> store.put("id-2", "default", Instant.now(),
+                    Collections.nCopies(70_000, new byte[]{1}), new byte[0]));
+            assertEquals(written, store.totalBytes());
+        }
+
+        try (TemplateStore store = open()) {
+            assertEquals(List.of(longId), store.load().stream().map(TemplateStore.StoredCandidate::candidateId).toList());
+        }
+    }
+
+    @Test
+    void compactionDropsDeadRecordsAndKeepsLiveOnes() throws IOException {
+        properties.setGalleryStoreSegmentBytes(4096);
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 4; i++) {
+                    gallery.enroll("id-" + i, null, List.of(fingerBase64(round * 10 + i)));
+                }
+            }
+            gallery.remove("id-2");
+            store.compact();
+
+            assertEquals(store.liveBytes(), store.totalBytes());
+        }
+
+        long storedBytes = 0;
+        for (Path segment : segments()) {
+            storedBytes += Files.size(segment);
+        }
+        try (TemplateStore store = open()) {
+            GalleryService reloaded = new GalleryService(properties, templateDecoder, store);
+            List<EnrolledCandidate> candidates = reloaded.select(null, null);
+
+            assertEquals(List.of("id-0", "id-1", "id-3"), candidates.stream().map(EnrolledCandidate::candidateId).toList());
+            assertArrayEquals(new FingerprintTemplate(finger(43)).toByteArray(), candidates.get(2).templates().get(0).toByteArray());
+            assertEquals(storedBytes, store.totalBytes());
+            assertTrue(store.totalBytes() < 3 * 4096);
+        }
+    }
+
+    @Test
+    void crashBetweenDeletionsOfACompactionReplaysTheCompactedGallery() throws IOException {
+        properties.setGalleryStoreSegmentBytes(1024);
+        Path before = Files.createDirectory(directory.resolve("before"));
+        try (TemplateStore store = open()) {
+            GalleryService gallery = new GalleryService(properties, templateDecoder, store);
+            for (int i = 0; i < 6; i++) {
+                gallery.enroll("id-" + i, null, List.of(fingerBase64(i)));
+            }
+            // Removed and enrolled again, so id-0 moves to the end of the gallery.
+            gallery.remove("id-0");
+            gallery.enroll("id-0", null, List.of(fingerBase64(10)));
+            for (Path segment : segments()) {
+                Files.copy(segment, before.resolve(segment.getFileName()));
+            }
+            store.compact();
+        }
+        List<Path> oldSegments;
+        try (Stream<Path> files = Files.list(before)) {
+            oldSegments = files.sorted().toList();
+        }
+        assertTrue(oldSegments.size() > 2);
+        // The oldest segment, holding id-0's first enrolment, was deleted; the process died before the rest.
+        for (Path segment : oldSegments.subList(1, oldSegments.size())) {
+            Files.copy(segment, directory.resolve(segment.getFileName()));
+        }
+
+        List<String> expected = List.of("id-1", "id-2", "id-3", "id-4", "id-5", "id-0");
+        try (TemplateStore store = open()) {
+            GalleryService reloaded = new GalleryService(properties, templateDecoder, store);
+            assertEquals(expected, reloaded.select(null, null).stream().map(EnrolledCandidate::candidateId).toList());
+            assertEquals(store.liveBytes(), store.totalBytes());
+        }
+        assertTrue(segments().stream().noneMatch(segment -> oldSegments.stream()
+                .anyMatch(old -> old.getFileName().equals(segment.getFileName()))));
+
+        // Before the manifest is replaced, the old segments and the copies replay to the same gallery.
+        Files.delete(directory.resolve("MANIFEST"));
+        for (Path segment : oldSegments) {
+            Files.copy(segment, directory.resolve(segment.getFileName()));
+        }
+        try (TemplateStore store = open()) {
+            assertEquals(expected, store.load().stream().map(TemplateStore.StoredCandidate::candidateId).toList());
+        }
+    }
+
+    private TemplateStore open() {
+        return TemplateStore.open(directory, properties.getGalleryStoreSegmentBytes(), false);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.cantina.biometric.support;
+
+import com.cantina.biometric.config.BiometricProperties;
+import com.cantina.biometric.service.BiometricMatchingService;
+import com.cantina.biometric.service.CandidateHeat;
+import com.cantina.biometric.service.CandidatePrefilter;
+import com.cantina.biometric.service.CandidateMatchingEngine;
+import com.cantina.biometric.service.MatchingMetrics;
+import com.cantina.biometric.service.ScanMatcherCache;
+import com.cantina.biometric.service.ScanQualityGate;
+import com.cantina.biometric.service.ScoreMemo;
+import com.cantina.biometric.service.StreamingMatchingService;
+import com.cantina.biometric.service.TemplateCache;
+import com.cantina.biometric.service.TemplateDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Wires the matching services by hand for unit tests and benchmarks, the way the Spring context does.
+ */
+public final class ServiceFixtures {
+
+    private ServiceFixtures() {
+    }
+
+    public static MatchingMetrics metrics() {
+        return new MatchingMetrics(new SimpleMeterRegistry());
+    }
+
+    public static TemplateDecoder templateDecoder(BiometricProperties properties) {
+        return new TemplateDecoder(new TemplateCache(properties), metrics());
+    }
+
+    public static BiometricMatchingService matchingService(BiometricProperties properties,
+                                                           TemplateDecoder templateDecoder,
+                                                           ForkJoinPool matchingPool) {
+        return matchingService(properties, templateDecoder, matchingPool, new ScoreMemo(properties));
+    }
+
+    public static BiometricMatchingService matchingService(BiometricProperties properties,
+                                                           TemplateDecoder templateDecoder,
+                                                           ForkJoinPool matchingPool,
+                                                           ScoreMemo scoreMemo) {
+        MatchingMetrics metrics = metrics();
+        CandidateHeat candidateHeat = new CandidateHeat(properties);
+        return new BiometricMatchingService(properties, templateDecoder,
+                new CandidateMatchingEngine(properties, matchingPool, candidateHeat), new CandidatePrefilter(properties, metrics),
+                new ScanMatcherCache(properties), candidateHeat, new ScanQualityGate(properties, metrics), scoreMemo, metrics);
+    }
+
+    public static StreamingMatchingService streamingService(BiometricProperties properties, TemplateDecoder templateDecoder) {
+        MatchingMetrics metrics = metrics();
+        return new StreamingMatchingService(properties, templateDecoder, new CandidateHeat(properties),
+                new ScanQualityGate(properties, metrics), new ScoreMemo(properties), metrics);
+    }
+}
@@ -0,0 +1,89 @@
+package com.cantina.biometric.support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed corpus of synthetic templates checked into {@code src/test/resources/corpus}, so benchmarks and
+ * load tests run on identical inputs offline. Each line is {@code <kind> <seed> <base64>}, where kind is
+ * {@code template} (enrolled impression) or {@code scan} (second impression of the same finger).
+ *
+ * <p>Regenerate with {@code java -cp target/test-classes:<classpath> com.cantina.biometric.support.SyntheticCorpus}.
+ */
+public final class SyntheticCorpus {
+
+    public static final String RESOURCE = "/corpus/synthetic-templates.txt";
+    public static final int TEMPLATE_COUNT = 256;
+    public static final int SCAN_COUNT = 16;
+
+    private final List<String> templatesBase64;
+    private final List<String> scansBase64;
+
+    private SyntheticCorpus(List<String> templatesBase64, List<String> scansBase64) {
+        this.templatesBase64 = List.copyOf(templatesBase64);
+        this.scansBase64 = List.copyOf(scansBase64);
+    }
+
+    public static SyntheticCorpus load() {
+        List<String> templates = new ArrayList<>();
+        List<String> scans = new ArrayList<>();
+        try (InputStream input = SyntheticCorpus.class.getResourceAsStream(RESOURCE)) {
+            if (input == null) {
+                throw new IllegalStateException("Missing corpus resource " + RESOURCE);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                (parts[0].equals("scan") ? scans : templates).add(parts[2]);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new SyntheticCorpus(templates, scans);
+    }
+
+    /**
+     * Template {@code index} of the corpus, wrapping around so any number of candidates can be built.
+     */
+    public String template(int index) {
+        return templatesBase64.get(index % templatesBase64.size());
+    }
+
+    /**
+     * Scan {@code index}; scan {@code i} is a second impression of {@code template(i)}.
+     */
+    public String scan(int index) {
+        return scansBase64.get(index % scansBase64.size());
+    }
+
+    public int templateCount() {
+        return templatesBase64.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path target = Path.of(args.length > 0 ? args[0] : "src/test/resources" + RESOURCE);
+        Files.createDirectories(target.getParent());
+        try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.US_ASCII)) {
+            writer.write("# Synthetic SourceAFIS templates, generated by " + SyntheticCorpus.class.getName() + "\n");
+            for (int seed = 0; seed < TEMPLATE_COUNT; seed++) {
+                writer.write("template " + seed + " " + SyntheticTemplates.fingerBase64(seed) + "\n");
+            }
+            for (int seed = 0; seed < SCAN_COUNT; seed++) {
+                writer.write("scan " + seed + " " + SyntheticTemplates.fingerBase64(seed, 1) + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.cantina.biometric.support;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds deterministic SourceAFIS templates without fingerprint images, so tests can exercise real
+ * deserialization and matching.
+ */
+public final class SyntheticTemplates {
+
+    private static final CBORMapper MAPPER = new CBORMapper();
+    private static final short WIDTH = 400;
+    private static final short HEIGHT = 500;
+
+    private SyntheticTemplates() {
+    }
+
+    public static byte[] finger(long seed) {
+        return finger(seed, 0);
+    }
+
+    /**
+     * Template of the finger identified by {@code seed}; a non-zero {@code impression} jitters the
+     * minutiae slightly, like a second scan of the same finger.
+     */
+    public static byte[] finger(long seed, int impression) {
+        Random random = new Random(seed);
+        Random jitter = new Random(seed * 31 + impression);
+        int count = 30 + random.nextInt(20);
+        short[] positionsX = new short[count];
+        short[] positionsY = new short[count];
+        float[] directions = new float[count];
+        StringBuilder types = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            int dx = impression == 0 ? 0 : jitter.nextInt(5) - 2;
+            int dy = impression == 0 ? 0 : jitter.nextInt(5) - 2;
+            positionsX[i] = (short) (20 + random.nextInt(WIDTH - 40) + dx);
+            positionsY[i] = (short) (20 + random.nextInt(HEIGHT - 40) + dy);
+            directions[i] = (float) (random.nextDouble() * 2 * Math.PI);
+            types.append(random.nextBoolean() ? 'E' : 'B');
+        }
+
+        return encode(positionsX, positionsY, directions, types.toString());
+    }
+
+    /**
+     * Poor scan: {@code count} minutiae crowded into a {@code side}-pixel square, like a fingertip
+     * barely touching the reader.
+     */
+    public static byte[] partialFinger(long seed, int count, int side) {
+        Random random = new Random(seed);
+        short[] positionsX = new short[count];
+        short[] positionsY = new short[count];
+        float[] directions = new float[count];
+        StringBuilder types = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            positionsX[i] = (short) ((WIDTH - side) / 2 + random.nextInt(side));
+            positionsY[i] = (short) ((HEIGHT - side) / 2 + random.nextInt(side));
+            directions[i] = (float) (random.nextDouble() * 2 * Math.PI);
+            types.append(random.nextBoolean() ? 'E' : 'B');
+        }
+        return encode(positionsX, positionsY, directions, types.toString());
+    }
+
+    private static byte[] encode(short[] positionsX, short[] positionsY, float[] directions, String types) {
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("version", "3.18.1");
+        template.put("width", WIDTH);
+        template.put("height", HEIGHT);
+        template.put("positionsX", positionsX);
+        template.put("positionsY", positionsY);
+        template.put("directions", directions);
+        template.put("types", types);
+        try {
+            return MAPPER.writeValueAsBytes(template);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Unable to encode synthetic template", ex);
+        }
+    }
+
+    /**
+     * Harder impression of the finger identified by {@code seed}: the whole print is rotated by up to
+     * {@code maxRotationDegrees} and shifted, every minutia is jittered by a few pixels, a share
+     * {@code dropRate} of them is lost and about half as many spurious ones are added.
+     */
+    public static byte[] distortedFinger(long seed, int impression, double dropRate, double maxRotationDegrees) {
+        Random random = new Random(seed);
+        Random distortion = new Random(seed * 131 + impression);
+        int count = 30 + random.nextInt(20);
+        double rotation = Math.toRadians((distortion.nextDouble() * 2 - 1) * maxRotationDegrees);
+        double shiftX = distortion.nextInt(41) - 20;
+        double shiftY = distortion.nextInt(41) - 20;
+        double cos = Math.cos(rotation);
+        double sin = Math.sin(rotation);
+
+        List<short[]> positions = new ArrayList<>();
+        List<Float> directions = new ArrayList<>();
+        StringBuilder types = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double x = 20 + random.nextInt(WIDTH - 40) - WIDTH / 2.0;
+            double y = 20 + random.nextInt(HEIGHT - 40) - HEIGHT / 2.0;
+            double direction = random.nextDouble() * 2 * Math.PI;
+            char type = random.nextBoolean() ? 'E' : 'B';
+            if (distortion.nextDouble() < dropRate) {
+                continue;
+            }
+            positions.add(new short[]{
+                    clamp(x * cos - y * sin + WIDTH / 2.0 + shiftX + distortion.nextInt(7) - 3, WIDTH),
+                    clamp(x * sin + y * cos + HEIGHT / 2.0 + shiftY + distortion.nextInt(7) - 3, HEIGHT)});
+            directions.add((float) ((direction + rotation + 2 * Math.PI) % (2 * Math.PI)));
+            types.append(type);
+        }
+        int spurious = (int) Math.round(count * dropRate / 2);
+        for (int i = 0; i < spurious; i++) {
+            positions.add(new short[]{(short) (20 + distortion.nextInt(WIDTH - 40)), (short) (20 + distortion.nextInt(HEIGHT - 40))});
+            directions.add((float) (distortion.nextDouble() * 2 * Math.PI));
+            types.append(distortion.nextBoolean() ? 'E' : 'B');
+        }
+
+        short[] positionsX = new short[positions.size()];
+        short[] positionsY = new short[positions.size()];
+        float[] directionArray = new float[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            positionsX[i] = positions.get(i)[0];
+            positionsY[i] = positions.get(i)[1];
+            directionArray[i] = directions.get(i);
+        }
+        return encode(positionsX, positionsY, directionArray, types.toString());
+    }
+
+    public static String fingerBase64(long seed) {
+        return Base64.getEncoder().encodeToString(finger(seed));
+    }
+
+    public static String fingerBase64(long seed, int impression) {
+        return Base64.getEncoder().encodeToString(finger(seed, impression));
+    }
+
+    public static String partialFingerBase64(long seed, int count, int side) {
+        return Base64.getEncoder().encodeToString(partialFinger(seed, count, side));
+    }
+
+    private static short clamp(double value, int limit) {
+        return (short) Math.max(0, Math.min(limit - 1, Math.round(value)));
+    }
+}